@@ -1,7 +1,5 @@
 package com.uber.cadence.samples.activityinheritance.case1;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.activity.ActivityMethod;
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.samples.activityinheritance.ActivityInheritanceWorkflow;
@@ -12,6 +10,7 @@ import com.uber.cadence.samples.activityinheritance.dto.TypeARequest;
 import com.uber.cadence.samples.activityinheritance.dto.TypeAResponse;
 import com.uber.cadence.samples.activityinheritance.dto.TypeBRequest;
 import com.uber.cadence.samples.activityinheritance.dto.TypeBResponse;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.worker.Worker;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
@@ -21,14 +20,14 @@ public class ActivityInheritanceFail1 {
 
   public static void main(String[] args) {
 
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(Constants.TASK_LIST);
     worker.registerWorkflowImplementationTypes(ActivityInheritanceWorkflowFail1Impl.class);
     worker.registerActivitiesImplementations(new TypeAActivityImpl(), new TypeBActivityImpl());
 
     factory.start();
 
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     ActivityInheritanceWorkflow workflow =
         workflowClient.newWorkflowStub(ActivityInheritanceWorkflow.class);
 
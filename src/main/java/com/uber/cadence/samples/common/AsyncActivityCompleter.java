@@ -0,0 +1,276 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.activity.Activity;
+import com.uber.cadence.client.ActivityCancelledException;
+import com.uber.cadence.client.ActivityCompletionClient;
+import com.uber.cadence.client.ActivityCompletionException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Completes activities asynchronously on a dedicated pool instead of the activity worker threads.
+ * An activity method calls {@link #complete} with the work to do and returns, and the activity is
+ * completed through the {@link ActivityCompletionClient} with the result of the work.
+ *
+ * <p>The number of activities accepted but not completed yet is bounded, {@link #complete} blocks
+ * the activity thread, and so the poller, when the bound is reached. Accepted activities heartbeat
+ * periodically until they complete, so they can have a heartbeat timeout shorter than the work and
+ * notice cancellation. The work of a cancelled or timed out activity is interrupted.
+ */
+public class AsyncActivityCompleter implements AutoCloseable {
+
+  /** Counts of the completed activities. */
+  public static final class Metrics {
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong completionErrors = new AtomicLong();
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public long getAccepted() {
+      return accepted.get();
+    }
+
+    /** Activities completed with the result of their work. */
+    public long getCompleted() {
+      return completed.get();
+    }
+
+    /** Activities completed with the failure of their work. */
+    public long getFailed() {
+      return failed.get();
+    }
+
+    /** Activities cancelled or timed out before their work completed. */
+    public long getCancelled() {
+      return cancelled.get();
+    }
+
+    /**
+     * Activities whose completion RPC failed. They time out and are retried by the service
+     * according to their retry options.
+     */
+    public long getCompletionErrors() {
+      return completionErrors.get();
+    }
+
+    /** Number of heartbeat RPCs. */
+    public long getHeartbeats() {
+      return heartbeats.get();
+    }
+
+    /** Activities accepted but not completed yet. */
+    public long getOutstanding() {
+      return accepted.get()
+          - completed.get()
+          - failed.get()
+          - cancelled.get()
+          - completionErrors.get();
+    }
+
+    /** Completed and failed activities per second since the completer was created. */
+    public double getThroughput() {
+      long nanos = System.nanoTime() - startNanos;
+      return (completed.get() + failed.get()) * 1e9 / Math.max(1, nanos);
+    }
+
+    /** Time from acceptance to the completion RPC. */
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d completed, %d failed, %d cancelled, %d completion errors, %d outstanding,"
+              + " %d heartbeats, %.1f/s, latency %s",
+          completed.get(),
+          failed.get(),
+          cancelled.get(),
+          completionErrors.get(),
+          getOutstanding(),
+          heartbeats.get(),
+          getThroughput(),
+          latency);
+    }
+  }
+
+  /** An accepted activity. */
+  private static final class InFlight {
+    private final byte[] taskToken;
+    private final long startNanos = System.nanoTime();
+    private volatile Future<?> future;
+
+    InFlight(byte[] taskToken) {
+      this.taskToken = taskToken;
+    }
+  }
+
+  private final ActivityCompletionClient completionClient;
+  private final Semaphore outstanding;
+  private final Set<InFlight> inFlight = ConcurrentHashMap.newKeySet();
+  private final ThreadPoolExecutor workers;
+  private final ScheduledExecutorService heartbeater =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "async-completer-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final Metrics metrics = new Metrics();
+
+  /**
+   * @param threads number of threads that run the work
+   * @param maxOutstanding maximum number of activities accepted but not completed yet
+   * @param heartbeatInterval time between the heartbeats of an accepted activity, shorter than the
+   *     heartbeat timeout of the activities
+   */
+  public AsyncActivityCompleter(
+      ActivityCompletionClient completionClient,
+      int threads,
+      int maxOutstanding,
+      Duration heartbeatInterval) {
+    this.completionClient = completionClient;
+    this.outstanding = new Semaphore(maxOutstanding);
+    // The queue never fills up, as the accepted activities are bounded by the semaphore.
+    this.workers =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxOutstanding),
+            r -> {
+              Thread thread = new Thread(r, "async-completer");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long intervalNanos = heartbeatInterval.toNanos();
+    heartbeater.scheduleWithFixedDelay(
+        this::heartbeat, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Accepts the current activity and completes it with the result of the work once it is done. Must
+   * be called from an activity method, whose return value is then ignored.
+   */
+  public <R> void complete(Callable<R> work) {
+    try {
+      outstanding.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Activity.wrap(e);
+    }
+    Activity.doNotCompleteOnReturn();
+    InFlight call = new InFlight(Activity.getTaskToken());
+    metrics.accepted.incrementAndGet();
+    inFlight.add(call);
+    call.future = workers.submit(() -> run(call, work));
+  }
+
+  /** Stops the work. Accepted activities time out and are retried by the service. */
+  @Override
+  public void close() {
+    heartbeater.shutdownNow();
+    workers.shutdownNow();
+  }
+
+  private <R> void run(InFlight call, Callable<R> work) {
+    R result = null;
+    Exception failure = null;
+    try {
+      result = work.call();
+    } catch (Exception e) {
+      failure = e;
+    }
+    if (!finish(call)) {
+      // Cancelled by a heartbeat while running.
+      return;
+    }
+    try {
+      if (failure == null) {
+        completionClient.complete(call.taskToken, result);
+        metrics.completed.incrementAndGet();
+      } else {
+        completionClient.completeExceptionally(call.taskToken, failure);
+        metrics.failed.incrementAndGet();
+      }
+      metrics.latency.record(System.nanoTime() - call.startNanos);
+    } catch (ActivityCompletionException e) {
+      // The activity was cancelled or timed out meanwhile.
+      metrics.cancelled.incrementAndGet();
+    } catch (RuntimeException e) {
+      metrics.completionErrors.incrementAndGet();
+    }
+  }
+
+  private void heartbeat() {
+    for (InFlight call : inFlight) {
+      try {
+        completionClient.heartbeat(call.taskToken, null);
+        metrics.heartbeats.incrementAndGet();
+      } catch (ActivityCompletionException e) {
+        if (!finish(call)) {
+          continue;
+        }
+        metrics.cancelled.incrementAndGet();
+        Future<?> future = call.future;
+        if (future != null) {
+          future.cancel(true);
+        }
+        if (e instanceof ActivityCancelledException) {
+          try {
+            completionClient.reportCancellation(call.taskToken, null);
+          } catch (ActivityCompletionException ignored) {
+            // Closed meanwhile, nothing left to report.
+          }
+        }
+      } catch (RuntimeException e) {
+        // Transient service failure, the next heartbeat retries.
+      }
+    }
+  }
+
+  /** Releases an accepted activity. Returns false if it was already released. */
+  private boolean finish(InFlight call) {
+    if (!inFlight.remove(call)) {
+      return false;
+    }
+    outstanding.release();
+    return true;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowStub;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Queries many workflow executions through a single client. Queries run concurrently up to the
+ * given parallelism and are started no faster than the given rate. Every result is written as a
+ * JSON line as soon as it is received.
+ */
+public class BatchQuery {
+
+  /** Totals of a batch. */
+  public static final class Report {
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicReference<IOException> writeFailure = new AtomicReference<>();
+    private long elapsedNanos;
+
+    public LatencyRecorder getLatency() {
+      return latency;
+    }
+
+    public long getFailures() {
+      return failures.get();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Queried %d executions (%d failed) in %.1fs, latency %s",
+          latency.getCount() + failures.get(), failures.get(), elapsedNanos / 1e9, latency);
+    }
+  }
+
+  private final WorkflowClient client;
+  private final int parallelism;
+  private final double queriesPerSecond;
+
+  /**
+   * @param parallelism maximum number of queries in flight
+   * @param queriesPerSecond maximum rate at which queries are started
+   */
+  public BatchQuery(WorkflowClient client, int parallelism, double queriesPerSecond) {
+    this.client = client;
+    this.parallelism = parallelism;
+    this.queriesPerSecond = queriesPerSecond;
+  }
+
+  /**
+   * Queries all the executions and writes one line per execution to the results. A line has the
+   * workflowId, runId and either the result or the error of the query. Results are copied as JSON,
+   * so the query may return any type.
+   */
+  public Report query(String queryType, Iterator<WorkflowExecution> executions, Writer results)
+      throws InterruptedException, IOException {
+    Report report = new Report();
+    RateLimiter rateLimiter = RateLimiter.create(queriesPerSecond);
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    Semaphore inFlight = new Semaphore(parallelism);
+    long startNanos = System.nanoTime();
+    try {
+      while (executions.hasNext()) {
+        WorkflowExecution execution = executions.next();
+        inFlight.acquire();
+        rateLimiter.acquire();
+        executor.execute(
+            () -> {
+              try {
+                queryExecution(queryType, execution, results, report);
+              } finally {
+                inFlight.release();
+              }
+            });
+      }
+      inFlight.acquire(parallelism);
+    } finally {
+      executor.shutdownNow();
+    }
+    report.elapsedNanos = System.nanoTime() - startNanos;
+    if (report.writeFailure.get() != null) {
+      throw report.writeFailure.get();
+    }
+    results.flush();
+    return report;
+  }
+
+  private void queryExecution(
+      String queryType, WorkflowExecution execution, Writer results, Report report) {
+    JsonObject line = new JsonObject();
+    line.addProperty("workflowId", execution.getWorkflowId());
+    line.addProperty("runId", execution.getRunId());
+    long startNanos = System.nanoTime();
+    try {
+      WorkflowStub workflow = client.newUntypedWorkflowStub(execution, Optional.empty());
+      line.add("result", workflow.query(queryType, JsonElement.class));
+      report.latency.record(System.nanoTime() - startNanos);
+    } catch (RuntimeException e) {
+      report.failures.incrementAndGet();
+      line.addProperty("error", e.toString());
+    }
+    synchronized (results) {
+      try {
+        results.write(line.toString());
+        results.write('\n');
+      } catch (IOException e) {
+        report.writeFailure.compareAndSet(null, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.GetWorkflowExecutionHistoryRequest;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import com.uber.cadence.serviceclient.WorkflowServiceTChannel;
+import com.uber.cadence.worker.Worker;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+/**
+ * Shares Cadence service connections and clients within a process. A single TChannel connection
+ * multiplexes all the calls to a service endpoint, so every tool, starter and worker in the process
+ * reuses the same service instead of opening its own. Also records the latency and the errors of
+ * every RPC except the long polls, whose latency mostly depends on the load of the task lists.
+ *
+ * <p>The endpoint and domain default to 127.0.0.1:7933 and {@link SampleConstants#DOMAIN}. They can
+ * be changed with the cadence.host, cadence.port and cadence.domain system properties or the
+ * CADENCE_HOST, CADENCE_PORT and CADENCE_DOMAIN environment variables.
+ */
+public final class CadenceClients {
+
+  /** Latency and error count of a single RPC method. */
+  public static final class RpcMetrics {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getErrors() {
+      return errors.get();
+    }
+
+    @Override
+    public String toString() {
+      return latency + ", errors=" + errors.get();
+    }
+  }
+
+  public static final String DEFAULT_HOST = "127.0.0.1";
+  public static final int DEFAULT_PORT = 7933;
+
+  private static final Map<String, IWorkflowService> connections = new ConcurrentHashMap<>();
+  private static final Map<String, IWorkflowService> services = new ConcurrentHashMap<>();
+  private static final Map<String, WorkflowClient> clients = new ConcurrentHashMap<>();
+  private static final AtomicReference<Map<String, RpcMetrics>> rpcMetrics =
+      new AtomicReference<>(new ConcurrentHashMap<>());
+
+  private CadenceClients() {}
+
+  public static String getHost() {
+    return getConfig("cadence.host", "CADENCE_HOST", DEFAULT_HOST);
+  }
+
+  public static int getPort() {
+    return Integer.parseInt(
+        getConfig("cadence.port", "CADENCE_PORT", String.valueOf(DEFAULT_PORT)));
+  }
+
+  public static String getDomain() {
+    return getConfig("cadence.domain", "CADENCE_DOMAIN", SampleConstants.DOMAIN);
+  }
+
+  /** Returns the shared service of the configured endpoint. */
+  public static IWorkflowService getService() {
+    return getService(getHost(), getPort());
+  }
+
+  /**
+   * Returns the shared service of the endpoint, connecting on the first call. Calling close on the
+   * returned service does nothing, use {@link #closeAll()} when the process is done with it.
+   */
+  public static IWorkflowService getService(String host, int port) {
+    return services.computeIfAbsent(
+        host + ":" + port,
+        k ->
+            withMetrics(
+                connections.computeIfAbsent(k, c -> new WorkflowServiceTChannel(host, port))));
+  }
+
+  /** Returns the shared client of the configured domain. */
+  public static WorkflowClient getWorkflowClient() {
+    return getWorkflowClient(getDomain());
+  }
+
+  public static WorkflowClient getWorkflowClient(String domain) {
+    return clients.computeIfAbsent(
+        getHost() + ":" + getPort() + "/" + domain,
+        k -> WorkflowClient.newInstance(getService(), domain));
+  }
+
+  /** Returns a new worker factory of the configured domain that uses the shared service. */
+  public static Worker.Factory newWorkerFactory() {
+    return new Worker.Factory(getService(), getDomain());
+  }
+
+  /** Metrics of the synchronous RPCs by method name since the last reset. */
+  public static Map<String, RpcMetrics> getRpcMetrics() {
+    return rpcMetrics.get();
+  }
+
+  /** Prints the RPC metrics. A long running process can reset them after every report. */
+  public static void printRpcMetrics(PrintStream out, boolean reset) {
+    // Swapped, so the RPCs in flight record into the printed metrics instead of being lost.
+    Map<String, RpcMetrics> metrics =
+        reset ? rpcMetrics.getAndSet(new ConcurrentHashMap<>()) : rpcMetrics.get();
+    for (Map.Entry<String, RpcMetrics> entry : new TreeMap<>(metrics).entrySet()) {
+      out.println(entry.getKey() + ": " + entry.getValue());
+    }
+  }
+
+  /** Closes all the shared services. */
+  public static synchronized void closeAll() {
+    clients.clear();
+    services.clear();
+    for (IWorkflowService connection : connections.values()) {
+      connection.close();
+    }
+    connections.clear();
+  }
+
+  /** Wraps the service to record RPC metrics and ignore close. */
+  static IWorkflowService withMetrics(IWorkflowService service) {
+    return (IWorkflowService)
+        Proxy.newProxyInstance(
+            IWorkflowService.class.getClassLoader(),
+            new Class<?>[] {IWorkflowService.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                return null;
+              }
+              if (isAsync(method)
+                  || isLongPoll(method, args)
+                  || method.getDeclaringClass() == Object.class) {
+                return invoke(service, method, args);
+              }
+              RpcMetrics metrics =
+                  rpcMetrics.get().computeIfAbsent(method.getName(), k -> new RpcMetrics());
+              long startNanos = System.nanoTime();
+              try {
+                return invoke(service, method, args);
+              } catch (Throwable e) {
+                metrics.errors.incrementAndGet();
+                throw e;
+              } finally {
+                metrics.latency.record(System.nanoTime() - startNanos);
+              }
+            });
+  }
+
+  private static Object invoke(IWorkflowService service, Method method, Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(service, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static boolean isAsync(Method method) {
+    Class<?>[] parameters = method.getParameterTypes();
+    return parameters.length > 0
+        && AsyncMethodCallback.class.isAssignableFrom(parameters[parameters.length - 1]);
+  }
+
+  /** Task polls and history requests that wait for new events. */
+  private static boolean isLongPoll(Method method, Object[] args) {
+    if (method.getName().startsWith("PollFor")) {
+      return true;
+    }
+    return args != null
+        && args.length > 0
+        && args[0] instanceof GetWorkflowExecutionHistoryRequest
+        && ((GetWorkflowExecutionHistoryRequest) args[0]).isWaitForNewEvent();
+  }
+
+  private static String getConfig(
+      String property, String environmentVariable, String defaultValue) {
+    String value = System.getProperty(property);
+    if (value == null) {
+      value = System.getenv(environmentVariable);
+    }
+    return value == null || value.isEmpty() ? defaultValue : value;
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.google.gson.Gson;
+import com.uber.cadence.DescribeDomainRequest;
+import com.uber.cadence.DescribeDomainResponse;
+import com.uber.cadence.DomainAlreadyExistsError;
+import com.uber.cadence.DomainConfiguration;
+import com.uber.cadence.DomainInfo;
+import com.uber.cadence.EntityNotExistsError;
+import com.uber.cadence.RegisterDomainRequest;
+import com.uber.cadence.UpdateDomainInfo;
+import com.uber.cadence.UpdateDomainRequest;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import org.apache.thrift.TException;
+
+/**
+ * Registers the domains listed in a spec file, or updates them when they already exist with a
+ * different configuration. Running it again with the same spec changes nothing, so it can be part
+ * of every environment setup. Domains are processed concurrently.
+ *
+ * <p>The spec is a JSON array of domains:
+ *
+ * <pre>
+ * [
+ *   {"name": "orders", "retentionDays": 7, "description": "Order workflows"},
+ *   {"name": "orders-dev", "emitMetric": false}
+ * ]
+ * </pre>
+ *
+ * Retention defaults to one day and metrics are emitted unless emitMetric is false.
+ */
+public class DomainBootstrap {
+
+  /** Desired configuration of a domain. */
+  public static final class DomainSpec {
+    private String name;
+    private String description = "";
+    private String ownerEmail = "";
+    private int retentionDays = 1;
+    private boolean emitMetric = true;
+
+    public DomainSpec() {}
+
+    public DomainSpec(String name, int retentionDays, boolean emitMetric) {
+      this.name = name;
+      this.retentionDays = retentionDays;
+      this.emitMetric = emitMetric;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public DomainSpec setDescription(String description) {
+      this.description = description;
+      return this;
+    }
+
+    public String getOwnerEmail() {
+      return ownerEmail;
+    }
+
+    public DomainSpec setOwnerEmail(String ownerEmail) {
+      this.ownerEmail = ownerEmail;
+      return this;
+    }
+
+    public int getRetentionDays() {
+      return retentionDays;
+    }
+
+    public boolean isEmitMetric() {
+      return emitMetric;
+    }
+  }
+
+  /** What was done to a domain. */
+  public enum Outcome {
+    REGISTERED,
+    UPDATED,
+    UNCHANGED,
+    FAILED
+  }
+
+  /** Outcome of a single domain. */
+  public static final class Result {
+    private final String domain;
+    private final Outcome outcome;
+    private final long elapsedNanos;
+    private final String error;
+
+    Result(String domain, Outcome outcome, long elapsedNanos, String error) {
+      this.domain = domain;
+      this.outcome = outcome;
+      this.elapsedNanos = elapsedNanos;
+      this.error = error;
+    }
+
+    public String getDomain() {
+      return domain;
+    }
+
+    public Outcome getOutcome() {
+      return outcome;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    public String getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%-40s %-10s %8.1fms%s",
+          domain, outcome, elapsedNanos / 1e6, error == null ? "" : " " + error);
+    }
+  }
+
+  /** Results of a bootstrap in spec order. */
+  public static final class Report {
+    private final List<Result> results;
+    private final long elapsedNanos;
+
+    Report(List<Result> results, long elapsedNanos) {
+      this.results = results;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<Result> getResults() {
+      return results;
+    }
+
+    public long count(Outcome outcome) {
+      return results.stream().filter(r -> r.outcome == outcome).count();
+    }
+
+    public void print(PrintStream out) {
+      for (Result result : results) {
+        out.println(result);
+      }
+      out.println(
+          String.format(
+              "%d domains in %.1fs: %d registered, %d updated, %d unchanged, %d failed",
+              results.size(),
+              elapsedNanos / 1e9,
+              count(Outcome.REGISTERED),
+              count(Outcome.UPDATED),
+              count(Outcome.UNCHANGED),
+              count(Outcome.FAILED)));
+    }
+  }
+
+  private final IWorkflowService service;
+  private final int parallelism;
+
+  /** @param parallelism maximum number of domains processed at the same time */
+  public DomainBootstrap(IWorkflowService service, int parallelism) {
+    this.service = service;
+    this.parallelism = parallelism;
+  }
+
+  /** Registers or updates all the domains. A failure of one domain does not stop the others. */
+  public Report apply(List<DomainSpec> specs) throws InterruptedException {
+    Result[] results = new Result[specs.size()];
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    Semaphore inFlight = new Semaphore(parallelism);
+    long startNanos = System.nanoTime();
+    try {
+      for (int i = 0; i < specs.size(); i++) {
+        int index = i;
+        inFlight.acquire();
+        executor.execute(
+            () -> {
+              try {
+                results[index] = applyDomain(specs.get(index));
+              } finally {
+                inFlight.release();
+              }
+            });
+      }
+      inFlight.acquire(parallelism);
+    } finally {
+      executor.shutdownNow();
+    }
+    return new Report(
+        Collections.unmodifiableList(Arrays.asList(results)), System.nanoTime() - startNanos);
+  }
+
+  private Result applyDomain(DomainSpec spec) {
+    long startNanos = System.nanoTime();
+    Outcome outcome;
+    try {
+      outcome = registerOrUpdate(spec);
+    } catch (TException | RuntimeException e) {
+      return new Result(spec.name, Outcome.FAILED, System.nanoTime() - startNanos, e.toString());
+    }
+    return new Result(spec.name, outcome, System.nanoTime() - startNanos, null);
+  }
+
+  private Outcome registerOrUpdate(DomainSpec spec) throws TException {
+    DescribeDomainResponse existing = describe(spec.name);
+    if (existing == null) {
+      try {
+        service.RegisterDomain(
+            new RegisterDomainRequest()
+                .setName(spec.name)
+                .setDescription(spec.description)
+                .setOwnerEmail(spec.ownerEmail)
+                .setWorkflowExecutionRetentionPeriodInDays(spec.retentionDays)
+                .setEmitMetric(spec.emitMetric));
+        return Outcome.REGISTERED;
+      } catch (DomainAlreadyExistsError e) {
+        // Registered concurrently by another bootstrap, compare with what it registered.
+        existing = describe(spec.name);
+        if (existing == null) {
+          throw e;
+        }
+      }
+    }
+    if (matches(spec, existing)) {
+      return Outcome.UNCHANGED;
+    }
+    service.UpdateDomain(
+        new UpdateDomainRequest()
+            .setName(spec.name)
+            .setUpdatedInfo(
+                new UpdateDomainInfo()
+                    .setDescription(spec.description)
+                    .setOwnerEmail(spec.ownerEmail))
+            .setConfiguration(
+                new DomainConfiguration()
+                    .setWorkflowExecutionRetentionPeriodInDays(spec.retentionDays)
+                    .setEmitMetric(spec.emitMetric)));
+    return Outcome.UPDATED;
+  }
+
+  private DescribeDomainResponse describe(String domain) throws TException {
+    try {
+      return service.DescribeDomain(new DescribeDomainRequest().setName(domain));
+    } catch (EntityNotExistsError e) {
+      return null;
+    }
+  }
+
+  private static boolean matches(DomainSpec spec, DescribeDomainResponse existing) {
+    DomainInfo info = existing.getDomainInfo();
+    DomainConfiguration configuration = existing.getConfiguration();
+    return info != null
+        && configuration != null
+        && Objects.equals(spec.description, nullToEmpty(info.getDescription()))
+        && Objects.equals(spec.ownerEmail, nullToEmpty(info.getOwnerEmail()))
+        && spec.retentionDays == configuration.getWorkflowExecutionRetentionPeriodInDays()
+        && spec.emitMetric == configuration.isEmitMetric();
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  /**
+   * Reads the domain specs from a JSON array.
+   *
+   * @throws IllegalArgumentException if the file doesn't hold an array of named domains
+   */
+  public static List<DomainSpec> readSpecs(File file) throws IOException {
+    String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    DomainSpec[] specs = new Gson().fromJson(json, DomainSpec[].class);
+    if (specs == null) {
+      throw new IllegalArgumentException("Expected a JSON array of domains in " + file);
+    }
+    List<DomainSpec> result = new ArrayList<>();
+    for (DomainSpec spec : specs) {
+      if (spec == null || spec.name == null || spec.name.isEmpty()) {
+        throw new IllegalArgumentException("Domain without a name in " + file);
+      }
+      if (spec.description == null) {
+        spec.description = "";
+      }
+      if (spec.ownerEmail == null) {
+        spec.ownerEmail = "";
+      }
+      result.add(spec);
+    }
+    return result;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println(
+          "Usage: java " + DomainBootstrap.class.getName() + " <domainSpecFile> [<parallelism>]");
+      System.exit(1);
+    }
+    List<DomainSpec> specs = readSpecs(new File(args[0]));
+    int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    Report report = new DomainBootstrap(CadenceClients.getService(), parallelism).apply(specs);
+    report.print(System.out);
+    System.exit(report.count(Outcome.FAILED) == 0 ? 0 : 1);
+  }
+}
@@ -0,0 +1,406 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Profiles workflows from their histories. Aggregates over many executions the schedule to start
+ * and start to close latencies and the attempts of every activity type, the decision task latencies
+ * and the number of child workflows started by each execution. Histories are read live from the
+ * service or from files written by {@link HistoryExporter} and analyzed in parallel.
+ */
+public class HistoryAnalyzer {
+
+  /** Reads the events of a single history. */
+  private interface HistorySource {
+    void forEach(Consumer<HistoryEvent> consumer) throws Exception;
+  }
+
+  private static final double[] PERCENTILES = {50, 90, 99};
+
+  private final Map<String, LatencyRecorder> activityScheduleToStart = new ConcurrentHashMap<>();
+  private final Map<String, LatencyRecorder> activityStartToClose = new ConcurrentHashMap<>();
+  private final Map<String, LatencyRecorder> activityAttempts = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> activityFailures = new ConcurrentHashMap<>();
+  private final LatencyRecorder decisionScheduleToStart = new LatencyRecorder();
+  private final LatencyRecorder decisionStartToClose = new LatencyRecorder();
+  private final LatencyRecorder childWorkflows = new LatencyRecorder();
+  private final AtomicLong executions = new AtomicLong();
+  private final AtomicLong failedReads = new AtomicLong();
+
+  /** Adds a single history to the statistics. Can be called from multiple threads. */
+  public void analyze(Iterator<HistoryEvent> events) {
+    ExecutionAnalysis analysis = new ExecutionAnalysis();
+    events.forEachRemaining(analysis::add);
+    analysis.finish();
+  }
+
+  /** Analyzes the exported history files in parallel. */
+  public void analyzeFiles(Iterator<File> files, int parallelism) throws InterruptedException {
+    analyzeAll(
+        files,
+        file ->
+            consumer -> {
+              try (HistoryFormat.EventReader reader =
+                  HistoryFormat.forFile(file).newReader(new FileInputStream(file))) {
+                for (HistoryEvent event = reader.read(); event != null; event = reader.read()) {
+                  consumer.accept(event);
+                }
+              }
+            },
+        parallelism);
+  }
+
+  /** Fetches and analyzes the histories of the executions in parallel. */
+  public void analyzeExecutions(
+      IWorkflowService service,
+      String domain,
+      Iterator<WorkflowExecution> executions,
+      int parallelism)
+      throws InterruptedException {
+    analyzeAll(
+        executions,
+        execution ->
+            consumer ->
+                new HistoryPager(service, domain, execution).events().forEachRemaining(consumer),
+        parallelism);
+  }
+
+  public long getExecutions() {
+    return executions.get();
+  }
+
+  /** Number of histories that could not be read. */
+  public long getFailedReads() {
+    return failedReads.get();
+  }
+
+  public Map<String, LatencyRecorder> getActivityScheduleToStart() {
+    return activityScheduleToStart;
+  }
+
+  public Map<String, LatencyRecorder> getActivityStartToClose() {
+    return activityStartToClose;
+  }
+
+  /** Attempts of every closed activity. Values greater than 1 mean that it was retried. */
+  public Map<String, LatencyRecorder> getActivityAttempts() {
+    return activityAttempts;
+  }
+
+  /** Number of failed or timed out activities. */
+  public Map<String, AtomicLong> getActivityFailures() {
+    return activityFailures;
+  }
+
+  public LatencyRecorder getDecisionScheduleToStart() {
+    return decisionScheduleToStart;
+  }
+
+  public LatencyRecorder getDecisionStartToClose() {
+    return decisionStartToClose;
+  }
+
+  /** Number of child workflows started by each execution. */
+  public LatencyRecorder getChildWorkflows() {
+    return childWorkflows;
+  }
+
+  /** Prints percentile tables of the statistics. */
+  public void print(PrintStream out) {
+    out.println(
+        "Analyzed " + executions.get() + " executions (" + failedReads.get() + " failed to read)");
+    printTable(out, "Activity schedule to start (ms)", activityScheduleToStart, true);
+    printTable(out, "Activity start to close (ms)", activityStartToClose, true);
+    printTable(out, "Activity attempts", activityAttempts, false);
+    if (!activityFailures.isEmpty()) {
+      out.println();
+      out.println("Activity failures and timeouts");
+      for (Map.Entry<String, AtomicLong> failures : new TreeMap<>(activityFailures).entrySet()) {
+        out.println(String.format("  %-50s %8d", failures.getKey(), failures.getValue().get()));
+      }
+    }
+    Map<String, LatencyRecorder> decisions = new HashMap<>();
+    decisions.put("schedule to start", decisionScheduleToStart);
+    decisions.put("start to close", decisionStartToClose);
+    printTable(out, "Decision task (ms)", decisions, true);
+    printTable(
+        out,
+        "Child workflows per execution",
+        Collections.singletonMap("children", childWorkflows),
+        false);
+  }
+
+  private static void printTable(
+      PrintStream out, String title, Map<String, LatencyRecorder> rows, boolean nanos) {
+    out.println();
+    out.println(title);
+    out.println(
+        String.format("  %-50s %8s %10s %10s %10s %10s", "", "count", "p50", "p90", "p99", "max"));
+    for (Map.Entry<String, LatencyRecorder> row : new TreeMap<>(rows).entrySet()) {
+      LatencyRecorder recorder = row.getValue();
+      StringBuilder line =
+          new StringBuilder(String.format("  %-50s %8d", row.getKey(), recorder.getCount()));
+      for (double percentile : PERCENTILES) {
+        line.append(format(recorder.getPercentile(percentile), nanos));
+      }
+      line.append(format(recorder.getMax(), nanos));
+      out.println(line);
+    }
+  }
+
+  private static String format(long value, boolean nanos) {
+    return nanos ? String.format(" %10.1f", value / 1_000_000.0) : String.format(" %10d", value);
+  }
+
+  private <T> void analyzeAll(Iterator<T> sources, Function<T, HistorySource> open, int parallelism)
+      throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    Semaphore inFlight = new Semaphore(parallelism);
+    try {
+      while (sources.hasNext()) {
+        T source = sources.next();
+        inFlight.acquire();
+        executor.execute(
+            () -> {
+              try {
+                ExecutionAnalysis analysis = new ExecutionAnalysis();
+                open.apply(source).forEach(analysis::add);
+                analysis.finish();
+              } catch (Throwable e) {
+                failedReads.incrementAndGet();
+                System.out.println("Failed to analyze " + source + ": " + e);
+              } finally {
+                inFlight.release();
+              }
+            });
+      }
+      inFlight.acquire(parallelism);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Matches the events of a single history. Only the pending activities and decisions are kept, so
+   * memory doesn't grow with the length of the history. Statistics are published by {@link
+   * #finish()}, so a history that fails to read half way is not counted.
+   */
+  private final class ExecutionAnalysis {
+    private final Map<Long, String> activityTypes = new HashMap<>();
+    private final Map<Long, Long> activityScheduledTimes = new HashMap<>();
+    private final Map<Long, Long> activityStartedTimes = new HashMap<>();
+    private final Map<Long, Integer> activityAttempts = new HashMap<>();
+    private final Map<Long, Long> decisionScheduledTimes = new HashMap<>();
+    private final Map<Long, Long> decisionStartedTimes = new HashMap<>();
+    private final Map<String, LatencyRecorder> scheduleToStart = new HashMap<>();
+    private final Map<String, LatencyRecorder> startToClose = new HashMap<>();
+    private final Map<String, LatencyRecorder> attempts = new HashMap<>();
+    private final Map<String, Long> failures = new HashMap<>();
+    private final LatencyRecorder decisionScheduleToStart = new LatencyRecorder();
+    private final LatencyRecorder decisionStartToClose = new LatencyRecorder();
+    private long childWorkflows;
+
+    // Timestamps are in nanoseconds.
+    void add(HistoryEvent event) {
+      long eventId = event.getEventId();
+      long time = event.getTimestamp();
+      switch (event.getEventType()) {
+        case ActivityTaskScheduled:
+          activityTypes.put(
+              eventId, event.getActivityTaskScheduledEventAttributes().getActivityType().getName());
+          activityScheduledTimes.put(eventId, time);
+          break;
+        case ActivityTaskStarted:
+          {
+            long scheduledId = event.getActivityTaskStartedEventAttributes().getScheduledEventId();
+            activityStartedTimes.put(scheduledId, time);
+            // Attempts are zero based.
+            activityAttempts.put(
+                scheduledId, event.getActivityTaskStartedEventAttributes().getAttempt() + 1);
+            Long scheduled = activityScheduledTimes.get(scheduledId);
+            if (scheduled != null) {
+              record(scheduleToStart, activityTypes.get(scheduledId), time - scheduled);
+            }
+            break;
+          }
+        case ActivityTaskCompleted:
+          closeActivity(
+              event.getActivityTaskCompletedEventAttributes().getScheduledEventId(), time, false);
+          break;
+        case ActivityTaskFailed:
+          closeActivity(
+              event.getActivityTaskFailedEventAttributes().getScheduledEventId(), time, true);
+          break;
+        case ActivityTaskTimedOut:
+          closeActivity(
+              event.getActivityTaskTimedOutEventAttributes().getScheduledEventId(), time, true);
+          break;
+        case ActivityTaskCanceled:
+          closeActivity(
+              event.getActivityTaskCanceledEventAttributes().getScheduledEventId(), time, false);
+          break;
+        case DecisionTaskScheduled:
+          decisionScheduledTimes.put(eventId, time);
+          break;
+        case DecisionTaskStarted:
+          {
+            Long scheduled =
+                decisionScheduledTimes.remove(
+                    event.getDecisionTaskStartedEventAttributes().getScheduledEventId());
+            if (scheduled != null) {
+              decisionScheduleToStart.record(time - scheduled);
+            }
+            decisionStartedTimes.put(eventId, time);
+            break;
+          }
+        case DecisionTaskCompleted:
+          closeDecision(event.getDecisionTaskCompletedEventAttributes().getStartedEventId(), time);
+          break;
+        case DecisionTaskFailed:
+          closeDecision(event.getDecisionTaskFailedEventAttributes().getStartedEventId(), time);
+          break;
+        case DecisionTaskTimedOut:
+          closeDecision(event.getDecisionTaskTimedOutEventAttributes().getStartedEventId(), time);
+          break;
+        case StartChildWorkflowExecutionInitiated:
+          childWorkflows++;
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void closeActivity(long scheduledId, long time, boolean failed) {
+      String type = activityTypes.remove(scheduledId);
+      activityScheduledTimes.remove(scheduledId);
+      Long started = activityStartedTimes.remove(scheduledId);
+      Integer attempt = activityAttempts.remove(scheduledId);
+      if (type == null) {
+        return;
+      }
+      if (started != null) {
+        record(startToClose, type, time - started);
+      }
+      record(attempts, type, attempt == null ? 1 : attempt);
+      if (failed) {
+        failures.merge(type, 1L, Long::sum);
+      }
+    }
+
+    private void closeDecision(long startedId, long time) {
+      Long started = decisionStartedTimes.remove(startedId);
+      if (started != null) {
+        decisionStartToClose.record(time - started);
+      }
+    }
+
+    private void record(Map<String, LatencyRecorder> recorders, String type, long value) {
+      recorders.computeIfAbsent(type, k -> new LatencyRecorder()).record(value);
+    }
+
+    void finish() {
+      merge(scheduleToStart, HistoryAnalyzer.this.activityScheduleToStart);
+      merge(startToClose, HistoryAnalyzer.this.activityStartToClose);
+      merge(attempts, HistoryAnalyzer.this.activityAttempts);
+      for (Map.Entry<String, Long> entry : failures.entrySet()) {
+        HistoryAnalyzer.this
+            .activityFailures
+            .computeIfAbsent(entry.getKey(), k -> new AtomicLong())
+            .addAndGet(entry.getValue());
+      }
+      HistoryAnalyzer.this.decisionScheduleToStart.recordAll(decisionScheduleToStart);
+      HistoryAnalyzer.this.decisionStartToClose.recordAll(decisionStartToClose);
+      HistoryAnalyzer.this.childWorkflows.record(childWorkflows);
+      executions.incrementAndGet();
+    }
+
+    private void merge(Map<String, LatencyRecorder> from, Map<String, LatencyRecorder> to) {
+      for (Map.Entry<String, LatencyRecorder> entry : from.entrySet()) {
+        to.computeIfAbsent(entry.getKey(), k -> new LatencyRecorder()).recordAll(entry.getValue());
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2 || args.length > 5) {
+      System.err.println(
+          "Usage: java "
+              + HistoryAnalyzer.class.getName()
+              + " (dir <historyDirectory> | file <executionListFile> | closed <hours> [<workflowType>])"
+              + " [<parallelism>]");
+      System.exit(1);
+    }
+    HistoryAnalyzer analyzer = new HistoryAnalyzer();
+    String last = args[args.length - 1];
+    int parallelism = args.length > 2 && last.matches("\\d+") ? Integer.parseInt(last) : 10;
+    if (args[0].equals("dir")) {
+      File[] files = new File(args[1]).listFiles(HistoryAnalyzer::isHistoryFile);
+      if (files == null) {
+        throw new IllegalArgumentException("Not a directory: " + args[1]);
+      }
+      analyzer.analyzeFiles(Arrays.asList(files).iterator(), parallelism);
+    } else {
+      IWorkflowService cadenceService = CadenceClients.getService();
+      Iterator<WorkflowExecution> executions;
+      if (args[0].equals("file")) {
+        executions = HistoryExporter.readExecutions(new File(args[1])).iterator();
+      } else {
+        long now = System.currentTimeMillis();
+        long since = now - TimeUnit.HOURS.toMillis(Long.parseLong(args[1]));
+        String workflowType = args.length > 2 && !args[2].matches("\\d+") ? args[2] : null;
+        executions =
+            HistoryExporter.listClosedExecutions(
+                cadenceService, CadenceClients.getDomain(), since, now, workflowType);
+      }
+      analyzer.analyzeExecutions(
+          cadenceService, CadenceClients.getDomain(), executions, parallelism);
+    }
+    analyzer.print(System.out);
+    System.exit(0);
+  }
+
+  private static boolean isHistoryFile(File file) {
+    for (HistoryFormat format : HistoryFormat.values()) {
+      if (file.getName().endsWith(format.getExtension())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.ListClosedWorkflowExecutionsRequest;
+import com.uber.cadence.ListClosedWorkflowExecutionsResponse;
+import com.uber.cadence.StartTimeFilter;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.WorkflowExecutionInfo;
+import com.uber.cadence.WorkflowTypeFilter;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.thrift.TException;
+
+/**
+ * Exports the histories of many workflow executions to files, one file per execution. Histories are
+ * fetched concurrently by a bounded pool and every page is written out as soon as it arrives, so
+ * neither the number of executions nor the length of their histories affects memory use.
+ */
+public class HistoryExporter {
+
+  /** Totals of an export. */
+  public static final class Report {
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private long elapsedNanos;
+
+    public long getExecutions() {
+      return executions.get();
+    }
+
+    public long getEvents() {
+      return events.get();
+    }
+
+    public long getBytes() {
+      return bytes.get();
+    }
+
+    public long getFailures() {
+      return failures.get();
+    }
+
+    public double getEventsPerSecond() {
+      return elapsedNanos == 0 ? 0 : events.get() / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Exported %d executions (%d failed), %d events, %.1f MB in %.1fs: %.0f events/s",
+          executions.get(),
+          failures.get(),
+          events.get(),
+          bytes.get() / 1e6,
+          elapsedNanos / 1e9,
+          getEventsPerSecond());
+    }
+  }
+
+  private static final int LIST_PAGE_SIZE = 1000;
+
+  private final IWorkflowService service;
+  private final String domain;
+  private final File outputDirectory;
+  private final HistoryFormat format;
+  private final int parallelism;
+
+  /** @param parallelism maximum number of histories fetched at the same time */
+  public HistoryExporter(
+      IWorkflowService service,
+      String domain,
+      File outputDirectory,
+      HistoryFormat format,
+      int parallelism) {
+    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+      throw new IllegalArgumentException("Cannot create output directory: " + outputDirectory);
+    }
+    this.service = service;
+    this.domain = domain;
+    this.outputDirectory = outputDirectory;
+    this.format = format;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Exports the histories of the executions. The iterator is consumed only as fast as the histories
+   * are exported, so it can lazily page through a visibility listing.
+   */
+  public Report export(Iterator<WorkflowExecution> executions) throws InterruptedException {
+    Report report = new Report();
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    Semaphore inFlight = new Semaphore(parallelism);
+    long startNanos = System.nanoTime();
+    try {
+      while (executions.hasNext()) {
+        WorkflowExecution execution = executions.next();
+        inFlight.acquire();
+        executor.execute(
+            () -> {
+              try {
+                exportExecution(execution, report);
+              } finally {
+                inFlight.release();
+              }
+            });
+      }
+      inFlight.acquire(parallelism);
+    } finally {
+      executor.shutdownNow();
+    }
+    report.elapsedNanos = System.nanoTime() - startNanos;
+    return report;
+  }
+
+  /** Returns the file that holds the history of the execution. */
+  public File getFile(WorkflowExecution execution) {
+    String name = execution.getWorkflowId();
+    if (execution.getRunId() != null) {
+      name += "_" + execution.getRunId();
+    }
+    return new File(
+        outputDirectory, name.replaceAll("[^A-Za-z0-9._-]", "_") + format.getExtension());
+  }
+
+  private void exportExecution(WorkflowExecution execution, Report report) {
+    File file = getFile(execution);
+    long events = 0;
+    try {
+      Iterator<HistoryEvent> history = new HistoryPager(service, domain, execution).events();
+      try (HistoryFormat.EventWriter writer =
+          format.newWriter(new BufferedOutputStream(new FileOutputStream(file)))) {
+        while (history.hasNext()) {
+          writer.write(history.next());
+          events++;
+        }
+      }
+    } catch (IOException | RuntimeException | Error e) {
+      // History pages report service failures as Error.
+      report.failures.incrementAndGet();
+      file.delete();
+      System.out.println("Failed to export " + execution + ": " + e);
+      return;
+    }
+    report.executions.incrementAndGet();
+    report.events.addAndGet(events);
+    report.bytes.addAndGet(file.length());
+  }
+
+  /** Reads executions from a file with one "workflowId [runId]" pair per line. */
+  public static List<WorkflowExecution> readExecutions(File file) throws IOException {
+    List<WorkflowExecution> result = new ArrayList<>();
+    for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+      String[] parts = line.trim().split("\\s+");
+      if (parts[0].isEmpty() || parts[0].startsWith("#")) {
+        continue;
+      }
+      WorkflowExecution execution = new WorkflowExecution().setWorkflowId(parts[0]);
+      if (parts.length > 1) {
+        execution.setRunId(parts[1]);
+      }
+      result.add(execution);
+    }
+    return result;
+  }
+
+  /**
+   * Lazily lists the executions closed after they were started in the given time range.
+   *
+   * @param workflowType type of the executions to list or null for all of them
+   */
+  public static Iterator<WorkflowExecution> listClosedExecutions(
+      IWorkflowService service,
+      String domain,
+      long earliestStartTimeMillis,
+      long latestStartTimeMillis,
+      String workflowType) {
+    ListClosedWorkflowExecutionsRequest request =
+        new ListClosedWorkflowExecutionsRequest()
+            .setDomain(domain)
+            .setMaximumPageSize(LIST_PAGE_SIZE)
+            .setStartTimeFilter(
+                new StartTimeFilter()
+                    .setEarliestTime(TimeUnit.MILLISECONDS.toNanos(earliestStartTimeMillis))
+                    .setLatestTime(TimeUnit.MILLISECONDS.toNanos(latestStartTimeMillis)));
+    if (workflowType != null) {
+      request.setTypeFilter(new WorkflowTypeFilter().setName(workflowType));
+    }
+    return new Iterator<WorkflowExecution>() {
+      private Iterator<WorkflowExecutionInfo> page;
+      private byte[] nextPageToken;
+
+      @Override
+      public boolean hasNext() {
+        while (page == null || (!page.hasNext() && nextPageToken != null)) {
+          request.setNextPageToken(nextPageToken);
+          ListClosedWorkflowExecutionsResponse response;
+          try {
+            response = service.ListClosedWorkflowExecutions(request);
+          } catch (TException e) {
+            throw new RuntimeException("Failed to list closed executions", e);
+          }
+          page = response.getExecutionsIterator();
+          nextPageToken =
+              response.getNextPageToken() == null || response.getNextPageToken().length == 0
+                  ? null
+                  : response.getNextPageToken();
+        }
+        return page.hasNext();
+      }
+
+      @Override
+      public WorkflowExecution next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return page.next().getExecution();
+      }
+    };
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3 || args.length > 6) {
+      System.err.println(
+          "Usage: java "
+              + HistoryExporter.class.getName()
+              + " <outputDirectory> (file <executionListFile> | closed <hours> [<workflowType>])"
+              + " [json|binary] [<parallelism>]");
+      System.exit(1);
+    }
+    IWorkflowService cadenceService = CadenceClients.getService();
+    File outputDirectory = new File(args[0]);
+    Iterator<WorkflowExecution> executions;
+    int next;
+    if (args[1].equals("file")) {
+      executions = readExecutions(new File(args[2])).iterator();
+      next = 3;
+    } else {
+      long now = System.currentTimeMillis();
+      long since = now - TimeUnit.HOURS.toMillis(Long.parseLong(args[2]));
+      boolean hasType = args.length > 3 && !isFormat(args[3]) && !isNumber(args[3]);
+      executions =
+          listClosedExecutions(
+              cadenceService, CadenceClients.getDomain(), since, now, hasType ? args[3] : null);
+      next = hasType ? 4 : 3;
+    }
+    HistoryFormat format = HistoryFormat.JSON;
+    if (args.length > next && isFormat(args[next])) {
+      format = HistoryFormat.valueOf(args[next].toUpperCase());
+      next++;
+    }
+    int parallelism = args.length > next ? Integer.parseInt(args[next]) : 10;
+
+    HistoryExporter exporter =
+        new HistoryExporter(
+            cadenceService, CadenceClients.getDomain(), outputDirectory, format, parallelism);
+    System.out.println(exporter.export(executions));
+    System.exit(0);
+  }
+
+  private static boolean isFormat(String arg) {
+    return arg.equals("json") || arg.equals("binary");
+  }
+
+  private static boolean isNumber(String arg) {
+    return arg.matches("\\d+");
+  }
+}
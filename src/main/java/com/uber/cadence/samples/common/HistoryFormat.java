@@ -0,0 +1,202 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.uber.cadence.HistoryEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+/**
+ * File formats of exported workflow histories. Events are written and read one at a time, so
+ * histories of any length can be streamed with constant memory.
+ */
+public enum HistoryFormat {
+
+  /** One JSON encoded event per line. Binary payloads are base64 encoded. */
+  JSON(".ndjson") {
+    @Override
+    public EventWriter newWriter(OutputStream out) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      return new EventWriter() {
+        @Override
+        public void write(HistoryEvent event) throws IOException {
+          writer.write(GSON.toJson(event));
+          writer.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+          writer.close();
+        }
+      };
+    }
+
+    @Override
+    public EventReader newReader(InputStream in) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+      return new EventReader() {
+        @Override
+        public HistoryEvent read() throws IOException {
+          String line;
+          do {
+            line = reader.readLine();
+          } while (line != null && line.isEmpty());
+          return line == null ? null : GSON.fromJson(line, HistoryEvent.class);
+        }
+
+        @Override
+        public void close() throws IOException {
+          reader.close();
+        }
+      };
+    }
+  },
+
+  /** Thrift compact encoded events written back to back. */
+  BINARY(".bin") {
+    @Override
+    public EventWriter newWriter(OutputStream out) {
+      TIOStreamTransport transport = new TIOStreamTransport(out);
+      TProtocol protocol = new TCompactProtocol(transport);
+      return new EventWriter() {
+        @Override
+        public void write(HistoryEvent event) throws IOException {
+          try {
+            event.write(protocol);
+          } catch (TException e) {
+            throw new IOException(e);
+          }
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            transport.flush();
+          } catch (TException e) {
+            throw new IOException(e);
+          } finally {
+            out.close();
+          }
+        }
+      };
+    }
+
+    @Override
+    public EventReader newReader(InputStream in) {
+      BufferedInputStream input = new BufferedInputStream(in);
+      TProtocol protocol = new TCompactProtocol(new TIOStreamTransport(input));
+      return new EventReader() {
+        @Override
+        public HistoryEvent read() throws IOException {
+          input.mark(1);
+          if (input.read() == -1) {
+            return null;
+          }
+          input.reset();
+          HistoryEvent event = new HistoryEvent();
+          try {
+            event.read(protocol);
+          } catch (TException e) {
+            throw new IOException(e);
+          }
+          return event;
+        }
+
+        @Override
+        public void close() throws IOException {
+          input.close();
+        }
+      };
+    }
+  };
+
+  /** Writes the events of a single history. */
+  public interface EventWriter extends Closeable {
+    void write(HistoryEvent event) throws IOException;
+  }
+
+  /** Reads the events of a single history. */
+  public interface EventReader extends Closeable {
+    /** Returns the next event or null at the end of the history. */
+    HistoryEvent read() throws IOException;
+  }
+
+  private static final Gson GSON =
+      new GsonBuilder()
+          .registerTypeHierarchyAdapter(
+              ByteBuffer.class,
+              new TypeAdapter<ByteBuffer>() {
+                @Override
+                public void write(JsonWriter out, ByteBuffer value) throws IOException {
+                  byte[] bytes = new byte[value.remaining()];
+                  value.duplicate().get(bytes);
+                  out.value(Base64.getEncoder().encodeToString(bytes));
+                }
+
+                @Override
+                public ByteBuffer read(JsonReader in) throws IOException {
+                  return ByteBuffer.wrap(Base64.getDecoder().decode(in.nextString()));
+                }
+              }.nullSafe())
+          .create();
+
+  private final String extension;
+
+  HistoryFormat(String extension) {
+    this.extension = extension;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  public abstract EventWriter newWriter(OutputStream out);
+
+  public abstract EventReader newReader(InputStream in);
+
+  /** Returns the format of a file by its extension. */
+  public static HistoryFormat forFile(File file) {
+    for (HistoryFormat format : values()) {
+      if (file.getName().endsWith(format.extension)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unknown history file format: " + file);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.GetWorkflowExecutionHistoryResponse;
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.internal.common.WorkflowExecutionUtils;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads a workflow execution history page by page. The next page is requested as soon as the
+ * current one is returned, so it is fetched while the caller processes the current page. At most
+ * two pages are held in memory at any time, whatever the length of the history.
+ */
+public class HistoryPager implements Iterator<List<HistoryEvent>> {
+
+  private static final ExecutorService DEFAULT_PREFETCH_EXECUTOR =
+      Executors.newCachedThreadPool(
+          r -> {
+            Thread thread = new Thread(r, "history-prefetch");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final IWorkflowService service;
+  private final String domain;
+  private final WorkflowExecution execution;
+  private final Executor prefetchExecutor;
+
+  /** Next page or null after the last page was returned. */
+  private CompletableFuture<GetWorkflowExecutionHistoryResponse> next;
+
+  public HistoryPager(IWorkflowService service, String domain, WorkflowExecution execution) {
+    this(service, domain, execution, DEFAULT_PREFETCH_EXECUTOR);
+  }
+
+  /** @param prefetchExecutor fetches the pages in the background */
+  public HistoryPager(
+      IWorkflowService service,
+      String domain,
+      WorkflowExecution execution,
+      Executor prefetchExecutor) {
+    this.service = service;
+    this.domain = domain;
+    this.execution = execution;
+    this.prefetchExecutor = prefetchExecutor;
+    this.next = fetch(null);
+  }
+
+  @Override
+  public boolean hasNext() {
+    return next != null;
+  }
+
+  /**
+   * Returns the next page and starts fetching the one after it. Service failures are rethrown as
+   * they are reported by {@link WorkflowExecutionUtils#getHistoryPage}.
+   */
+  @Override
+  public List<HistoryEvent> next() {
+    if (next == null) {
+      throw new NoSuchElementException();
+    }
+    GetWorkflowExecutionHistoryResponse response;
+    try {
+      response = next.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while fetching history of " + execution, e);
+    } catch (ExecutionException e) {
+      next = null;
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+    byte[] token = response.getNextPageToken();
+    next = token == null || token.length == 0 ? null : fetch(token);
+    if (!response.isSetHistory() || response.getHistory().getEvents() == null) {
+      return Collections.emptyList();
+    }
+    return response.getHistory().getEvents();
+  }
+
+  /** Returns the events of all the remaining pages one by one. */
+  public Iterator<HistoryEvent> events() {
+    return new Iterator<HistoryEvent>() {
+      private Iterator<HistoryEvent> page = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!page.hasNext() && HistoryPager.this.hasNext()) {
+          page = HistoryPager.this.next().iterator();
+        }
+        return page.hasNext();
+      }
+
+      @Override
+      public HistoryEvent next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return page.next();
+      }
+    };
+  }
+
+  private CompletableFuture<GetWorkflowExecutionHistoryResponse> fetch(byte[] token) {
+    return CompletableFuture.supplyAsync(
+        () -> WorkflowExecutionUtils.getHistoryPage(token, service, domain, execution),
+        prefetchExecutor);
+  }
+}
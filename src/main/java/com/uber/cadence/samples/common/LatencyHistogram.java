@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Counts latency samples from multiple threads in a fixed number of buckets, so it can record for
+ * the lifetime of a worker. Unlike {@link LatencyRecorder} it doesn't keep the samples. The buckets
+ * grow exponentially with 16 linear buckets per power of two, so a percentile is reported with an
+ * error of at most about 6%.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /** Records a latency in nanoseconds. Negative values are recorded as 0. */
+  public void record(long nanos) {
+    nanos = Math.max(0, nanos);
+    counts.incrementAndGet(bucket(nanos));
+    sum.addAndGet(nanos);
+    max.accumulate(nanos);
+    count.incrementAndGet();
+  }
+
+  public void record(long duration, TimeUnit unit) {
+    record(unit.toNanos(duration));
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /** Sum of all the recorded latencies in nanoseconds. */
+  public long getSum() {
+    return sum.get();
+  }
+
+  /**
+   * Returns the upper bound in nanoseconds of the bucket that holds the given percentage of samples
+   * using the nearest rank method, at most the maximum. Returns 0 if nothing was recorded.
+   *
+   * @param percentile value between 0 and 100
+   */
+  public long getPercentile(double percentile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(getMax(), upperBound(i));
+      }
+    }
+    return getMax();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /** Returns count, p50, p99 and max in milliseconds. */
+  @Override
+  public String toString() {
+    return String.format(
+        "count=%d, p50=%.1fms, p99=%.1fms, max=%.1fms",
+        getCount(), toMillis(getPercentile(50)), toMillis(getPercentile(99)), toMillis(getMax()));
+  }
+
+  static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /** Largest value that falls into the bucket. */
+  static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+}
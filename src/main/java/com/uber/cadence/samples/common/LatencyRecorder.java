@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects latency samples from multiple threads and computes percentiles over them. All samples
+ * are kept in memory, which is fine for the sample tools that record at most millions of values.
+ */
+public class LatencyRecorder {
+
+  private long[] samples = new long[1024];
+  private int count;
+  private long sum;
+
+  /** Records a latency in nanoseconds. */
+  public synchronized void record(long nanos) {
+    if (count == samples.length) {
+      samples = Arrays.copyOf(samples, count * 2);
+    }
+    samples[count++] = nanos;
+    sum += nanos;
+  }
+
+  public void record(long duration, TimeUnit unit) {
+    record(unit.toNanos(duration));
+  }
+
+  /** Records all the samples of another recorder. */
+  public void recordAll(LatencyRecorder other) {
+    long[] otherSamples;
+    synchronized (other) {
+      otherSamples = Arrays.copyOf(other.samples, other.count);
+    }
+    for (long nanos : otherSamples) {
+      record(nanos);
+    }
+  }
+
+  public synchronized int getCount() {
+    return count;
+  }
+
+  /** Sum of all the recorded latencies in nanoseconds. */
+  public synchronized long getSum() {
+    return sum;
+  }
+
+  /**
+   * Returns the latency in nanoseconds that is greater or equal to the given percentage of samples
+   * using the nearest rank method. Returns 0 if nothing was recorded.
+   *
+   * @param percentile value between 0 and 100
+   */
+  public synchronized long getPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100 * count);
+    return sorted[Math.max(0, Math.min(count, rank) - 1)];
+  }
+
+  public synchronized long getMax() {
+    long max = 0;
+    for (int i = 0; i < count; i++) {
+      max = Math.max(max, samples[i]);
+    }
+    return max;
+  }
+
+  /** Returns count, p50, p99 and max in milliseconds. */
+  @Override
+  public String toString() {
+    return String.format(
+        "count=%d, p50=%.1fms, p99=%.1fms, max=%.1fms",
+        getCount(), toMillis(getPercentile(50)), toMillis(getPercentile(99)), toMillis(getMax()));
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.workflow.Functions;
+import com.uber.cadence.workflow.Promise;
+import com.uber.cadence.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs iterations of a workflow at fixed fire times. The fire times are computed from the first one
+ * and the period, so the schedule does not drift by the duration of the iterations. The {@link
+ * OverlapPolicy} decides what happens when an iteration is still running at the next fire time.
+ *
+ * <p>Must be used from workflow code. The next fire time and the {@link Metrics} can be carried
+ * over to the next run when the workflow continues as new.
+ */
+public final class PeriodicScheduler {
+
+  public enum OverlapPolicy {
+    /**
+     * Fire times missed while an iteration was running are skipped. The most recent missed one runs
+     * as soon as the iteration completes.
+     */
+    SKIP,
+    /** Every missed fire time runs, back to back, as soon as the previous iteration completes. */
+    CATCH_UP,
+    /**
+     * Every fire time runs on time while fewer than the maximum number of iterations are running.
+     * Beyond that it waits for one of them to complete.
+     */
+    ALLOW_OVERLAP
+  }
+
+  public static final class Schedule {
+    private final Duration period;
+    private final OverlapPolicy overlapPolicy;
+    private final int maxConcurrent;
+
+    public Schedule(Duration period, OverlapPolicy overlapPolicy, int maxConcurrent) {
+      if (period.isZero() || period.isNegative()) {
+        throw new IllegalArgumentException("period must be positive: " + period);
+      }
+      if (maxConcurrent < 1) {
+        throw new IllegalArgumentException("maxConcurrent must be positive: " + maxConcurrent);
+      }
+      this.period = period;
+      this.overlapPolicy = overlapPolicy;
+      this.maxConcurrent = overlapPolicy == OverlapPolicy.ALLOW_OVERLAP ? maxConcurrent : 1;
+    }
+
+    /** Runs one iteration at a time and skips the fire times it overruns. */
+    public static Schedule every(Duration period) {
+      return new Schedule(period, OverlapPolicy.SKIP, 1);
+    }
+
+    public Duration getPeriod() {
+      return period;
+    }
+
+    public OverlapPolicy getOverlapPolicy() {
+      return overlapPolicy;
+    }
+
+    public int getMaxConcurrent() {
+      return maxConcurrent;
+    }
+  }
+
+  /** Lag of the iterations behind their fire times. */
+  public static final class Metrics {
+    private long fired;
+    private long skipped;
+    private long lastLagMillis;
+    private long maxLagMillis;
+    private long totalLagMillis;
+
+    /** Number of iterations started. */
+    public long getFired() {
+      return fired;
+    }
+
+    /** Number of fire times skipped because of an overrun. */
+    public long getSkipped() {
+      return skipped;
+    }
+
+    public long getLastLagMillis() {
+      return lastLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+      return maxLagMillis;
+    }
+
+    public long getAverageLagMillis() {
+      return fired == 0 ? 0 : totalLagMillis / fired;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "fired=%d, skipped=%d, lag last=%dms, avg=%dms, max=%dms",
+          fired, skipped, lastLagMillis, getAverageLagMillis(), maxLagMillis);
+    }
+  }
+
+  private final Schedule schedule;
+  private final Metrics metrics;
+  private long nextFireTimeMillis;
+
+  /**
+   * @param firstFireTimeMillis workflow time of the first iteration, usually the next fire time
+   *     carried over from the previous run
+   * @param metrics updated by the scheduler, pass the carried over instance to keep accumulating
+   */
+  public PeriodicScheduler(Schedule schedule, long firstFireTimeMillis, Metrics metrics) {
+    this.schedule = schedule;
+    this.nextFireTimeMillis = firstFireTimeMillis;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Runs the iterations while {@code hasNext} returns true, then waits for the running ones to
+   * complete. {@code hasNext} is called before each fire time is waited for.
+   *
+   * @param iteration starts an iteration for the fire time passed as the argument and returns a
+   *     promise that completes with it
+   */
+  public void run(Functions.Func1<Long, Promise<Void>> iteration, Functions.Func<Boolean> hasNext) {
+    long periodMillis = schedule.getPeriod().toMillis();
+    List<Promise<?>> running = new ArrayList<>();
+    while (hasNext.apply()) {
+      long now = Workflow.currentTimeMillis();
+      if (nextFireTimeMillis > now) {
+        // Workflow.sleep could wake up late while iterations sleep in other workflow threads.
+        Workflow.newTimer(Duration.ofMillis(nextFireTimeMillis - now)).get();
+      }
+      removeCompleted(running);
+      while (running.size() >= schedule.getMaxConcurrent()) {
+        Promise.anyOf(running).get();
+        removeCompleted(running);
+      }
+      now = Workflow.currentTimeMillis();
+      if (schedule.getOverlapPolicy() == OverlapPolicy.SKIP) {
+        long missed = (now - nextFireTimeMillis) / periodMillis;
+        if (missed > 0) {
+          metrics.skipped += missed;
+          nextFireTimeMillis += missed * periodMillis;
+        }
+      }
+      long lag = now - nextFireTimeMillis;
+      metrics.fired++;
+      metrics.lastLagMillis = lag;
+      metrics.maxLagMillis = Math.max(metrics.maxLagMillis, lag);
+      metrics.totalLagMillis += lag;
+      running.add(iteration.apply(nextFireTimeMillis));
+      nextFireTimeMillis += periodMillis;
+    }
+    Promise.allOf(running.toArray(new Promise<?>[0])).get();
+  }
+
+  /** Fire time of the iteration that would run next, to be carried over to the next run. */
+  public long getNextFireTimeMillis() {
+    return nextFireTimeMillis;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  /** Rethrows the failure of a completed iteration. */
+  private static void removeCompleted(List<Promise<?>> running) {
+    for (Iterator<Promise<?>> i = running.iterator(); i.hasNext(); ) {
+      Promise<?> promise = i.next();
+      if (promise.isCompleted()) {
+        promise.get();
+        i.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.uber.cadence.client.WorkflowClient;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Caches the results of workflow queries on the client. A result younger than the time to live is
+ * returned without any call. An older one is revalidated against a version of the workflow state,
+ * which the workflow exposes through a query that is much cheaper than the cached one, and the
+ * cached query runs again only if the version changed. The number of results is bounded, the least
+ * recently used ones are evicted first.
+ *
+ * <p>Results are keyed by workflow ID, query type and arguments and always address the current run
+ * of the workflow.
+ */
+public class QueryCache {
+
+  /** Counts of the cache lookups. */
+  public static final class Metrics {
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Results returned without any call. */
+    public long getHits() {
+      return hits.get();
+    }
+
+    /** Results returned after a version check found the state unchanged. */
+    public long getRevalidations() {
+      return revalidations.get();
+    }
+
+    /** Results that required running the query. */
+    public long getMisses() {
+      return misses.get();
+    }
+
+    /** Share of the lookups that did not run the query. */
+    public double getHitRate() {
+      long total = hits.get() + revalidations.get() + misses.get();
+      return total == 0 ? 0 : (hits.get() + revalidations.get()) / (double) total;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "hits=%d, revalidations=%d, misses=%d, hitRate=%.1f%%",
+          hits.get(), revalidations.get(), misses.get(), getHitRate() * 100);
+    }
+  }
+
+  private static final class Key {
+    private final String workflowId;
+    private final String queryType;
+    private final List<Object> args;
+
+    Key(String workflowId, String queryType, Object[] args) {
+      this.workflowId = workflowId;
+      this.queryType = queryType;
+      this.args = Arrays.asList(args);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return workflowId.equals(key.workflowId)
+          && queryType.equals(key.queryType)
+          && args.equals(key.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(workflowId, queryType, args);
+    }
+  }
+
+  private static final class Entry {
+    private final Object result;
+    private final Object version;
+    private volatile long validatedNanos;
+
+    Entry(Object result, Object version, long validatedNanos) {
+      this.result = result;
+      this.version = version;
+      this.validatedNanos = validatedNanos;
+    }
+  }
+
+  private final WorkflowClient client;
+  private final Function<String, Object> versionOf;
+  private final long timeToLiveNanos;
+  private final Cache<Key, Entry> entries;
+  private final Metrics metrics = new Metrics();
+
+  /**
+   * @param versionQueryType query that returns the version of the workflow state, the version must
+   *     change whenever a cached query could return a different result. Null to rely on the time to
+   *     live only.
+   * @param timeToLive how long a result is returned without checking the version
+   * @param maximumSize maximum number of cached results
+   */
+  public QueryCache(
+      WorkflowClient client, String versionQueryType, Duration timeToLive, long maximumSize) {
+    this.client = client;
+    this.versionOf =
+        versionQueryType == null
+            ? workflowId -> null
+            : workflowId -> runQuery(workflowId, versionQueryType, Object.class);
+    this.timeToLiveNanos = timeToLive.toNanos();
+    // A single segment keeps the eviction order global, writes are rare compared to reads.
+    this.entries = CacheBuilder.newBuilder().concurrencyLevel(1).maximumSize(maximumSize).build();
+  }
+
+  /** Returns the result of the query, from the cache when it is still valid. */
+  @SuppressWarnings("unchecked")
+  public <R> R query(String workflowId, String queryType, Class<R> resultClass, Object... args) {
+    Key key = new Key(workflowId, queryType, args);
+    Entry entry = entries.getIfPresent(key);
+    if (entry != null) {
+      long now = System.nanoTime();
+      if (now - entry.validatedNanos < timeToLiveNanos) {
+        metrics.hits.incrementAndGet();
+        return (R) entry.result;
+      }
+      Object version = versionOf.apply(workflowId);
+      if (version != null && version.equals(entry.version)) {
+        entry.validatedNanos = now;
+        metrics.revalidations.incrementAndGet();
+        return (R) entry.result;
+      }
+      // Another lookup could have replaced the stale result already.
+      entries.asMap().remove(key, entry);
+    }
+    boolean[] loaded = new boolean[1];
+    try {
+      // Concurrent lookups of the same missing key run the query once.
+      Object result =
+          entries.get(
+                  key,
+                  () -> {
+                    loaded[0] = true;
+                    // The version is read first, so a change during the query makes it stale.
+                    Object version = versionOf.apply(workflowId);
+                    R value = runQuery(workflowId, queryType, resultClass, args);
+                    return new Entry(value, version, System.nanoTime());
+                  })
+              .result;
+      (loaded[0] ? metrics.misses : metrics.hits).incrementAndGet();
+      return (R) result;
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /** Drops all the cached results of the workflow. */
+  public void invalidate(String workflowId) {
+    entries.asMap().keySet().removeIf(key -> key.workflowId.equals(workflowId));
+  }
+
+  public long size() {
+    return entries.size();
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  private <R> R runQuery(
+      String workflowId, String queryType, Class<R> resultClass, Object... args) {
+    return client
+        .newUntypedWorkflowStub(workflowId, Optional.empty(), Optional.empty())
+        .query(queryType, resultClass, args);
+  }
+}
@@ -17,32 +17,37 @@
 
 package com.uber.cadence.samples.common;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.WorkflowExecution;
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.client.WorkflowStub;
-import com.uber.cadence.serviceclient.IWorkflowService;
-import com.uber.cadence.serviceclient.WorkflowServiceTChannel;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * Queries a workflow execution using the Cadence query API. Cadence redirects a query to any
  * currently running workflow worker for the workflow type of the requested workflow execution.
  *
+ * <p>In batch mode queries every execution listed in a file through a single client and writes the
+ * results to another file.
+ *
  * @author fateev
  */
 public class QueryWorkflowExecution {
 
   public static void main(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals("batch")) {
+      batch(args);
+      return;
+    }
     if (args.length < 2 || args.length > 3) {
-      System.err.println(
-          "Usage: java "
-              + QueryWorkflowExecution.class.getName()
-              + " <queryType> <workflowId> [<runId>]");
-      System.exit(1);
+      printUsage();
     }
-    IWorkflowService cadenceService = new WorkflowServiceTChannel();
 
     String queryType = args[0];
 
@@ -50,14 +55,48 @@ public class QueryWorkflowExecution {
     String workflowId = args[1];
     workflowExecution.setWorkflowId(workflowId);
     if (args.length == 3) {
-      String runId = args[1];
+      String runId = args[2];
       workflowExecution.setRunId(runId);
     }
-    WorkflowClient client = WorkflowClient.newInstance(cadenceService, DOMAIN);
+    WorkflowClient client = CadenceClients.getWorkflowClient();
     WorkflowStub workflow = client.newUntypedWorkflowStub(workflowExecution, Optional.empty());
     String result = workflow.query(queryType, String.class);
 
     System.out.println("Query result for " + workflowExecution + ":");
     System.out.println(result);
   }
+
+  private static void batch(String[] args) throws Exception {
+    if (args.length < 4 || args.length > 6) {
+      printUsage();
+    }
+    String queryType = args[1];
+    List<WorkflowExecution> executions = HistoryExporter.readExecutions(new File(args[2]));
+    int parallelism = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+    double queriesPerSecond = args.length > 5 ? Double.parseDouble(args[5]) : 100;
+
+    WorkflowClient client = CadenceClients.getWorkflowClient();
+    BatchQuery.Report report;
+    try (Writer results =
+        new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(args[3]), StandardCharsets.UTF_8))) {
+      report =
+          new BatchQuery(client, parallelism, queriesPerSecond)
+              .query(queryType, executions.iterator(), results);
+    }
+    System.out.println(report);
+    System.exit(0);
+  }
+
+  private static void printUsage() {
+    System.err.println(
+        "Usage: java "
+            + QueryWorkflowExecution.class.getName()
+            + " <queryType> <workflowId> [<runId>]\n"
+            + "   or: java "
+            + QueryWorkflowExecution.class.getName()
+            + " batch <queryType> <executionListFile> <resultsFile>"
+            + " [<parallelism>] [<queriesPerSecond>]");
+    System.exit(1);
+  }
 }
@@ -17,12 +17,9 @@
 
 package com.uber.cadence.samples.common;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.DomainAlreadyExistsError;
 import com.uber.cadence.RegisterDomainRequest;
 import com.uber.cadence.serviceclient.IWorkflowService;
-import com.uber.cadence.serviceclient.WorkflowServiceTChannel;
 import java.io.IOException;
 import org.apache.thrift.TException;
 
@@ -34,22 +31,23 @@ import org.apache.thrift.TException;
 public class RegisterDomain {
 
   public static void main(String[] args) throws TException, IOException {
-    IWorkflowService cadenceService = new WorkflowServiceTChannel();
+    IWorkflowService cadenceService = CadenceClients.getService();
+    String domain = CadenceClients.getDomain();
     RegisterDomainRequest request = new RegisterDomainRequest();
     request.setDescription("Java Samples");
-    request.setEmitMetric(false);
-    request.setName(DOMAIN);
+    request.setEmitMetric(true);
+    request.setName(domain);
     int retentionPeriodInDays = 1;
     request.setWorkflowExecutionRetentionPeriodInDays(retentionPeriodInDays);
     try {
       cadenceService.RegisterDomain(request);
       System.out.println(
           "Successfully registered domain \""
-              + DOMAIN
+              + domain
               + "\" with retentionDays="
               + retentionPeriodInDays);
     } catch (DomainAlreadyExistsError e) {
-      System.out.println("Domain \"" + DOMAIN + "\" is already registered");
+      System.out.println("Domain \"" + domain + "\" is already registered");
     }
     System.exit(0);
   }
@@ -0,0 +1,277 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.WorkflowExecutionStartedEventAttributes;
+import com.uber.cadence.common.WorkflowExecutionHistory;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replays a corpus of recorded histories through the workflow implementations to catch decision
+ * processing regressions before a deployment. For every workflow type it reports the replay time,
+ * the memory allocated per replay and the number of histories that failed to replay, which usually
+ * means that the implementation is not deterministic anymore.
+ *
+ * <p>Histories are read from files written by {@link HistoryExporter} or from the JSON format of
+ * {@link WorkflowExecutionHistory}. Every history is replayed a number of warmup iterations before
+ * the measured ones, like a JMH average time benchmark.
+ */
+public class ReplayBenchmark {
+
+  /** Results of a workflow type. */
+  public static final class Result {
+    private final LatencyRecorder replayTime = new LatencyRecorder();
+    private long allocatedBytes;
+    private int histories;
+    private int failures;
+    private String firstFailure;
+
+    public LatencyRecorder getReplayTime() {
+      return replayTime;
+    }
+
+    /**
+     * Approximate number of bytes allocated per replay. Allocations of the threads that exit during
+     * the replays are not counted.
+     */
+    public long getAllocatedBytesPerReplay() {
+      return replayTime.getCount() == 0 ? 0 : allocatedBytes / replayTime.getCount();
+    }
+
+    public int getHistories() {
+      return histories;
+    }
+
+    /** Number of histories that failed to replay. */
+    public int getFailures() {
+      return failures;
+    }
+
+    public String getFirstFailure() {
+      return firstFailure;
+    }
+  }
+
+  /** Workflow type under which the histories that cannot be read are reported. */
+  public static final String INVALID_HISTORY = "<invalid history>";
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private final Class<?>[] workflowImplementationTypes;
+  private final int warmupIterations;
+  private final int iterations;
+
+  public ReplayBenchmark(
+      Class<?>[] workflowImplementationTypes, int warmupIterations, int iterations) {
+    this.workflowImplementationTypes = workflowImplementationTypes;
+    this.warmupIterations = warmupIterations;
+    this.iterations = iterations;
+  }
+
+  /**
+   * Replays all the histories and returns the results by workflow type. A history that cannot be
+   * read counts as a failure of {@link #INVALID_HISTORY}.
+   */
+  public Map<String, Result> run(List<File> files) {
+    Map<String, Result> results = new TreeMap<>();
+    // Workers are reused across replays, so only the decision processing is measured.
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    Map<String, Worker> workers = new HashMap<>();
+    try {
+      for (File file : files) {
+        WorkflowExecutionHistory history;
+        WorkflowExecutionStartedEventAttributes started;
+        try {
+          history = readHistory(file);
+          started = getStartedEventAttributes(file, history);
+        } catch (IOException e) {
+          Result result = results.computeIfAbsent(INVALID_HISTORY, k -> new Result());
+          result.histories++;
+          addFailure(result, file, e);
+          continue;
+        }
+        String workflowType = started.getWorkflowType().getName();
+        String taskList = started.getTaskList().getName();
+        Worker worker =
+            workers.computeIfAbsent(
+                taskList,
+                k -> {
+                  Worker w = testEnv.newWorker(k);
+                  w.registerWorkflowImplementationTypes(workflowImplementationTypes);
+                  return w;
+                });
+        Result result = results.computeIfAbsent(workflowType, k -> new Result());
+        result.histories++;
+        try {
+          replay(worker, history, result);
+        } catch (Throwable e) {
+          addFailure(result, file, e);
+        }
+      }
+    } finally {
+      testEnv.close();
+    }
+    return results;
+  }
+
+  private static WorkflowExecutionStartedEventAttributes getStartedEventAttributes(
+      File file, WorkflowExecutionHistory history) throws IOException {
+    List<HistoryEvent> events = history.getEvents();
+    if (events.isEmpty() || events.get(0).getWorkflowExecutionStartedEventAttributes() == null) {
+      throw new IOException("History " + file + " does not start with WorkflowExecutionStarted");
+    }
+    return events.get(0).getWorkflowExecutionStartedEventAttributes();
+  }
+
+  private static void addFailure(Result result, File file, Throwable failure) {
+    result.failures++;
+    if (result.firstFailure == null) {
+      result.firstFailure = file.getName() + ": " + failure;
+    }
+  }
+
+  private void replay(Worker worker, WorkflowExecutionHistory history, Result result)
+      throws Exception {
+    for (int i = 0; i < warmupIterations; i++) {
+      worker.replayWorkflowExecution(history);
+    }
+    // Workflow code runs in its own threads, so allocations are summed over all of them. Threads
+    // that exit meanwhile are missed, so the figure is approximate.
+    long allocatedBefore = getAllocatedBytes();
+    for (int i = 0; i < iterations; i++) {
+      long startNanos = System.nanoTime();
+      worker.replayWorkflowExecution(history);
+      result.replayTime.record(System.nanoTime() - startNanos);
+    }
+    result.allocatedBytes += Math.max(0, getAllocatedBytes() - allocatedBefore);
+  }
+
+  private static long getAllocatedBytes() {
+    long result = 0;
+    for (long allocated : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+      if (allocated > 0) {
+        result += allocated;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads a history exported by {@link HistoryExporter} or a JSON array of events as printed by the
+   * Cadence CLI.
+   */
+  public static WorkflowExecutionHistory readHistory(File file) throws IOException {
+    try {
+      if (file.getName().endsWith(".json")) {
+        return WorkflowExecutionHistory.fromJson(
+            new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+      }
+      List<HistoryEvent> events = new ArrayList<>();
+      try (HistoryFormat.EventReader reader =
+          HistoryFormat.forFile(file).newReader(new FileInputStream(file))) {
+        for (HistoryEvent event = reader.read(); event != null; event = reader.read()) {
+          events.add(event);
+        }
+      }
+      return new WorkflowExecutionHistory(events);
+    } catch (RuntimeException e) {
+      throw new IOException("Invalid history " + file, e);
+    }
+  }
+
+  /** Prints the results in the layout of a JMH report. */
+  public static void print(Map<String, Result> results, PrintStream out) {
+    String format = "%-50s %6s %10s %10s %10s %12s %8s%n";
+    out.printf(format, "Workflow type", "Cnt", "Avg", "p99", "Max", "Alloc", "Failed");
+    out.printf(format, "", "", "ms/op", "ms/op", "ms/op", "~B/op", "");
+    for (Map.Entry<String, Result> entry : results.entrySet()) {
+      Result result = entry.getValue();
+      LatencyRecorder time = result.replayTime;
+      out.printf(
+          format,
+          entry.getKey(),
+          time.getCount(),
+          toMillis(time.getCount() == 0 ? 0 : time.getSum() / time.getCount()),
+          toMillis(time.getPercentile(99)),
+          toMillis(time.getMax()),
+          result.getAllocatedBytesPerReplay(),
+          result.failures + "/" + result.histories);
+    }
+    out.println("Alloc is approximate, it misses threads that exit during a replay.");
+    for (Map.Entry<String, Result> entry : results.entrySet()) {
+      if (entry.getValue().firstFailure != null) {
+        out.println(entry.getKey() + " failed to replay " + entry.getValue().firstFailure);
+      }
+    }
+  }
+
+  private static String toMillis(long nanos) {
+    return String.format("%.3f", nanos / 1_000_000.0);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2 || args.length > 4) {
+      System.err.println(
+          "Usage: java "
+              + ReplayBenchmark.class.getName()
+              + " <historyDirectory> <workflowImplementationClass>[,<class>...]"
+              + " [<iterations>] [<warmupIterations>]");
+      System.exit(1);
+    }
+    File[] files =
+        new File(args[0])
+            .listFiles(
+                file ->
+                    file.getName().endsWith(".json")
+                        || file.getName().endsWith(HistoryFormat.JSON.getExtension())
+                        || file.getName().endsWith(HistoryFormat.BINARY.getExtension()));
+    if (files == null) {
+      throw new IllegalArgumentException("Not a directory: " + args[0]);
+    }
+    Arrays.sort(files);
+    String[] classNames = args[1].split(",");
+    Class<?>[] types = new Class<?>[classNames.length];
+    for (int i = 0; i < classNames.length; i++) {
+      types[i] = Class.forName(classNames[i]);
+    }
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    int warmupIterations = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+    Map<String, Result> results =
+        new ReplayBenchmark(types, warmupIterations, iterations).run(Arrays.asList(files));
+    print(results, System.out);
+    int failures = results.values().stream().mapToInt(Result::getFailures).sum();
+    System.exit(failures == 0 ? 0 : 1);
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Waits until a workflow reports that it has processed a sequence number. A single poller queries
+ * the processed sequence on behalf of all the waiters, so the query rate does not depend on the
+ * number of signals in flight. The poller runs only while there are waiters, starting at the
+ * minimum interval and backing off to the maximum one while the sequence does not advance.
+ *
+ * <p>The number of waiters is bounded, {@link #await} blocks when the bound is reached. A waiter is
+ * forgotten as soon as its future completes, whether by the sequence being processed, by a timeout
+ * or by a cancellation.
+ */
+public class SequenceWaiter implements AutoCloseable {
+
+  private final LongSupplier processedSequence;
+  private final long minPollIntervalNanos;
+  private final long maxPollIntervalNanos;
+  private final Semaphore permits;
+  private final NavigableMap<Long, CompletableFuture<Long>> waiters = new ConcurrentSkipListMap<>();
+  private final ScheduledThreadPoolExecutor poller =
+      new ScheduledThreadPoolExecutor(
+          1,
+          r -> {
+            Thread thread = new Thread(r, "sequence-poller");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final AtomicLong queries = new AtomicLong();
+  private volatile long processed = Long.MIN_VALUE;
+  /** Guarded by this. */
+  private boolean polling;
+
+  private volatile long pollIntervalNanos;
+
+  /**
+   * @param processedSequence returns the highest sequence number the workflow has processed, all
+   *     the lower ones must be processed as well
+   * @param maxWaiters maximum number of sequence numbers waited for at the same time
+   */
+  public SequenceWaiter(
+      LongSupplier processedSequence,
+      Duration minPollInterval,
+      Duration maxPollInterval,
+      int maxWaiters) {
+    this.processedSequence = processedSequence;
+    this.minPollIntervalNanos = minPollInterval.toNanos();
+    this.maxPollIntervalNanos = maxPollInterval.toNanos();
+    this.permits = new Semaphore(maxWaiters);
+    // Timeouts of completed waiters must not stay queued until they expire.
+    poller.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Returns a future that completes with the processed sequence once it reaches the given one, or
+   * fails with a {@link TimeoutException} after the timeout. The future can also be cancelled to
+   * stop waiting.
+   */
+  public CompletableFuture<Long> await(long sequence, Duration timeout)
+      throws InterruptedException {
+    if (poller.isShutdown()) {
+      throw new IllegalStateException("closed");
+    }
+    if (processed >= sequence) {
+      return CompletableFuture.completedFuture(processed);
+    }
+    permits.acquire();
+    CompletableFuture<Long> result = new CompletableFuture<>();
+    CompletableFuture<Long> existing = waiters.putIfAbsent(sequence, result);
+    if (existing != null) {
+      permits.release();
+      return existing;
+    }
+    ScheduledFuture<?> timer =
+        poller.schedule(
+            () -> result.completeExceptionally(new TimeoutException("sequence " + sequence)),
+            timeout.toNanos(),
+            TimeUnit.NANOSECONDS);
+    result.whenComplete(
+        (r, e) -> {
+          timer.cancel(false);
+          waiters.remove(sequence, result);
+          permits.release();
+        });
+    // The sequence could have been reached by a poll since the check above.
+    if (processed >= sequence) {
+      result.complete(processed);
+      return result;
+    }
+    synchronized (this) {
+      if (!polling) {
+        polling = true;
+        pollIntervalNanos = minPollIntervalNanos;
+        poller.schedule(this::poll, minPollIntervalNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+    return result;
+  }
+
+  /** Number of queries of the processed sequence. */
+  public long getQueries() {
+    return queries.get();
+  }
+
+  /** Number of sequence numbers waited for. */
+  public int getWaiters() {
+    return waiters.size();
+  }
+
+  /** Cancels all the waiters. */
+  @Override
+  public void close() {
+    poller.shutdownNow();
+    for (CompletableFuture<Long> waiter : waiters.values()) {
+      waiter.completeExceptionally(new CancellationException("closed"));
+    }
+  }
+
+  private void poll() {
+    long current;
+    try {
+      queries.incrementAndGet();
+      current = processedSequence.getAsLong();
+    } catch (RuntimeException e) {
+      // Retried at the next interval, the waiters time out on their own.
+      current = processed;
+    }
+    if (current > processed) {
+      processed = current;
+      pollIntervalNanos = minPollIntervalNanos;
+    } else {
+      pollIntervalNanos = Math.min(pollIntervalNanos * 2, maxPollIntervalNanos);
+    }
+    Map<Long, CompletableFuture<Long>> done = waiters.headMap(current, true);
+    for (CompletableFuture<Long> waiter : done.values()) {
+      waiter.complete(current);
+    }
+    synchronized (this) {
+      if (waiters.isEmpty()) {
+        polling = false;
+        return;
+      }
+    }
+    if (!poller.isShutdown()) {
+      poller.schedule(this::poll, pollIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+}
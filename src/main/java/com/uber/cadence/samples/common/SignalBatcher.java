@@ -0,0 +1,271 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.client.WorkflowClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces signals to the same workflow into a single signal that carries a list of them. The
+ * workflow must have a signal method that accepts a list, for example {@code void
+ * waitForNames(List<String> names)}.
+ *
+ * <p>A batch is sent when it reaches the maximum size or when its first item has waited for the
+ * linger time. At most one batch per workflow is in flight, so items arrive in the order they were
+ * added, and items added while a batch is in flight are sent together as soon as it completes. The
+ * number of items not yet sent is bounded, {@link #signal} blocks when the bound is reached.
+ *
+ * @param <T> type of the items
+ */
+public class SignalBatcher<T> implements AutoCloseable {
+
+  /** Counts of the sent signals. */
+  public static final class Metrics {
+    private final AtomicLong signals = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyRecorder latency = new LatencyRecorder();
+
+    /** Number of signal RPCs. */
+    public long getSignals() {
+      return signals.get();
+    }
+
+    public long getItems() {
+      return items.get();
+    }
+
+    /** Number of signal RPCs that failed. */
+    public long getFailures() {
+      return failures.get();
+    }
+
+    public LatencyRecorder getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      long count = signals.get();
+      return String.format(
+          "%d items in %d signals (%.1f per signal, %d failed), latency %s",
+          items.get(),
+          count,
+          count == 0 ? 0 : items.get() / (double) count,
+          failures.get(),
+          latency);
+    }
+  }
+
+  /** Items of a workflow that are not sent yet. */
+  private final class Buffer {
+    private final String workflowId;
+    private List<T> items = new ArrayList<>();
+    private CompletableFuture<Void> sent = new CompletableFuture<>();
+    private ScheduledFuture<?> linger;
+    private boolean sending;
+    /** Set once the buffer is removed from the map, a new one must be created. */
+    private boolean removed;
+
+    Buffer(String workflowId) {
+      this.workflowId = workflowId;
+    }
+  }
+
+  private final WorkflowClient client;
+  private final String signalName;
+  private final int maxBatchSize;
+  private final Duration linger;
+  private final int maxPendingItems;
+  private final Semaphore pending;
+  private final Map<String, Buffer> buffers = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+  private final ExecutorService senders;
+  private final Metrics metrics = new Metrics();
+  private volatile boolean closed;
+
+  /**
+   * @param signalName name of the signal that accepts a list, like "GreetingWorkflow::waitForNames"
+   * @param maxBatchSize maximum number of items in a signal
+   * @param linger maximum time an item waits for more items before it is sent
+   * @param maxPendingItems maximum number of items added but not sent yet
+   * @param parallelism maximum number of signals in flight across all workflows
+   */
+  public SignalBatcher(
+      WorkflowClient client,
+      String signalName,
+      int maxBatchSize,
+      Duration linger,
+      int maxPendingItems,
+      int parallelism) {
+    this.client = client;
+    this.signalName = signalName;
+    this.maxBatchSize = maxBatchSize;
+    this.linger = linger;
+    this.maxPendingItems = maxPendingItems;
+    this.pending = new Semaphore(maxPendingItems);
+    this.senders = Executors.newFixedThreadPool(parallelism);
+  }
+
+  /**
+   * Adds an item for the workflow. The returned future completes when the signal that carries it is
+   * accepted by the service, or completes exceptionally if the signal fails.
+   */
+  public CompletableFuture<Void> signal(String workflowId, T item) throws InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("closed");
+    }
+    pending.acquire();
+    while (true) {
+      Buffer buffer = buffers.computeIfAbsent(workflowId, Buffer::new);
+      synchronized (buffer) {
+        if (buffer.removed) {
+          continue;
+        }
+        buffer.items.add(item);
+        CompletableFuture<Void> result = buffer.sent;
+        if (!buffer.sending) {
+          if (buffer.items.size() >= maxBatchSize) {
+            send(buffer);
+          } else if (buffer.linger == null) {
+            buffer.linger =
+                timer.schedule(() -> lingerExpired(buffer), linger.toNanos(), TimeUnit.NANOSECONDS);
+          }
+        }
+        return result;
+      }
+    }
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  /** Sends all the added items without waiting for the linger time. */
+  public void flush() {
+    for (Buffer buffer : buffers.values()) {
+      synchronized (buffer) {
+        if (!buffer.sending && !buffer.items.isEmpty()) {
+          send(buffer);
+        }
+      }
+    }
+  }
+
+  /** Sends all the added items and waits until they are sent. */
+  @Override
+  public void close() throws InterruptedException {
+    closed = true;
+    flush();
+    pending.acquire(maxPendingItems);
+    pending.release(maxPendingItems);
+    timer.shutdownNow();
+    senders.shutdown();
+  }
+
+  private void lingerExpired(Buffer buffer) {
+    synchronized (buffer) {
+      buffer.linger = null;
+      if (!buffer.sending && !buffer.items.isEmpty()) {
+        send(buffer);
+      }
+    }
+  }
+
+  /** Takes up to a batch of items from the buffer and sends them. Called with the buffer locked. */
+  private void send(Buffer buffer) {
+    if (buffer.linger != null) {
+      buffer.linger.cancel(false);
+      buffer.linger = null;
+    }
+    List<T> batch;
+    CompletableFuture<Void> sent = buffer.sent;
+    if (buffer.items.size() <= maxBatchSize) {
+      batch = buffer.items;
+      buffer.items = new ArrayList<>();
+      buffer.sent = new CompletableFuture<>();
+    } else {
+      // The items share a future that completes with the last of their batches, which is sent
+      // after this one. A failure of this batch fails it right away.
+      batch = new ArrayList<>(buffer.items.subList(0, maxBatchSize));
+      buffer.items = new ArrayList<>(buffer.items.subList(maxBatchSize, buffer.items.size()));
+      CompletableFuture<Void> remaining = buffer.sent;
+      sent = new CompletableFuture<>();
+      sent.whenComplete(
+          (r, e) -> {
+            if (e != null) {
+              remaining.completeExceptionally(e);
+            }
+          });
+    }
+    buffer.sending = true;
+    CompletableFuture<Void> batchSent = sent;
+    senders.execute(() -> sendBatch(buffer, batch, batchSent));
+  }
+
+  private void sendBatch(Buffer buffer, List<T> batch, CompletableFuture<Void> sent) {
+    long startNanos = System.nanoTime();
+    Throwable failure = null;
+    try {
+      client
+          .newUntypedWorkflowStub(buffer.workflowId, Optional.empty(), Optional.empty())
+          .signal(signalName, batch);
+      metrics.latency.record(System.nanoTime() - startNanos);
+    } catch (RuntimeException e) {
+      metrics.failures.incrementAndGet();
+      failure = e;
+    } catch (Error e) {
+      metrics.failures.incrementAndGet();
+      failure = e;
+      throw e;
+    } finally {
+      // Also after an Error, so the buffer keeps sending and the pending items are released.
+      metrics.signals.incrementAndGet();
+      metrics.items.addAndGet(batch.size());
+      pending.release(batch.size());
+      synchronized (buffer) {
+        buffer.sending = false;
+        if (!buffer.items.isEmpty()) {
+          // Items added while the batch was in flight have already waited long enough.
+          send(buffer);
+        } else if (buffer.linger == null) {
+          buffers.remove(buffer.workflowId, buffer);
+          buffer.removed = true;
+        }
+      }
+      if (failure == null) {
+        sent.complete(null);
+      } else {
+        sent.completeExceptionally(failure);
+      }
+    }
+  }
+}
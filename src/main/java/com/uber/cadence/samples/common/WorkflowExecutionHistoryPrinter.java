@@ -17,15 +17,15 @@
 
 package com.uber.cadence.samples.common;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
+import com.uber.cadence.HistoryEvent;
 import com.uber.cadence.WorkflowExecution;
 import com.uber.cadence.internal.common.WorkflowExecutionUtils;
 import com.uber.cadence.serviceclient.IWorkflowService;
-import com.uber.cadence.serviceclient.WorkflowServiceTChannel;
+import java.util.Iterator;
 
 /**
- * Prints a workflow execution history to the console.
+ * Prints a workflow execution history to the console. Events are printed page by page as they are
+ * fetched, so histories of any length can be printed with constant memory.
  *
  * @author fateev
  */
@@ -39,13 +39,16 @@ public class WorkflowExecutionHistoryPrinter {
               + " <workflowId> <runId>");
       System.exit(1);
     }
-    IWorkflowService cadenceService = new WorkflowServiceTChannel();
+    IWorkflowService cadenceService = CadenceClients.getService();
     WorkflowExecution workflowExecution = new WorkflowExecution();
     String workflowId = args[0];
     workflowExecution.setWorkflowId(workflowId);
     String runId = args[1];
     workflowExecution.setRunId(runId);
-    System.out.println(
-        WorkflowExecutionUtils.prettyPrintHistory(cadenceService, DOMAIN, workflowExecution, true));
+    Iterator<HistoryEvent> events =
+        new HistoryPager(cadenceService, CadenceClients.getDomain(), workflowExecution).events();
+    while (events.hasNext()) {
+      System.out.println(WorkflowExecutionUtils.prettyPrintHistoryEvent(events.next()));
+    }
   }
 }
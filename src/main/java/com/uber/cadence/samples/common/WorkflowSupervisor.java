@@ -0,0 +1,236 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.client.DuplicateWorkflowException;
+import com.uber.cadence.client.WorkflowClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps long running workflows, such as periodic ones, alive. Each supervised workflow is started,
+ * or found already running, and then waited for with an asynchronous long poll, so no thread is
+ * held per workflow. When a workflow closes, or cannot be started, it is started again after an
+ * exponential backoff with jitter, which keeps the restarts of many workflows from arriving at the
+ * service all at once.
+ *
+ * <p>A single thread schedules the restarts. The start calls are blocking in this client, so they
+ * run on a small pool of their own.
+ */
+public class WorkflowSupervisor implements AutoCloseable {
+
+  /**
+   * Starts a workflow with the given ID. The ID reuse policy must allow a start after the previous
+   * run closed, otherwise a closed workflow looks as if it was still running.
+   */
+  public interface Starter {
+
+    /** @throws DuplicateWorkflowException if the workflow is already running */
+    WorkflowExecution start(String workflowId);
+  }
+
+  /** Counts of the supervisor actions. */
+  public static final class Metrics {
+    private final AtomicLong starts = new AtomicLong();
+    private final AtomicLong alreadyRunning = new AtomicLong();
+    private final AtomicLong startFailures = new AtomicLong();
+    private final AtomicLong completions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private volatile String lastFailure;
+
+    /** Workflows started by the supervisor. */
+    public long getStarts() {
+      return starts.get();
+    }
+
+    /** Start attempts that found the workflow already running. */
+    public long getAlreadyRunning() {
+      return alreadyRunning.get();
+    }
+
+    /** Start attempts that failed and are retried. */
+    public long getStartFailures() {
+      return startFailures.get();
+    }
+
+    /** Workflows that completed successfully. */
+    public long getCompletions() {
+      return completions.get();
+    }
+
+    /** Workflows that failed, timed out or were terminated. */
+    public long getFailures() {
+      return failures.get();
+    }
+
+    /** Start attempts scheduled after the first one of each workflow. */
+    public long getRestarts() {
+      return restarts.get();
+    }
+
+    public String getLastFailure() {
+      return lastFailure;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "starts=%d, alreadyRunning=%d, startFailures=%d, completions=%d, failures=%d, restarts=%d",
+          starts.get(),
+          alreadyRunning.get(),
+          startFailures.get(),
+          completions.get(),
+          failures.get(),
+          restarts.get());
+    }
+  }
+
+  private final WorkflowClient client;
+  private final Starter starter;
+  private final long minBackoffMillis;
+  private final long maxBackoffMillis;
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "workflow-supervisor");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final ExecutorService starters;
+  /** Consecutive failures by supervised workflow ID. */
+  private final Map<String, Integer> supervised = new ConcurrentHashMap<>();
+
+  private final Metrics metrics = new Metrics();
+
+  /**
+   * @param minBackoff delay before the first restart of a workflow, doubled after every failure
+   * @param startParallelism maximum number of start calls in flight
+   */
+  public WorkflowSupervisor(
+      WorkflowClient client,
+      Starter starter,
+      Duration minBackoff,
+      Duration maxBackoff,
+      int startParallelism) {
+    this.client = client;
+    this.starter = starter;
+    this.minBackoffMillis = minBackoff.toMillis();
+    this.maxBackoffMillis = maxBackoff.toMillis();
+    this.starters =
+        Executors.newFixedThreadPool(
+            startParallelism,
+            r -> {
+              Thread thread = new Thread(r, "workflow-supervisor-start");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** Starts supervising the workflow. Does nothing if it is already supervised. */
+  public void supervise(String workflowId) {
+    if (supervised.putIfAbsent(workflowId, 0) == null) {
+      scheduler.execute(() -> start(workflowId));
+    }
+  }
+
+  /** Stops restarting the workflow. Does not affect the workflow itself. */
+  public void stop(String workflowId) {
+    supervised.remove(workflowId);
+  }
+
+  public int getSupervised() {
+    return supervised.size();
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    starters.shutdownNow();
+  }
+
+  private void start(String workflowId) {
+    if (!supervised.containsKey(workflowId)) {
+      return;
+    }
+    starters.execute(
+        () -> {
+          try {
+            starter.start(workflowId);
+            metrics.starts.incrementAndGet();
+          } catch (DuplicateWorkflowException e) {
+            metrics.alreadyRunning.incrementAndGet();
+          } catch (RuntimeException e) {
+            metrics.startFailures.incrementAndGet();
+            metrics.lastFailure = workflowId + ": " + e;
+            restart(workflowId, true);
+            return;
+          }
+          awaitClose(workflowId, System.nanoTime());
+        });
+  }
+
+  private void awaitClose(String workflowId, long startNanos) {
+    // Without a run ID the result follows the workflow across continue-as-new.
+    client
+        .newUntypedWorkflowStub(workflowId, Optional.empty(), Optional.empty())
+        .getResultAsync(Void.class)
+        .whenComplete(
+            (result, failure) -> {
+              // A run that stayed up longer than the backoff does not count as a crash loop.
+              if (System.nanoTime() - startNanos
+                  > TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis)) {
+                supervised.replace(workflowId, 0);
+              }
+              if (failure == null) {
+                metrics.completions.incrementAndGet();
+              } else {
+                metrics.failures.incrementAndGet();
+                metrics.lastFailure = workflowId + ": " + failure;
+              }
+              restart(workflowId, failure != null);
+            });
+  }
+
+  private void restart(String workflowId, boolean failed) {
+    Integer failures =
+        supervised.computeIfPresent(workflowId, (id, count) -> failed ? count + 1 : 0);
+    if (failures == null || scheduler.isShutdown()) {
+      return;
+    }
+    metrics.restarts.incrementAndGet();
+    long backoff =
+        Math.min(minBackoffMillis << Math.min(Math.max(failures - 1, 0), 30), maxBackoffMillis);
+    // Equal jitter: at least half of the backoff, so restarts never bunch up at zero.
+    long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    scheduler.schedule(() -> start(workflowId), delay, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * Streams a file through the download, process and upload stages running concurrently. The stages
+ * are connected through bounded queues of chunks. So the memory used by a file is limited by the
+ * queue capacity and a slow stage applies backpressure to the previous ones. The end to end time is
+ * close to the time of the slowest stage instead of the sum of all of them.
+ *
+ * <p>Upload runs in the calling thread, so an activity can heartbeat its progress from the
+ * listener.
+ */
+public class FilePipeline {
+
+  /** Transforms a chunk of the file. Chunks are processed in order. */
+  public interface ChunkProcessor {
+    byte[] process(byte[] chunk) throws IOException;
+  }
+
+  /** Uploads a processed chunk. Chunks are uploaded in order. */
+  public interface ChunkUploader {
+    void upload(Chunk chunk) throws IOException, InterruptedException;
+  }
+
+  public static final class Chunk {
+    private final long offset;
+    private final byte[] data;
+    // Processing can change the size of the data.
+    private final int sourceLength;
+
+    public Chunk(long offset, byte[] data) {
+      this(offset, data, data.length);
+    }
+
+    private Chunk(long offset, byte[] data, int sourceLength) {
+      this.offset = offset;
+      this.data = data;
+      this.sourceLength = sourceLength;
+    }
+
+    /** Offset of the chunk in the source file. */
+    public long getOffset() {
+      return offset;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+  }
+
+  private static final Chunk END = new Chunk(-1, new byte[0]);
+
+  private static final long POLL_INTERVAL_MILLIS = 100;
+
+  private final ExecutorService executor;
+  private final int chunkSize;
+  private final int queueCapacity;
+
+  /**
+   * @param executor runs the download and process stages
+   * @param chunkSize size of the chunks read from the source
+   * @param queueCapacity maximum number of chunks buffered between two stages
+   */
+  public FilePipeline(ExecutorService executor, int chunkSize, int queueCapacity) {
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Runs the pipeline until the source is exhausted or one of the stages fails.
+   *
+   * @param source input positioned at the offset
+   * @param offset number of bytes of the source that were already uploaded
+   * @param progress receives the number of source bytes uploaded after each chunk
+   * @return total number of source bytes uploaded including the offset
+   */
+  public long run(
+      InputStream source,
+      long offset,
+      ChunkProcessor processor,
+      ChunkUploader uploader,
+      LongConsumer progress)
+      throws IOException {
+    BlockingQueue<Chunk> downloaded = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<Chunk> processed = new ArrayBlockingQueue<>(queueCapacity);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Future<?> download =
+        executor.submit(
+            () -> {
+              try {
+                long position = offset;
+                while (true) {
+                  byte[] buffer = new byte[chunkSize];
+                  int read = ByteStreams.read(source, buffer, 0, chunkSize);
+                  if (read == 0) {
+                    break;
+                  }
+                  byte[] data = read == chunkSize ? buffer : Arrays.copyOf(buffer, read);
+                  downloaded.put(new Chunk(position, data));
+                  position += read;
+                }
+                downloaded.put(END);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+              }
+            });
+    Future<?> process =
+        executor.submit(
+            () -> {
+              try {
+                while (true) {
+                  Chunk chunk = downloaded.take();
+                  if (chunk == END) {
+                    processed.put(END);
+                    return;
+                  }
+                  processed.put(
+                      new Chunk(chunk.offset, processor.process(chunk.data), chunk.sourceLength));
+                }
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+              }
+            });
+
+    try {
+      long uploaded = offset;
+      while (true) {
+        Chunk chunk = processed.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (failure.get() != null) {
+          throw failure.get();
+        }
+        if (chunk == null) {
+          continue;
+        }
+        if (chunk == END) {
+          return uploaded;
+        }
+        uploader.upload(chunk);
+        uploaded = chunk.offset + chunk.sourceLength;
+        progress.accept(uploaded);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a processed chunk");
+    } catch (IOException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IOException(e);
+    } finally {
+      // Stops the other stages if the upload stage failed.
+      download.cancel(true);
+      process.cancel(true);
+    }
+  }
+}
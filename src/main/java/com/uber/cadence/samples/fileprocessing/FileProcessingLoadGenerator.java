@@ -0,0 +1,358 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.RateLimiter;
+import com.uber.cadence.EventType;
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.client.WorkflowStub;
+import com.uber.cadence.internal.common.WorkflowExecutionUtils;
+import com.uber.cadence.samples.common.CadenceClients;
+import com.uber.cadence.samples.common.LatencyRecorder;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how many files per second the file processing sample can handle. Starts workflows at a
+ * target rate, waits for all of them to complete and reports the end to end latency and the latency
+ * and throughput of every stage. Stage timings are taken from the workflow histories, so they are
+ * available both in process and against a real service.
+ *
+ * <p>By default everything runs in process on top of {@link TestWorkflowEnvironment}. With the
+ * "server" mode the workflows are started through a local Cadence service and executed by the
+ * FileProcessingWorker instances, which must run on the same machine as the source files are local.
+ * The in process service doesn't skip time while the results of the workflows are awaited, so the
+ * timings of retried activities include their real backoff.
+ */
+public class FileProcessingLoadGenerator {
+
+  /** Activities that transfer the whole file. Throughput is reported only for them. */
+  private static final List<String> TRANSFER_STAGES =
+      Arrays.asList("download", "process", "upload", "pipelineFile");
+
+  /** Result of a load generator run. */
+  public static final class Report {
+    private final LatencyRecorder endToEnd = new LatencyRecorder();
+    private final Map<String, LatencyRecorder> stageLatencies = new TreeMap<>();
+    private final Map<String, Long> stageBytes = new HashMap<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private long bytes;
+    private long elapsedNanos;
+
+    /** Size of the files processed by the completed workflows. */
+    public long getBytes() {
+      return bytes;
+    }
+
+    public LatencyRecorder getEndToEnd() {
+      return endToEnd;
+    }
+
+    public Map<String, LatencyRecorder> getStageLatencies() {
+      return stageLatencies;
+    }
+
+    /** Bytes transferred by the completed activities of each transfer stage. */
+    public Map<String, Long> getStageBytes() {
+      return stageBytes;
+    }
+
+    public int getFailures() {
+      return failures.get();
+    }
+
+    public void print() {
+      double seconds = elapsedNanos / 1e9;
+      System.out.println(
+          String.format(
+              "Completed %d workflows (%d failed) in %.1fs: %.1f files/s, %.1f MB/s",
+              endToEnd.getCount(),
+              failures.get(),
+              seconds,
+              endToEnd.getCount() / seconds,
+              bytes / 1e6 / seconds));
+      System.out.println("End to end: " + endToEnd);
+      for (Map.Entry<String, LatencyRecorder> stage : stageLatencies.entrySet()) {
+        LatencyRecorder latency = stage.getValue();
+        Long stageBytes = this.stageBytes.get(stage.getKey());
+        String throughput =
+            stageBytes == null || latency.getSum() == 0
+                ? ""
+                : String.format(
+                    ", %.1f MB/s per activity", stageBytes / 1e6 / (latency.getSum() / 1e9));
+        System.out.println(stage.getKey() + ": " + latency + throughput);
+      }
+    }
+  }
+
+  /** A started workflow and the size of its source. */
+  private static final class Execution {
+    private final WorkflowExecution execution;
+    private final long size;
+
+    Execution(WorkflowExecution execution, long size) {
+      this.execution = execution;
+      this.size = size;
+    }
+  }
+
+  private final WorkflowClient workflowClient;
+  private final IWorkflowService service;
+  private final String domain;
+  private final String workflowType;
+  private final WorkflowOptions workflowOptions;
+
+  public FileProcessingLoadGenerator(
+      WorkflowClient workflowClient, IWorkflowService service, String domain, boolean pipelined) {
+    this.workflowClient = workflowClient;
+    this.service = service;
+    this.domain = domain;
+    // Untyped stubs give access to the execution and the asynchronous result.
+    this.workflowType =
+        pipelined
+            ? "PipelinedFileProcessingWorkflow::processFile"
+            : "FileProcessingWorkflow::processFile";
+    this.workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(FileProcessingWorker.TASK_LIST)
+            .setExecutionStartToCloseTimeout(
+                Duration.ofSeconds(FileProcessingWorkflow.EXECUTION_START_TO_CLOSE_TIMEOUT_SECONDS))
+            .build();
+  }
+
+  /**
+   * Starts the workflows at the given rate and blocks until all of them complete.
+   *
+   * @param sources files to process, used in round robin order
+   * @param sourceSizes sizes of the sources in bytes
+   */
+  public Report run(
+      int workflowCount, double startsPerSecond, List<URL> sources, long[] sourceSizes)
+      throws Exception {
+    Report report = new Report();
+    RateLimiter rateLimiter = RateLimiter.create(startsPerSecond);
+    // Threads are used only by the blocking start calls, the results are awaited asynchronously.
+    ExecutorService starters = Executors.newCachedThreadPool();
+    List<CompletableFuture<Execution>> results = new ArrayList<>(workflowCount);
+    long startNanos = System.nanoTime();
+    try {
+      for (int i = 0; i < workflowCount; i++) {
+        rateLimiter.acquire();
+        URL source = sources.get(i % sources.size());
+        long size = sourceSizes[i % sourceSizes.length];
+        URL destination = new URL("http://loadtest/" + i);
+        CompletableFuture<Execution> result = new CompletableFuture<>();
+        results.add(result);
+        starters.execute(() -> startWorkflow(source, size, destination, report, result));
+      }
+      List<Execution> executions = new ArrayList<>(workflowCount);
+      for (CompletableFuture<Execution> result : results) {
+        Execution execution = result.get();
+        if (execution != null) {
+          executions.add(execution);
+          report.bytes += execution.size;
+        }
+      }
+      report.elapsedNanos = System.nanoTime() - startNanos;
+      for (Execution execution : executions) {
+        recordStages(execution.execution, execution.size, report);
+      }
+    } finally {
+      starters.shutdownNow();
+    }
+    return report;
+  }
+
+  /** Completes the result with the execution once the workflow is closed or null on failure. */
+  private void startWorkflow(
+      URL source, long size, URL destination, Report report, CompletableFuture<Execution> result) {
+    long startNanos = System.nanoTime();
+    WorkflowStub workflow = workflowClient.newUntypedWorkflowStub(workflowType, workflowOptions);
+    WorkflowExecution execution;
+    try {
+      execution = workflow.start(source, destination);
+    } catch (Exception e) {
+      report.failures.incrementAndGet();
+      result.complete(null);
+      return;
+    }
+    workflow
+        .getResultAsync(Void.class)
+        .whenComplete(
+            (r, e) -> {
+              if (e == null) {
+                report.endToEnd.record(System.nanoTime() - startNanos);
+                result.complete(new Execution(execution, size));
+              } else {
+                report.failures.incrementAndGet();
+                result.complete(null);
+              }
+            });
+  }
+
+  /** Extracts the start to close time of every activity from the workflow history. */
+  private void recordStages(WorkflowExecution execution, long size, Report report) {
+    Map<Long, String> activityTypes = new HashMap<>();
+    Map<Long, Long> startTimestamps = new HashMap<>();
+    Iterator<HistoryEvent> events = WorkflowExecutionUtils.getHistory(service, domain, execution);
+    while (events.hasNext()) {
+      HistoryEvent event = events.next();
+      if (event.getEventType() == EventType.ActivityTaskScheduled) {
+        activityTypes.put(
+            event.getEventId(),
+            event.getActivityTaskScheduledEventAttributes().getActivityType().getName());
+      } else if (event.getEventType() == EventType.ActivityTaskStarted) {
+        startTimestamps.put(
+            event.getActivityTaskStartedEventAttributes().getScheduledEventId(),
+            event.getTimestamp());
+      } else if (event.getEventType() == EventType.ActivityTaskCompleted) {
+        long scheduledEventId =
+            event.getActivityTaskCompletedEventAttributes().getScheduledEventId();
+        String stage = activityTypes.get(scheduledEventId);
+        Long started = startTimestamps.get(scheduledEventId);
+        if (stage == null || started == null) {
+          continue;
+        }
+        // Timestamps are in nanoseconds.
+        report
+            .stageLatencies
+            .computeIfAbsent(stage, k -> new LatencyRecorder())
+            .record(event.getTimestamp() - started);
+        String method = stage.substring(stage.indexOf("::") + 2);
+        if (TRANSFER_STAGES.contains(method)) {
+          report.stageBytes.merge(stage, size, Long::sum);
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3 || args.length > 5) {
+      System.err.println(
+          "Usage: java "
+              + FileProcessingLoadGenerator.class.getName()
+              + " <workflowCount> <startsPerSecond> <fileSize>[,<fileSize>...]"
+              + " [test|server] [sequential|pipelined]");
+      System.exit(1);
+    }
+    int workflowCount = Integer.parseInt(args[0]);
+    double startsPerSecond = Double.parseDouble(args[1]);
+    long[] sizes = Arrays.stream(args[2].split(",")).mapToLong(Long::parseLong).toArray();
+    boolean server = args.length > 3 && args[3].equals("server");
+    boolean pipelined = args.length > 4 && args[4].equals("pipelined");
+
+    File workDirectory = Files.createTempDir();
+    List<URL> sources = createSources(workDirectory, sizes);
+
+    TestWorkflowEnvironment testEnv = null;
+    WorkflowClient workflowClient;
+    IWorkflowService service;
+    String domain;
+    if (server) {
+      service = CadenceClients.getService();
+      domain = CadenceClients.getDomain();
+      workflowClient = CadenceClients.getWorkflowClient();
+    } else {
+      testEnv = TestWorkflowEnvironment.newInstance();
+      registerWorkers(testEnv, workDirectory);
+      testEnv.start();
+      workflowClient = testEnv.newWorkflowClient();
+      service = testEnv.getWorkflowService();
+      domain = testEnv.getDomain();
+    }
+
+    System.out.println(
+        "Starting "
+            + workflowCount
+            + (pipelined ? " pipelined" : "")
+            + " workflows at "
+            + startsPerSecond
+            + " per second with file sizes "
+            + args[2]);
+    Report report =
+        new FileProcessingLoadGenerator(workflowClient, service, domain, pipelined)
+            .run(workflowCount, startsPerSecond, sources, sizes);
+    report.print();
+    if (testEnv != null) {
+      testEnv.close();
+    }
+    System.exit(0);
+  }
+
+  /** Creates a source file of each size filled with random bytes. */
+  static List<URL> createSources(File directory, long[] sizes) throws IOException {
+    List<URL> result = new ArrayList<>();
+    Random random = new Random();
+    byte[] buffer = new byte[StoreActivitiesImpl.CHUNK_SIZE];
+    for (int i = 0; i < sizes.length; i++) {
+      File file = new File(directory, "source-" + i);
+      try (OutputStream out = new FileOutputStream(file)) {
+        for (long written = 0; written < sizes[i]; written += buffer.length) {
+          random.nextBytes(buffer);
+          out.write(buffer, 0, (int) Math.min(buffer.length, sizes[i] - written));
+        }
+      }
+      result.add(file.toURI().toURL());
+    }
+    return result;
+  }
+
+  /** Registers a single in process host that executes all the workflows and activities. */
+  static void registerWorkers(TestWorkflowEnvironment testEnv, File workDirectory) {
+    String hostTaskList = "FileProcessingLoadGeneratorHost";
+    ScratchSpace scratchSpace =
+        new ScratchSpace(
+            new File(workDirectory, "scratch"),
+            FileProcessingWorker.SCRATCH_SPACE_MAX_BYTES,
+            FileProcessingWorker.SCRATCH_SPACE_MIN_FREE_BYTES);
+    StoreActivitiesImpl activities =
+        new StoreActivitiesImpl(
+            hostTaskList,
+            scratchSpace,
+            new LocalDirectoryUploadSink(new File(workDirectory, "uploads")));
+    Worker worker = testEnv.newWorker(FileProcessingWorker.TASK_LIST);
+    worker.registerWorkflowImplementationTypes(
+        FileProcessingWorkflowImpl.class, PipelinedFileProcessingWorkflowImpl.class);
+    worker.registerActivitiesImplementations(activities);
+    Worker hostWorker = testEnv.newWorker(hostTaskList);
+    hostWorker.registerActivitiesImplementations(activities);
+  }
+}
@@ -17,23 +17,35 @@
 
 package com.uber.cadence.samples.fileprocessing;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.samples.common.CadenceClients;
 import java.net.URL;
 
-/** Starts a file processing sample workflow. */
+/**
+ * Starts a file processing sample workflow. Pass "pipelined" as an argument to start the workflow
+ * that streams the file through all the stages concurrently.
+ */
 public class FileProcessingStarter {
 
   public static void main(String[] args) throws Exception {
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
-    FileProcessingWorkflow workflow = workflowClient.newWorkflowStub(FileProcessingWorkflow.class);
-
-    System.out.println("Executing FileProcessingWorkflow");
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
 
     URL source = new URL("http://www.google.com/");
     URL destination = new URL("http://dummy");
 
+    if (args.length > 0 && args[0].equals("pipelined")) {
+      PipelinedFileProcessingWorkflow workflow =
+          workflowClient.newWorkflowStub(PipelinedFileProcessingWorkflow.class);
+      System.out.println("Executing PipelinedFileProcessingWorkflow");
+      workflow.processFile(source, destination);
+      System.out.println("PipelinedFileProcessingWorkflow completed");
+      System.exit(0);
+    }
+
+    FileProcessingWorkflow workflow = workflowClient.newWorkflowStub(FileProcessingWorkflow.class);
+
+    System.out.println("Executing FileProcessingWorkflow");
+
     // This is going to block until the workflow completes.
     // This is rarely used in production. Use the commented code below for async start version.
     workflow.processFile(source, destination);
@@ -17,10 +17,14 @@
 
 package com.uber.cadence.samples.fileprocessing;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
+import com.google.common.io.Files;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.worker.Worker;
+import java.io.File;
 import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is the process that hosts all workflows and activities in this sample. Run multiple
@@ -33,15 +37,30 @@ public class FileProcessingWorker {
 
   static final String TASK_LIST = "FileProcessing";
 
+  /** Maximum size of the downloaded and processed files kept on the local disk. */
+  static final long SCRATCH_SPACE_MAX_BYTES = 1024L * 1024 * 1024;
+
+  /** Files are evicted when the free space of the volume drops below this value. */
+  static final long SCRATCH_SPACE_MIN_FREE_BYTES = 100L * 1024 * 1024;
+
   public static void main(String[] args) {
 
     String hostSpecifiTaskList = ManagementFactory.getRuntimeMXBean().getName();
 
     // Get worker to poll the common task list.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     final Worker workerForCommonTaskList = factory.newWorker(TASK_LIST);
-    workerForCommonTaskList.registerWorkflowImplementationTypes(FileProcessingWorkflowImpl.class);
-    StoreActivitiesImpl storeActivityImpl = new StoreActivitiesImpl(hostSpecifiTaskList);
+    workerForCommonTaskList.registerWorkflowImplementationTypes(
+        FileProcessingWorkflowImpl.class, PipelinedFileProcessingWorkflowImpl.class);
+    ScratchSpace scratchSpace =
+        new ScratchSpace(
+            Files.createTempDir(), SCRATCH_SPACE_MAX_BYTES, SCRATCH_SPACE_MIN_FREE_BYTES);
+    // Uploaded files end up in a local directory to keep the sample self contained.
+    UploadSink uploadSink =
+        new LocalDirectoryUploadSink(
+            new File(System.getProperty("java.io.tmpdir"), "cadence-fileprocessing-uploads"));
+    StoreActivitiesImpl storeActivityImpl =
+        new StoreActivitiesImpl(hostSpecifiTaskList, scratchSpace, uploadSink);
     workerForCommonTaskList.registerActivitiesImplementations(storeActivityImpl);
 
     // Get worker to poll the host-specific task list.
@@ -52,5 +71,22 @@ public class FileProcessingWorker {
     factory.start();
     System.out.println("Worker started for task list: " + TASK_LIST);
     System.out.println("Worker Started for activity task List: " + hostSpecifiTaskList);
+
+    // Periodically report the scratch space usage of this host.
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    reporter.scheduleAtFixedRate(
+        () ->
+            System.out.println(
+                "Scratch space "
+                    + scratchSpace.getRoot()
+                    + ": usedBytes="
+                    + scratchSpace.getUsedBytes()
+                    + ", executions="
+                    + scratchSpace.getExecutionCount()
+                    + ", evictedBytes="
+                    + scratchSpace.getEvictedBytes()),
+        1,
+        1,
+        TimeUnit.MINUTES);
   }
 }
@@ -23,9 +23,12 @@ import java.net.URL;
 /** Contract for file processing workflow. */
 public interface FileProcessingWorkflow {
 
+  /** Large files take a long time to transfer. Failures are detected through heartbeats. */
+  int EXECUTION_START_TO_CLOSE_TIMEOUT_SECONDS = 2 * 60 * 60;
+
   @WorkflowMethod(
     taskList = FileProcessingWorker.TASK_LIST,
-    executionStartToCloseTimeoutSeconds = 30
+    executionStartToCloseTimeoutSeconds = EXECUTION_START_TO_CLOSE_TIMEOUT_SECONDS
   )
   void processFile(URL source, URL destination);
 }
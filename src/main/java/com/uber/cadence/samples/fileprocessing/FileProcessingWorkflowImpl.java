@@ -19,7 +19,9 @@ package com.uber.cadence.samples.fileprocessing;
 
 import com.uber.cadence.activity.ActivityOptions;
 import com.uber.cadence.common.RetryOptions;
+import com.uber.cadence.workflow.ActivityException;
 import com.uber.cadence.workflow.Workflow;
+import java.io.FileNotFoundException;
 import java.net.URL;
 import java.time.Duration;
 
@@ -33,6 +35,25 @@ import java.time.Duration;
  */
 public class FileProcessingWorkflowImpl implements FileProcessingWorkflow {
 
+  /**
+   * The file activities report their progress at least this often. A stalled or dead host is
+   * detected after this timeout instead of after the whole file processing time.
+   */
+  static final Duration HEARTBEAT_TIMEOUT = Duration.ofSeconds(10);
+
+  /** Upper bound on the time to transfer or process the largest expected file. */
+  static final Duration FILE_ACTIVITY_TIMEOUT = Duration.ofHours(1);
+
+  /**
+   * Time for a host specific activity to be picked up. Exceeding it means that the host is gone, so
+   * the whole sequence is retried on a different host. The service never retries schedule to start
+   * timeouts, so a dead host is not retried on its own task list.
+   */
+  static final Duration HOST_SCHEDULE_TO_START_TIMEOUT = Duration.ofSeconds(10);
+
+  /** Attempts of a host specific activity before the whole sequence moves to a different host. */
+  static final int HOST_ACTIVITY_MAXIMUM_ATTEMPTS = 3;
+
   // Uses the default task list shared by the pool of workers.
   private final StoreActivities defaultTaskListStore;
 
@@ -40,18 +61,52 @@ public class FileProcessingWorkflowImpl implements FileProcessingWorkflow {
     // Create activity clients.
     ActivityOptions ao =
         new ActivityOptions.Builder()
-            .setScheduleToCloseTimeout(Duration.ofSeconds(10))
+            .setScheduleToCloseTimeout(FILE_ACTIVITY_TIMEOUT)
+            .setHeartbeatTimeout(HEARTBEAT_TIMEOUT)
+            .setRetryOptions(newActivityRetryOptions())
             .setTaskList(FileProcessingWorker.TASK_LIST)
             .build();
     this.defaultTaskListStore = Workflow.newActivityStub(StoreActivities.class, ao);
   }
 
+  /**
+   * Activities on the shared task list are retried after a heartbeat timeout or a failure. The
+   * retried activity resumes from the last offset it reported through a heartbeat. A missing source
+   * is not retried.
+   */
+  static RetryOptions newActivityRetryOptions() {
+    return new RetryOptions.Builder()
+        .setInitialInterval(Duration.ofSeconds(1))
+        .setMaximumInterval(Duration.ofSeconds(10))
+        .setExpiration(FILE_ACTIVITY_TIMEOUT)
+        .setMaximumAttempts(5)
+        .setDoNotRetry(IllegalArgumentException.class, FileNotFoundException.class)
+        .build();
+  }
+
+  /**
+   * Host specific activities are retried on the same host after a failure or a heartbeat timeout,
+   * so the retry resumes from the progress reported by the failed attempt. The retries are bounded
+   * and expire well before the whole sequence is given up.
+   */
+  static RetryOptions newHostActivityRetryOptions() {
+    return new RetryOptions.Builder()
+        .setInitialInterval(Duration.ofSeconds(1))
+        .setMaximumInterval(Duration.ofSeconds(10))
+        .setExpiration(FILE_ACTIVITY_TIMEOUT)
+        .setMaximumAttempts(HOST_ACTIVITY_MAXIMUM_ATTEMPTS)
+        .setDoNotRetry(IllegalArgumentException.class, FileNotFoundException.class)
+        .build();
+  }
+
   @Override
   public void processFile(URL source, URL destination) {
     RetryOptions retryOptions =
         new RetryOptions.Builder()
-            .setExpiration(Duration.ofSeconds(10))
+            .setExpiration(
+                Duration.ofSeconds(FileProcessingWorkflow.EXECUTION_START_TO_CLOSE_TIMEOUT_SECONDS))
             .setInitialInterval(Duration.ofSeconds(1))
+            .setMaximumAttempts(3)
             .build();
     // Retries the whole sequence on any failure, potentially on a different host.
     Workflow.retry(retryOptions, () -> processFileImpl(source, destination));
@@ -64,15 +119,44 @@ public class FileProcessingWorkflowImpl implements FileProcessingWorkflow {
     ActivityOptions hostActivityOptions =
         new ActivityOptions.Builder()
             .setTaskList(downloaded.getHostTaskList())
-            .setScheduleToCloseTimeout(Duration.ofSeconds(10))
+            .setScheduleToStartTimeout(HOST_SCHEDULE_TO_START_TIMEOUT)
+            .setScheduleToCloseTimeout(FILE_ACTIVITY_TIMEOUT)
+            .setHeartbeatTimeout(HEARTBEAT_TIMEOUT)
+            .setRetryOptions(newHostActivityRetryOptions())
             .build();
     StoreActivities hostSpecificStore =
         Workflow.newActivityStub(StoreActivities.class, hostActivityOptions);
 
-    // Call processFile activity to zip the file.
-    // Call the activity to process the file using worker-specific task list.
-    String processed = hostSpecificStore.process(downloaded.getFileName());
-    // Call upload activity to upload the zipped file.
-    hostSpecificStore.upload(processed, destination);
+    try {
+      // Call processFile activity to zip the file.
+      // Call the activity to process the file using worker-specific task list.
+      String processed = hostSpecificStore.process(downloaded.getFileName());
+      // Call upload activity to upload the zipped file.
+      hostSpecificStore.upload(processed, destination);
+    } catch (ActivityException e) {
+      // The whole sequence is going to be retried, potentially on a different host.
+      deleteLocalFiles(downloaded.getHostTaskList());
+      throw e;
+    }
+  }
+
+  /**
+   * Frees the scratch space used by this workflow on the given host. It is a best effort cleanup,
+   * as the host might be gone. Hosts evict stale files on their own under disk pressure.
+   */
+  private void deleteLocalFiles(String hostTaskList) {
+    ActivityOptions cleanupOptions =
+        new ActivityOptions.Builder()
+            .setTaskList(hostTaskList)
+            .setScheduleToStartTimeout(Duration.ofSeconds(2))
+            .setScheduleToCloseTimeout(Duration.ofSeconds(3))
+            .build();
+    StoreActivities cleanupStore = Workflow.newActivityStub(StoreActivities.class, cleanupOptions);
+    try {
+      cleanupStore.deleteLocalFiles();
+    } catch (ActivityException e) {
+      Workflow.getLogger(FileProcessingWorkflowImpl.class)
+          .warn("Failed to delete local files on " + hostTaskList, e);
+    }
   }
 }
@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Uploads parts with HTTP PUT requests to "destination?partNumber=N" and completes the object with
+ * a POST request to "destination?partCount=N". A GET request to "destination?parts" lists the
+ * stored parts, one "partNumber size" line per part, or fails with 404 if there are none yet. The
+ * parameters are appended to the query of a destination that already has one, such as a presigned
+ * URL. This is a simplified version of the multipart protocols of the object stores.
+ */
+public class HttpUploadSink implements UploadSink {
+
+  private final int timeoutMillis;
+
+  public HttpUploadSink(int timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  @Override
+  public void uploadPart(URL destination, int partNumber, byte[] data) throws IOException {
+    send(withParameter(destination, "partNumber", partNumber), "PUT", data);
+  }
+
+  @Override
+  public void complete(URL destination, int partCount) throws IOException {
+    send(withParameter(destination, "partCount", partCount), "POST", new byte[0]);
+  }
+
+  @Override
+  public Map<Integer, Long> listParts(URL destination) throws IOException {
+    URL url = withParameter(destination, "parts");
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try {
+      connection.setConnectTimeout(timeoutMillis);
+      connection.setReadTimeout(timeoutMillis);
+      int status = connection.getResponseCode();
+      if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+        return Collections.emptyMap();
+      }
+      if (status / 100 != 2) {
+        throw new IOException("GET " + url + " failed with status " + status);
+      }
+      Map<Integer, Long> parts = new TreeMap<>();
+      try (BufferedReader reader =
+          new BufferedReader(
+              new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.trim().isEmpty()) {
+            continue;
+          }
+          String[] fields = line.trim().split("\\s+");
+          if (fields.length != 2) {
+            throw new IOException("Invalid part \"" + line + "\" listed by " + url);
+          }
+          parts.put(Integer.parseInt(fields[0]), Long.parseLong(fields[1]));
+        }
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid part listed by " + url, e);
+      }
+      return parts;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  static URL withParameter(URL url, String name, int value) throws IOException {
+    return withParameter(url, name + "=" + value);
+  }
+
+  private static URL withParameter(URL url, String parameter) throws IOException {
+    return new URL(url + (url.getQuery() == null ? "?" : "&") + parameter);
+  }
+
+  private void send(URL url, String method, byte[] body) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try {
+      connection.setRequestMethod(method);
+      connection.setConnectTimeout(timeoutMillis);
+      connection.setReadTimeout(timeoutMillis);
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(body.length);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+      int status = connection.getResponseCode();
+      if (status / 100 != 2) {
+        throw new IOException(method + " " + url + " failed with status " + status);
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores uploaded objects in a local directory. Each destination gets its own subdirectory with the
+ * parts and the assembled object. Useful for running the sample without a real object store.
+ */
+public class LocalDirectoryUploadSink implements UploadSink {
+
+  static final String OBJECT_FILE_NAME = "object";
+
+  private static final Pattern PART_FILE_NAME = Pattern.compile("part-(\\d+)");
+
+  private final File root;
+
+  public LocalDirectoryUploadSink(File root) {
+    if (!root.isDirectory() && !root.mkdirs()) {
+      throw new IllegalArgumentException("Cannot create upload directory: " + root);
+    }
+    this.root = root;
+  }
+
+  @Override
+  public void uploadPart(URL destination, int partNumber, byte[] data) throws IOException {
+    File directory = getDirectory(destination);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create upload directory: " + directory);
+    }
+    // Write to a temporary file first, so a partially written part is never visible.
+    File temporary = File.createTempFile(partFileName(partNumber), ".tmp", directory);
+    Files.write(temporary.toPath(), data);
+    Files.move(
+        temporary.toPath(),
+        new File(directory, partFileName(partNumber)).toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public void complete(URL destination, int partCount) throws IOException {
+    File directory = getDirectory(destination);
+    File object = new File(directory, OBJECT_FILE_NAME);
+    File temporary = new File(directory, OBJECT_FILE_NAME + ".tmp");
+    try (OutputStream out = new FileOutputStream(temporary)) {
+      for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+        File part = new File(directory, partFileName(partNumber));
+        if (!part.isFile()) {
+          throw new IOException("Missing part " + partNumber + " of " + destination);
+        }
+        Files.copy(part.toPath(), out);
+      }
+    }
+    Files.move(
+        temporary.toPath(),
+        object.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public Map<Integer, Long> listParts(URL destination) {
+    Map<Integer, Long> parts = new TreeMap<>();
+    File[] files = getDirectory(destination).listFiles();
+    if (files == null) {
+      return parts;
+    }
+    for (File file : files) {
+      // Temporary files of parts being written don't match.
+      Matcher matcher = PART_FILE_NAME.matcher(file.getName());
+      if (matcher.matches()) {
+        parts.put(Integer.parseInt(matcher.group(1)), file.length());
+      }
+    }
+    return parts;
+  }
+
+  /** Returns the assembled object of the destination. */
+  public File getObject(URL destination) {
+    return new File(getDirectory(destination), OBJECT_FILE_NAME);
+  }
+
+  private File getDirectory(URL destination) {
+    return new File(root, destination.toString().replaceAll("[^A-Za-z0-9._-]", "_"));
+  }
+
+  private static String partFileName(int partNumber) {
+    return String.format("part-%05d", partNumber);
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Uploads a file to an {@link UploadSink} as a sequence of parts. Up to maxConcurrentParts parts
+ * are uploaded in parallel, each one retried independently. The set of completed parts is reported
+ * after each part, so a retried upload can skip the parts that are already done. Parts of the
+ * expected size that the sink already stores are skipped as well.
+ */
+public class MultipartUploader {
+
+  private final UploadSink sink;
+  private final ExecutorService executor;
+  private final int partSize;
+  private final int maxConcurrentParts;
+  private final int maxAttemptsPerPart;
+  private final long retryIntervalMillis;
+
+  /**
+   * @param executor runs part uploads
+   * @param partSize size of all the parts except the last one
+   * @param maxConcurrentParts maximum number of parts uploaded in parallel. It also limits the
+   *     memory used by an upload to maxConcurrentParts * partSize.
+   * @param maxAttemptsPerPart number of times a part is tried before failing the whole upload
+   * @param retryIntervalMillis delay before the first retry of a part. Doubled on every retry.
+   */
+  public MultipartUploader(
+      UploadSink sink,
+      ExecutorService executor,
+      int partSize,
+      int maxConcurrentParts,
+      int maxAttemptsPerPart,
+      long retryIntervalMillis) {
+    this.sink = sink;
+    this.executor = executor;
+    this.partSize = partSize;
+    this.maxConcurrentParts = maxConcurrentParts;
+    this.maxAttemptsPerPart = maxAttemptsPerPart;
+    this.retryIntervalMillis = retryIntervalMillis;
+  }
+
+  public UploadSink getSink() {
+    return sink;
+  }
+
+  /** Returns the number of parts of a file of the given size. An empty file has a single part. */
+  public int getPartCount(long size) {
+    return (int) Math.max(1, (size + partSize - 1) / partSize);
+  }
+
+  /**
+   * Uploads the file and completes the object in the sink.
+   *
+   * @param completedParts parts uploaded by the previous attempts, they are not uploaded again
+   * @param progress receives the set of completed parts after each uploaded part
+   */
+  public void upload(
+      File file, URL destination, Set<Integer> completedParts, Consumer<Set<Integer>> progress)
+      throws IOException {
+    Set<Integer> completed = new TreeSet<>(completedParts);
+    long size = file.length();
+    int partCount = getPartCount(size);
+    for (Map.Entry<Integer, Long> part : sink.listParts(destination).entrySet()) {
+      int partNumber = part.getKey();
+      if (partNumber <= partCount && part.getValue() == getPartSize(size, partNumber)) {
+        completed.add(partNumber);
+      }
+    }
+    CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<Integer>> inFlight = new ArrayList<>();
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      int nextPart = 1;
+      while (true) {
+        while (inFlight.size() < maxConcurrentParts && nextPart <= partCount) {
+          int partNumber = nextPart++;
+          if (completed.contains(partNumber)) {
+            continue;
+          }
+          byte[] data = readPart(input, partNumber);
+          inFlight.add(completionService.submit(() -> uploadPart(destination, partNumber, data)));
+        }
+        if (inFlight.isEmpty()) {
+          break;
+        }
+        Future<Integer> done = completionService.take();
+        inFlight.remove(done);
+        completed.add(done.get());
+        progress.accept(completed);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while uploading " + file);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      for (Future<Integer> future : inFlight) {
+        future.cancel(true);
+      }
+    }
+    sink.complete(destination, partCount);
+  }
+
+  private long getPartSize(long size, int partNumber) {
+    return Math.min(partSize, size - (long) (partNumber - 1) * partSize);
+  }
+
+  private byte[] readPart(RandomAccessFile input, int partNumber) throws IOException {
+    long position = (long) (partNumber - 1) * partSize;
+    byte[] data = new byte[(int) getPartSize(input.length(), partNumber)];
+    input.seek(position);
+    input.readFully(data);
+    return data;
+  }
+
+  /** Uploads a single part retrying it up to maxAttemptsPerPart times. */
+  int uploadPart(URL destination, int partNumber, byte[] data)
+      throws IOException, InterruptedException {
+    long delay = retryIntervalMillis;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        sink.uploadPart(destination, partNumber, data);
+        return partNumber;
+      } catch (IOException e) {
+        if (attempt >= maxAttemptsPerPart) {
+          throw e;
+        }
+        Thread.sleep(delay);
+        delay *= 2;
+      }
+    }
+  }
+}
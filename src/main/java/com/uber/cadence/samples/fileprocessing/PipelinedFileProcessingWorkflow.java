@@ -0,0 +1,35 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import com.uber.cadence.workflow.WorkflowMethod;
+import java.net.URL;
+
+/**
+ * Contract for file processing workflow that streams the file through all the stages in a single
+ * activity instead of storing it on the local disk between them.
+ */
+public interface PipelinedFileProcessingWorkflow {
+
+  @WorkflowMethod(
+    taskList = FileProcessingWorker.TASK_LIST,
+    executionStartToCloseTimeoutSeconds =
+        FileProcessingWorkflow.EXECUTION_START_TO_CLOSE_TIMEOUT_SECONDS
+  )
+  void processFile(URL source, URL destination);
+}
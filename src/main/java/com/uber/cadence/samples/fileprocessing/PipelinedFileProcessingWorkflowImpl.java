@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import com.uber.cadence.activity.ActivityOptions;
+import com.uber.cadence.workflow.Workflow;
+import java.net.URL;
+
+/**
+ * This implementation of PipelinedFileProcessingWorkflow executes a single activity that downloads,
+ * processes and uploads the file concurrently chunk by chunk. As no file is stored on the local
+ * disk there is no need for the host specific task list. A retried activity continues from the last
+ * chunk it heartbeated on any host.
+ */
+public class PipelinedFileProcessingWorkflowImpl implements PipelinedFileProcessingWorkflow {
+
+  private final StoreActivities store;
+
+  public PipelinedFileProcessingWorkflowImpl() {
+    ActivityOptions ao =
+        new ActivityOptions.Builder()
+            .setScheduleToCloseTimeout(FileProcessingWorkflowImpl.FILE_ACTIVITY_TIMEOUT)
+            .setHeartbeatTimeout(FileProcessingWorkflowImpl.HEARTBEAT_TIMEOUT)
+            .setRetryOptions(FileProcessingWorkflowImpl.newActivityRetryOptions())
+            .setTaskList(FileProcessingWorker.TASK_LIST)
+            .build();
+    this.store = Workflow.newActivityStub(StoreActivities.class, ao);
+  }
+
+  @Override
+  public void processFile(URL source, URL destination) {
+    store.pipelineFile(source, destination);
+  }
+}
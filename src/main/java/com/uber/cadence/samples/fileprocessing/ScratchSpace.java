@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Host local scratch space used by the file processing activities. Files are grouped by the
+ * workflow execution that created them, so they can be deleted together as soon as the execution
+ * doesn't need them anymore. When the space grows over its limit or the volume runs low on free
+ * space the least recently used executions are evicted.
+ */
+public class ScratchSpace {
+
+  /** Files of a single workflow execution. */
+  private static final class Entry {
+    private final File directory;
+    private final Map<File, Long> sizes = new HashMap<>();
+
+    private Entry(File directory) {
+      this.directory = directory;
+    }
+
+    private long totalSize() {
+      long result = 0;
+      for (long size : sizes.values()) {
+        result += size;
+      }
+      return result;
+    }
+  }
+
+  private final File root;
+  private final long maxBytes;
+  private final long minFreeBytes;
+
+  /** Access ordered, so iteration starts from the least recently used execution. */
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final AtomicLong usedBytes = new AtomicLong();
+  private final AtomicLong evictedBytes = new AtomicLong();
+  private final AtomicLong evictedExecutions = new AtomicLong();
+
+  /**
+   * @param root directory that holds the scratch data. It is created if it doesn't exist.
+   * @param maxBytes maximum size of the tracked files before the oldest ones are evicted
+   * @param minFreeBytes minimum usable space of the volume before the oldest files are evicted
+   */
+  public ScratchSpace(File root, long maxBytes, long minFreeBytes) {
+    if (!root.isDirectory() && !root.mkdirs()) {
+      throw new IllegalArgumentException("Cannot create scratch directory: " + root);
+    }
+    this.root = root;
+    this.maxBytes = maxBytes;
+    this.minFreeBytes = minFreeBytes;
+  }
+
+  /**
+   * Returns a file with the given name in the directory of the execution. The file is not created,
+   * call {@link #commit(String, File)} after writing it to account for its size.
+   */
+  public synchronized File newFile(String executionKey, String name) {
+    Entry entry = entries.get(executionKey);
+    if (entry == null) {
+      File directory = new File(root, toDirectoryName(executionKey));
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IllegalStateException("Cannot create scratch directory: " + directory);
+      }
+      entry = new Entry(directory);
+      entries.put(executionKey, entry);
+    }
+    return new File(entry.directory, name);
+  }
+
+  /**
+   * Accounts for the current size of a file written by the execution. Evicts other executions if
+   * the scratch space is over its limits.
+   */
+  public synchronized void commit(String executionKey, File file) {
+    Entry entry = entries.get(executionKey);
+    if (entry == null) {
+      throw new IllegalStateException("Unknown or evicted execution: " + executionKey);
+    }
+    Long previous = entry.sizes.put(file, file.length());
+    usedBytes.addAndGet(file.length() - (previous == null ? 0 : previous));
+    evictIfNeeded(executionKey);
+  }
+
+  /** Deletes all the files of the execution. Does nothing if the execution is not known. */
+  public synchronized void release(String executionKey) {
+    Entry entry = entries.remove(executionKey);
+    if (entry != null) {
+      delete(entry);
+    }
+  }
+
+  public synchronized boolean contains(String executionKey) {
+    return entries.containsKey(executionKey);
+  }
+
+  public synchronized int getExecutionCount() {
+    return entries.size();
+  }
+
+  /** Size of the files currently tracked by this scratch space. */
+  public long getUsedBytes() {
+    return usedBytes.get();
+  }
+
+  /** Total size of the files deleted due to disk pressure. */
+  public long getEvictedBytes() {
+    return evictedBytes.get();
+  }
+
+  public long getEvictedExecutions() {
+    return evictedExecutions.get();
+  }
+
+  public File getRoot() {
+    return root;
+  }
+
+  private void evictIfNeeded(String currentKey) {
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (isUnderPressure() && iterator.hasNext()) {
+      Map.Entry<String, Entry> oldest = iterator.next();
+      // Never evict the files that were just written.
+      if (oldest.getKey().equals(currentKey)) {
+        continue;
+      }
+      iterator.remove();
+      evictedBytes.addAndGet(delete(oldest.getValue()));
+      evictedExecutions.incrementAndGet();
+    }
+  }
+
+  private boolean isUnderPressure() {
+    return usedBytes.get() > maxBytes || root.getUsableSpace() < minFreeBytes;
+  }
+
+  private long delete(Entry entry) {
+    long size = entry.totalSize();
+    for (File file : entry.sizes.keySet()) {
+      file.delete();
+    }
+    File[] leftovers = entry.directory.listFiles();
+    if (leftovers != null) {
+      for (File file : leftovers) {
+        file.delete();
+      }
+    }
+    entry.directory.delete();
+    usedBytes.addAndGet(-size);
+    return size;
+  }
+
+  private static String toDirectoryName(String executionKey) {
+    return executionKey.replaceAll("[^A-Za-z0-9._-]", "_");
+  }
+}
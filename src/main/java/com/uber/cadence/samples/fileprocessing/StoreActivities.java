@@ -61,4 +61,19 @@ public interface StoreActivities {
    * @return local task list and downloaded file name
    */
   TaskListFileNamePair download(URL url);
+
+  /**
+   * Downloads, processes and uploads the file in a single activity. The stages run concurrently
+   * over chunks of the file, so nothing is stored on the local disk.
+   *
+   * @param source remote file location
+   * @param destination remote location of the processed file
+   */
+  void pipelineFile(URL source, URL destination);
+
+  /**
+   * Deletes the local files that the current workflow execution created on this host. Called before
+   * the file processing is retried, potentially on a different host.
+   */
+  void deleteLocalFiles();
 }
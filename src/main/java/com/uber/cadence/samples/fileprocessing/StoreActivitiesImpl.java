@@ -17,42 +17,110 @@
 
 package com.uber.cadence.samples.fileprocessing;
 
-import com.google.common.io.Files;
-import com.google.common.io.Resources;
+import com.google.common.io.ByteStreams;
+import com.uber.cadence.WorkflowExecution;
 import com.uber.cadence.activity.Activity;
-import com.uber.cadence.workflow.Workflow;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-/** Store activities implementation. */
+/**
+ * Store activities implementation. Files are transferred in chunks and the progress is reported
+ * through {@link Activity#heartbeat(Object)}: the number of bytes done for download and process and
+ * the set of completed parts for the multipart upload. A retried activity that lands on the same
+ * host resumes from the last reported progress instead of starting over.
+ */
 public class StoreActivitiesImpl implements StoreActivities {
 
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  /** Chunks of the pipelined mode are larger to amortize the per chunk overhead of the stages. */
+  static final int PIPELINE_CHUNK_SIZE = 1024 * 1024;
+
+  /** Limits the memory used by a single pipelined file to about 2 * 8 chunks. */
+  static final int PIPELINE_QUEUE_CAPACITY = 8;
+
+  static final int UPLOAD_PART_SIZE = 8 * 1024 * 1024;
+  static final int UPLOAD_MAX_CONCURRENT_PARTS = 4;
+  static final int UPLOAD_MAX_ATTEMPTS_PER_PART = 3;
+  static final long UPLOAD_RETRY_INTERVAL_MILLIS = 500;
+
   private final String hostSpecificTaskList;
+  private final ScratchSpace scratchSpace;
+  private final FilePipeline pipeline;
+  private final MultipartUploader uploader;
+
+  public StoreActivitiesImpl(String taskList, ScratchSpace scratchSpace, UploadSink uploadSink) {
+    this(taskList, scratchSpace, uploadSink, Executors.newCachedThreadPool());
+  }
 
-  public StoreActivitiesImpl(String taskList) {
+  /**
+   * @param executor runs the download and process stages of the pipelined files and the parallel
+   *     part uploads
+   */
+  public StoreActivitiesImpl(
+      String taskList, ScratchSpace scratchSpace, UploadSink uploadSink, ExecutorService executor) {
     this.hostSpecificTaskList = taskList;
+    this.scratchSpace = scratchSpace;
+    this.pipeline = new FilePipeline(executor, PIPELINE_CHUNK_SIZE, PIPELINE_QUEUE_CAPACITY);
+    this.uploader =
+        new MultipartUploader(
+            uploadSink,
+            executor,
+            UPLOAD_PART_SIZE,
+            UPLOAD_MAX_CONCURRENT_PARTS,
+            UPLOAD_MAX_ATTEMPTS_PER_PART,
+            UPLOAD_RETRY_INTERVAL_MILLIS);
   }
 
   @Override
   public TaskListFileNamePair download(URL url) {
-    try {
-      byte[] binary = Resources.toByteArray(url);
-      File destination = new File(Files.createTempDir(), "downloaded");
-      Files.write(binary, destination);
-      System.out.println(
-          "download activity: downloaded from " + url + " to " + destination.getAbsolutePath());
-      return new TaskListFileNamePair(hostSpecificTaskList, destination.getAbsolutePath());
+    String executionKey = getExecutionKey();
+    long offset = getResumeOffset(executionKey, "downloaded");
+    if (offset == 0) {
+      // Files left by a previous attempt of the same execution are not needed anymore.
+      scratchSpace.release(executionKey);
+    }
+    File destination = scratchSpace.newFile(executionKey, "downloaded");
+    try (InputStream in = openStream(url, offset);
+        OutputStream out = openOutput(destination, offset)) {
+      copy(in, out, offset);
     } catch (IOException e) {
-      throw Workflow.wrap(e);
+      commitPartial(executionKey, destination, e);
+      throw Activity.wrap(e);
+    } catch (RuntimeException | Error e) {
+      commitPartial(executionKey, destination, e);
+      throw e;
     }
+    scratchSpace.commit(executionKey, destination);
+    System.out.println(
+        "download activity: downloaded from "
+            + url
+            + " to "
+            + destination.getAbsolutePath()
+            + (offset > 0 ? " resuming from offset " + offset : ""));
+    return new TaskListFileNamePair(hostSpecificTaskList, destination.getAbsolutePath());
   }
 
   @Override
   public String process(String sourceFile) {
     System.out.println("process activity: sourceFile= " + sourceFile);
     try {
-      String processedName = processFileImpl(sourceFile);
+      String processedName = processFileImpl(getExecutionKey(), sourceFile);
       System.out.println("process activity: processed file: " + processedName);
       return processedName;
     } catch (IOException e) {
@@ -60,22 +128,225 @@ public class StoreActivitiesImpl implements StoreActivities {
     }
   }
 
-  private String processFileImpl(String fileName) throws IOException {
+  private String processFileImpl(String executionKey, String fileName) throws IOException {
     File inputFile = new File(fileName);
-    File inputDir = inputFile.getParentFile();
-    File outputFile = new File(inputDir, "processed");
+    long offset = getResumeOffset(executionKey, "processed");
+    File outputFile = scratchSpace.newFile(executionKey, "processed");
     // We don't really process it, just copy to keep the sample simple.
-    Files.copy(inputFile, outputFile);
+    try (InputStream in = new FileInputStream(inputFile);
+        OutputStream out = openOutput(outputFile, offset)) {
+      ByteStreams.skipFully(in, offset);
+      copy(in, out, offset);
+    } catch (IOException | RuntimeException | Error e) {
+      commitPartial(executionKey, outputFile, e);
+      throw e;
+    }
+    scratchSpace.commit(executionKey, outputFile);
     return outputFile.getAbsolutePath();
   }
 
+  /**
+   * Accounts for the partial output of a failed attempt, so that a retry can resume from it. If the
+   * execution was evicted meanwhile, the eviction is added to the failure instead of replacing it.
+   */
+  private void commitPartial(String executionKey, File file, Throwable failure) {
+    try {
+      scratchSpace.commit(executionKey, file);
+    } catch (IllegalStateException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
   @Override
   public void upload(String localFileName, URL url) {
     File file = new File(localFileName);
     if (!file.isFile()) {
       throw new IllegalArgumentException("Invalid file type: " + file);
     }
-    // Faking upload to simplify sample implementation.
-    System.out.println("upload activity: uploaded from " + localFileName + " to " + url);
+    // Parts completed by the previous attempts are not uploaded again. The uploader also skips the
+    // parts the sink already stores, even when no heartbeat of the previous attempt reported them.
+    Set<Integer> completedParts = new HashSet<>();
+    for (int partNumber : Activity.getHeartbeatDetails(int[].class).orElse(new int[0])) {
+      completedParts.add(partNumber);
+    }
+    try {
+      uploader.upload(
+          file,
+          url,
+          completedParts,
+          parts -> Activity.heartbeat(parts.stream().mapToInt(Integer::intValue).toArray()));
+    } catch (IOException e) {
+      throw Activity.wrap(e);
+    }
+    System.out.println(
+        "upload activity: uploaded from "
+            + localFileName
+            + " to "
+            + url
+            + (completedParts.isEmpty() ? "" : " skipping parts " + completedParts));
+    // Nothing else is going to read the local files of this execution.
+    scratchSpace.release(getExecutionKey());
+  }
+
+  @Override
+  public void pipelineFile(URL source, URL destination) {
+    // The pipeline keeps no local state, so a retry resumes from the last uploaded chunk on any
+    // host.
+    long offset = Activity.getHeartbeatDetails(Long.class).orElse(0L);
+    try (InputStream in = openStream(source, offset)) {
+      // Each chunk is uploaded as a part. All chunks except the last one have the same size.
+      long size =
+          pipeline.run(
+              in,
+              offset,
+              // We don't really process it, just pass through to keep the sample simple.
+              chunk -> chunk,
+              chunk ->
+                  uploader.uploadPart(
+                      destination,
+                      (int) (chunk.getOffset() / PIPELINE_CHUNK_SIZE) + 1,
+                      chunk.getData()),
+              Activity::heartbeat);
+      int partCount = (int) ((size + PIPELINE_CHUNK_SIZE - 1) / PIPELINE_CHUNK_SIZE);
+      if (partCount == 0) {
+        uploader.uploadPart(destination, 1, new byte[0]);
+        partCount = 1;
+      }
+      uploader.getSink().complete(destination, partCount);
+      System.out.println(
+          "pipelineFile activity: processed "
+              + size
+              + " bytes from "
+              + source
+              + " to "
+              + destination
+              + (offset > 0 ? " resuming from offset " + offset : ""));
+    } catch (IOException e) {
+      throw Activity.wrap(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Activity.wrap(e);
+    }
+  }
+
+  @Override
+  public void deleteLocalFiles() {
+    String executionKey = getExecutionKey();
+    scratchSpace.release(executionKey);
+    System.out.println("deleteLocalFiles activity: deleted files of " + executionKey);
+  }
+
+  /**
+   * Returns the offset reported by the previous attempt of the current activity if its partial
+   * output is still available on this host. Otherwise a new attempt starts from the beginning.
+   */
+  private long getResumeOffset(String executionKey, String fileName) {
+    long offset = Activity.getHeartbeatDetails(Long.class).orElse(0L);
+    if (offset == 0 || !scratchSpace.contains(executionKey)) {
+      return 0;
+    }
+    File partial = scratchSpace.newFile(executionKey, fileName);
+    return partial.length() >= offset ? offset : 0;
+  }
+
+  /**
+   * Copies the input to the output chunk by chunk heartbeating the total number of bytes copied.
+   * Heartbeats are throttled by the client, so calling it for every chunk is cheap.
+   *
+   * @param offset number of bytes copied by the previous attempts
+   */
+  private static void copy(InputStream in, OutputStream out, long offset) throws IOException {
+    byte[] buffer = new byte[CHUNK_SIZE];
+    long total = offset;
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+      total += read;
+      Activity.heartbeat(total);
+    }
+  }
+
+  /**
+   * Opens the url skipping the first offset bytes. Uses a range request if supported. The stream
+   * fails if it ends before the content length, so a broken connection fails the activity instead
+   * of producing a truncated file.
+   */
+  private static InputStream openStream(URL url, long offset) throws IOException {
+    URLConnection connection = url.openConnection();
+    if (offset > 0 && connection instanceof HttpURLConnection) {
+      connection.setRequestProperty("Range", "bytes=" + offset + "-");
+    }
+    InputStream in = connection.getInputStream();
+    long length = connection.getContentLengthLong();
+    if (length >= 0) {
+      in = new LengthCheckingInputStream(in, length);
+    }
+    boolean partialContent =
+        connection instanceof HttpURLConnection
+            && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+    if (!partialContent) {
+      ByteStreams.skipFully(in, offset);
+    }
+    return in;
+  }
+
+  /** Opens the file for writing, truncating it to the offset. */
+  private static OutputStream openOutput(File file, long offset) throws IOException {
+    FileChannel channel =
+        FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    channel.truncate(offset);
+    channel.position(offset);
+    return Channels.newOutputStream(channel);
+  }
+
+  /** Fails with {@link EOFException} if the stream ends before the expected length. */
+  private static final class LengthCheckingInputStream extends FilterInputStream {
+    private long remaining;
+
+    LengthCheckingInputStream(InputStream in, long length) {
+      super(in);
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+      if (result == -1) {
+        checkEnd();
+      } else {
+        remaining--;
+      }
+      return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read == -1) {
+        checkEnd();
+      } else {
+        remaining -= read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      remaining -= skipped;
+      return skipped;
+    }
+
+    private void checkEnd() throws EOFException {
+      if (remaining > 0) {
+        throw new EOFException("Stream ended " + remaining + " bytes before its content length");
+      }
+    }
+  }
+
+  /** All the activities of a workflow execution share the same scratch directory. */
+  private static String getExecutionKey() {
+    WorkflowExecution execution = Activity.getWorkflowExecution();
+    return execution.getWorkflowId() + "_" + execution.getRunId();
   }
 }
@@ -0,0 +1,55 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Destination of multipart uploads. Parts can be uploaded in any order and concurrently. Uploading
+ * the same part more than once must be safe, as parts are retried.
+ */
+public interface UploadSink {
+
+  /**
+   * Uploads a single part of the object.
+   *
+   * @param destination object location
+   * @param partNumber one based number of the part
+   * @param data part content
+   */
+  void uploadPart(URL destination, int partNumber, byte[] data) throws IOException;
+
+  /**
+   * Assembles the object from the uploaded parts. Called once all the parts are uploaded. Must be
+   * safe to call again for an already completed object.
+   *
+   * @param partCount number of parts of the object
+   */
+  void complete(URL destination, int partCount) throws IOException;
+
+  /**
+   * Returns the sizes of the parts already stored for the destination by part number. A retried
+   * upload skips them. Sinks that cannot list parts return an empty map, so all parts are uploaded.
+   */
+  default Map<Integer, Long> listParts(URL destination) throws IOException {
+    return Collections.emptyMap();
+  }
+}
@@ -17,12 +17,11 @@
 
 package com.uber.cadence.samples.hello;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.activity.ActivityOptions;
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.client.WorkflowOptions;
 import com.uber.cadence.common.RetryOptions;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.worker.Worker;
 import com.uber.cadence.workflow.Functions;
 import com.uber.cadence.workflow.Workflow;
@@ -100,7 +99,7 @@ public class HelloActivityRetry {
 
   public static void main(String[] args) {
     // Start a worker that hosts both workflow and activity implementations.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     // Workflows are stateful. So you need a type to create instances.
     worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
@@ -110,7 +109,7 @@ public class HelloActivityRetry {
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     // Get a workflow stub using the same task list the worker uses.
     WorkflowOptions workflowOptions =
         new WorkflowOptions.Builder()
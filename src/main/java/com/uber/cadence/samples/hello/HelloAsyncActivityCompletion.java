@@ -17,18 +17,20 @@
 
 package com.uber.cadence.samples.hello;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.activity.Activity;
 import com.uber.cadence.activity.ActivityMethod;
 import com.uber.cadence.client.ActivityCompletionClient;
 import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.samples.common.AsyncActivityCompleter;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.worker.Worker;
 import com.uber.cadence.workflow.Workflow;
 import com.uber.cadence.workflow.WorkflowMethod;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
 
 /**
  * Demonstrates an asynchronous activity implementation. Requires a local instance of Cadence server
@@ -38,6 +40,9 @@ public class HelloAsyncActivityCompletion {
 
   static final String TASK_LIST = "HelloAsyncActivityCompletion";
 
+  /** Interval of the heartbeats sent for the activities not completed yet. */
+  static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(1);
+
   public interface GreetingWorkflow {
     /** @return greeting string */
     @WorkflowMethod(executionStartToCloseTimeoutSeconds = 15, taskList = TASK_LIST)
@@ -46,7 +51,7 @@ public class HelloAsyncActivityCompletion {
 
   /** Activity interface is just a POJI. * */
   public interface GreetingActivities {
-    @ActivityMethod(scheduleToCloseTimeoutSeconds = 10)
+    @ActivityMethod(scheduleToCloseTimeoutSeconds = 10, heartbeatTimeoutSeconds = 5)
     String composeGreeting(String greeting, String name);
   }
 
@@ -69,60 +74,67 @@ public class HelloAsyncActivityCompletion {
   }
 
   static class GreetingActivitiesImpl implements GreetingActivities {
-    private final ActivityCompletionClient completionClient;
+    private final AsyncActivityCompleter completer;
 
-    GreetingActivitiesImpl(ActivityCompletionClient completionClient) {
-      this.completionClient = completionClient;
+    GreetingActivitiesImpl(AsyncActivityCompleter completer) {
+      this.completer = completer;
     }
 
     /**
      * Demonstrates how to implement an activity asynchronously. When {@link
      * Activity#doNotCompleteOnReturn()} is called the activity implementation function returning
-     * doesn't complete the activity.
+     * doesn't complete the activity. The completer calls it, runs the work on its own pool and
+     * completes the activity through {@link ActivityCompletionClient}.
      */
     @Override
     public String composeGreeting(String greeting, String name) {
-      // TaskToken is a correlation token used to match an activity task with its completion
-      byte[] taskToken = Activity.getTaskToken();
       // In real life this request can be executed anywhere. By a separate service for
-      // example.
-      ForkJoinPool.commonPool().execute(() -> composeGreetingAsync(taskToken, greeting, name));
-      Activity.doNotCompleteOnReturn();
+      // example. Blocks when too many activities are not completed yet.
+      completer.complete(() -> greeting + " " + name + "!");
       // When doNotCompleteOnReturn() is invoked the return value is ignored.
       return "ignored";
     }
-
-    private void composeGreetingAsync(byte[] taskToken, String greeting, String name) {
-      String result = greeting + " " + name + "!";
-      // To complete an activity from a different thread or process use ActivityCompletionClient.
-      // In real applications the client is initialized by a process that performs the completion.
-      completionClient.complete(taskToken, result);
-    }
   }
 
   public static void main(String[] args) throws ExecutionException, InterruptedException {
+    if (args.length > 1) {
+      System.err.println(
+          "Usage: java " + HelloAsyncActivityCompletion.class.getName() + " [<workflowCount>]");
+      System.exit(1);
+    }
+    int workflowCount = args.length == 0 ? 1 : Integer.parseInt(args[0]);
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
 
     // Start a worker that hosts both workflow and activity implementations.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     // Workflows are stateful. So you need a type to create instances.
     worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
     // Activities are stateless and thread safe. So a shared instance is used.
     // CompletionClient is passed to activity here only to support unit testing.
     ActivityCompletionClient completionClient = workflowClient.newActivityCompletionClient();
-    worker.registerActivitiesImplementations(new GreetingActivitiesImpl(completionClient));
+    AsyncActivityCompleter completer =
+        new AsyncActivityCompleter(completionClient, 4, 1000, HEARTBEAT_INTERVAL);
+    worker.registerActivitiesImplementations(new GreetingActivitiesImpl(completer));
     // Start listening to the workflow and activity task lists.
     factory.start();
 
-    // Get a workflow stub using the same task list the worker uses.
-    GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
-    // Execute a workflow returning a future that can be used to wait for the workflow
-    // completion.
-    CompletableFuture<String> greeting = WorkflowClient.execute(workflow::getGreeting, "World");
+    List<CompletableFuture<String>> greetings = new ArrayList<>();
+    for (int i = 0; i < workflowCount; i++) {
+      // Get a workflow stub using the same task list the worker uses.
+      GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
+      // Execute a workflow returning a future that can be used to wait for the workflow
+      // completion.
+      String name = workflowCount == 1 ? "World" : "World" + i;
+      greetings.add(WorkflowClient.execute(workflow::getGreeting, name));
+    }
     // Wait for workflow completion.
-    System.out.println(greeting.get());
+    for (CompletableFuture<String> greeting : greetings) {
+      greeting.get();
+    }
+    System.out.println(greetings.get(0).get());
+    System.out.println(completer.getMetrics());
     System.exit(0);
   }
 }
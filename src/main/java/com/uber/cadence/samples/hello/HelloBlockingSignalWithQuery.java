@@ -17,26 +17,30 @@
 
 package com.uber.cadence.samples.hello;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.CadenceClients;
+import com.uber.cadence.samples.common.SequenceWaiter;
 import com.uber.cadence.worker.Worker;
 import com.uber.cadence.workflow.QueryMethod;
 import com.uber.cadence.workflow.SignalMethod;
 import com.uber.cadence.workflow.Workflow;
 import com.uber.cadence.workflow.WorkflowMethod;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
- * Demonstrates asynchronous signalling of a workflow. Requires a local instance of Cadence server
- * to be running.
+ * Demonstrates a signal that the sender can wait on until the workflow has processed it. Every
+ * sender numbers its signals and the workflow reports the last number it processed through a query,
+ * so the acknowledgment works across processes. Requires a local instance of Cadence server to be
+ * running.
  */
 @SuppressWarnings("ALL")
 public class HelloBlockingSignalWithQuery {
@@ -52,56 +56,182 @@ public class HelloBlockingSignalWithQuery {
     @WorkflowMethod
     List<String> getGreetings();
 
-    /** Define name through an external signal. */
+    /**
+     * Define name through an external signal.
+     *
+     * @param senderId identifies the sender, see {@link AcknowledgedSender}
+     * @param sequence increases with every signal of the sender
+     */
     @SignalMethod
-    void waitForName(String name, CompletableFuture mutex);
+    void waitForName(String senderId, long sequence, String name);
 
-    /** Receives name through an external query. */
+    /**
+     * Returns all the greetings waiting in the queue. Its size grows with the queue, pollers should
+     * use {@link #getSummary()} and {@link #retrieveGreetings(long, int)} instead.
+     */
     @QueryMethod
     String retrieveName();
 
+    /** Returns the counts and the latest greeting without any list. */
+    @QueryMethod
+    GreetingSummary getSummary();
+
+    /**
+     * Returns up to limit processed greetings that follow the given sequence. Greetings are
+     * numbered from 1 in processing order, pass 0 to start from the first one and the last sequence
+     * of a page to get the next one.
+     */
+    @QueryMethod
+    GreetingPage retrieveGreetings(long afterSequence, int limit);
+
+    /** Returns the sequence of the last processed signal of the sender or 0 if there is none. */
+    @QueryMethod
+    long getProcessedSequence(String senderId);
+
     /** Receives name through an external signal. */
     @SignalMethod
     void exit();
   }
 
+  /** Result of {@link GreetingWorkflow#getSummary()}. */
+  public static final class GreetingSummary {
+    private long processedCount;
+    private int queuedCount;
+    private String lastGreeting;
+
+    public GreetingSummary() {}
+
+    GreetingSummary(long processedCount, int queuedCount, String lastGreeting) {
+      this.processedCount = processedCount;
+      this.queuedCount = queuedCount;
+      this.lastGreeting = lastGreeting;
+    }
+
+    /** Sequence of the last processed greeting. */
+    public long getProcessedCount() {
+      return processedCount;
+    }
+
+    public int getQueuedCount() {
+      return queuedCount;
+    }
+
+    /** Last processed greeting or null if there is none. */
+    public String getLastGreeting() {
+      return lastGreeting;
+    }
+  }
+
+  /** Result of {@link GreetingWorkflow#retrieveGreetings(long, int)}. */
+  public static final class GreetingPage {
+    private List<String> greetings;
+    private long lastSequence;
+    private boolean more;
+
+    public GreetingPage() {}
+
+    GreetingPage(List<String> greetings, long lastSequence, boolean more) {
+      this.greetings = greetings;
+      this.lastSequence = lastSequence;
+      this.more = more;
+    }
+
+    public List<String> getGreetings() {
+      return greetings;
+    }
+
+    /** Sequence of the last greeting of the page, the cursor of the next page. */
+    public long getLastSequence() {
+      return lastSequence;
+    }
+
+    /** Whether more greetings follow this page. */
+    public boolean hasMore() {
+      return more;
+    }
+  }
+
   /** GreetingWorkflow implementation that returns a greeting. */
   public static class GreetingWorkflowImpl implements GreetingWorkflow {
 
-    List<String> messageQueue = new ArrayList<>(10);
+    /** Upper bound of the page size, whatever the caller asks for. */
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private static final class Message {
+      final String senderId;
+      final long sequence;
+      final String greeting;
+
+      Message(String senderId, long sequence, String greeting) {
+        this.senderId = senderId;
+        this.sequence = sequence;
+        this.greeting = greeting;
+      }
+    }
+
+    Queue<Message> messageQueue = new ArrayDeque<>();
+    /** Last processed sequence by sender. Holds one entry per sender for the life of the run. */
+    Map<String, Long> processedSequences = new HashMap<>();
+
+    List<String> receivedMessages = new ArrayList<>(10);
     boolean exit = false;
 
     @Override
     public List<String> getGreetings() {
-      List<String> receivedMessages = new ArrayList<>(10);
-
       while (true) {
         Workflow.await(() -> !messageQueue.isEmpty() || exit);
         if (messageQueue.isEmpty() && exit) {
           return receivedMessages;
         }
-        String message = messageQueue.remove(0);
-        receivedMessages.add(message);
+        for (Message message = messageQueue.poll();
+            message != null;
+            message = messageQueue.poll()) {
+          receivedMessages.add(message.greeting);
+          processedSequences.put(message.senderId, message.sequence);
+        }
       }
     }
 
     @Override
-    public void waitForName(String name, CompletableFuture mutex) {
-      System.out.println("SIGNAL START");
-      messageQueue.add("Hello " + name + "!");
-      mutex.complete("complete");
+    public void waitForName(String senderId, long sequence, String name) {
+      messageQueue.add(new Message(senderId, sequence, "Hello " + name + "!"));
+    }
 
-      LockService.completeLock("greetingWorkflowSignal_1");
+    @Override
+    public String retrieveName() {
+      if (messageQueue.isEmpty()) {
+        return "message queue empty";
+      }
+      StringBuilder result = new StringBuilder();
+      for (Message message : messageQueue) {
+        if (result.length() > 0) {
+          result.append(',');
+        }
+        result.append(message.greeting);
+      }
+      return result.toString();
+    }
 
-      System.out.println("SIGNAL EXIT");
+    @Override
+    public GreetingSummary getSummary() {
+      int count = receivedMessages.size();
+      return new GreetingSummary(
+          count, messageQueue.size(), count == 0 ? null : receivedMessages.get(count - 1));
     }
 
     @Override
-    public String retrieveName() {
-      System.out.println("QUERY");
-      return messageQueue.isEmpty()
-          ? "message queue empty"
-          : messageQueue.stream().map(v -> v).collect(Collectors.joining(","));
+    public GreetingPage retrieveGreetings(long afterSequence, int limit) {
+      int count = receivedMessages.size();
+      int from = (int) Math.max(0, Math.min(afterSequence, count));
+      int to = from + Math.max(0, Math.min(Math.min(limit, MAX_PAGE_SIZE), count - from));
+      // Copied as the list keeps growing after the query returns.
+      List<String> page = new ArrayList<>(receivedMessages.subList(from, to));
+      return new GreetingPage(page, to, to < count);
+    }
+
+    @Override
+    public long getProcessedSequence(String senderId) {
+      return processedSequences.getOrDefault(senderId, 0L);
     }
 
     @Override
@@ -110,27 +240,62 @@ public class HelloBlockingSignalWithQuery {
     }
   }
 
-  public static class LockService {
-    private static Map<String, CompletableFuture> locks = new ConcurrentHashMap<>();
+  /**
+   * Sends names to a workflow and waits until they are processed. Signals of a sender are sent one
+   * at a time, so they are recorded and processed in sequence order and the last processed sequence
+   * acknowledges all the previous ones. Waiting is asynchronous and a single query serves all the
+   * waiting signals. Use more senders for a higher signal rate.
+   */
+  public static class AcknowledgedSender implements AutoCloseable {
+    private final String senderId = UUID.randomUUID().toString();
+    private final GreetingWorkflow workflow;
+    private final SequenceWaiter waiter;
+    private long sequence;
+
+    /** @param maxWaiters maximum number of signals waited for at the same time */
+    public AcknowledgedSender(WorkflowClient workflowClient, String workflowId, int maxWaiters) {
+      // Without a run ID the stub addresses the current run of the workflow.
+      this.workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowId);
+      this.waiter =
+          new SequenceWaiter(
+              () -> workflow.getProcessedSequence(senderId),
+              Duration.ofMillis(10),
+              Duration.ofSeconds(1),
+              maxWaiters);
+    }
+
+    /**
+     * Signals the name and returns a future that completes once the workflow has processed it. The
+     * future fails with a TimeoutException if it is not processed within the timeout.
+     */
+    public CompletableFuture<Long> send(String name, Duration timeout) throws InterruptedException {
+      long current;
+      synchronized (this) {
+        current = ++sequence;
+        workflow.waitForName(senderId, current, name);
+      }
+      return waiter.await(current, timeout);
+    }
 
-    public static void addLock(String key, CompletableFuture lock) {
-      locks.putIfAbsent(key, lock);
+    public SequenceWaiter getWaiter() {
+      return waiter;
     }
 
-    public static void completeLock(String key) {
-      locks.get(key).complete(key);
+    @Override
+    public void close() {
+      waiter.close();
     }
   }
 
   public static void main(String[] args) throws Exception {
     // Start a worker that hosts the workflow implementation.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     // Get a workflow stub using the same task list the worker uses.
     WorkflowOptions workflowOptions =
         new WorkflowOptions.Builder()
@@ -140,24 +305,28 @@ public class HelloBlockingSignalWithQuery {
     GreetingWorkflow workflow =
         workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
     // Start workflow asynchronously to not use another thread to signal.
-    WorkflowClient.start(workflow::getGreetings);
+    String workflowId = WorkflowClient.start(workflow::getGreetings).getWorkflowId();
     // After start for getGreeting returns, the workflow is guaranteed to be started.
-    // So we can send a signal to it using workflow stub.
-    // This workflow keeps receiving signals until exit is called
-    CompletableFuture mutex = new CompletableFuture();
-    workflow.waitForName("World", mutex);
-    LockService.addLock("greetingWorkflowSignal_1", mutex);
-    mutex.get();
-    String greetings = workflow.retrieveName();
-    System.out.println("Greetings from workflow - " + greetings);
+    // So we can send a signal to it and wait until it is processed.
+    try (AcknowledgedSender sender = new AcknowledgedSender(workflowClient, workflowId, 100)) {
+      for (String name : new String[] {"World", "Universe"}) {
+        long processed = sender.send(name, Duration.ofSeconds(10)).get();
+        System.out.println("Processed " + name + " as signal " + processed);
+      }
+    }
+    GreetingSummary summary = workflow.getSummary();
+    System.out.println(
+        "Processed " + summary.getProcessedCount() + ", last - " + summary.getLastGreeting());
+    GreetingPage page = workflow.retrieveGreetings(0, 10);
+    System.out.println("First greetings - " + page.getGreetings());
 
     workflow.exit();
     // Calling synchronous getGreeting after workflow has started reconnects to the existing
     // workflow and blocks until a result is available. Note that this behavior assumes that
     // WorkflowOptions are not configured with WorkflowIdReusePolicy.AllowDuplicate. In that case
     // the call would fail with WorkflowExecutionAlreadyStartedException.
-    //    List<String> greetings = workflow.getGreetings();
-    //    System.out.println(greetings);
+    List<String> greetings = workflow.getGreetings();
+    System.out.println(greetings);
     System.exit(0);
   }
 }
@@ -17,9 +17,8 @@
 
 package com.uber.cadence.samples.hello;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.worker.Worker;
 import com.uber.cadence.workflow.Async;
 import com.uber.cadence.workflow.ChildWorkflowOptions;
@@ -92,7 +91,7 @@ public class HelloChild {
 
   public static void main(String[] args) {
     // Start a worker that hosts both parent and child workflow implementations.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker workerParent = factory.newWorker(TASK_LIST_PARENT);
     workerParent.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
 
@@ -103,7 +102,7 @@ public class HelloChild {
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance("127.0.0.1", 7933, DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     // Get a workflow stub using the same task list the worker uses.
     GreetingWorkflow parentWorkflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
 
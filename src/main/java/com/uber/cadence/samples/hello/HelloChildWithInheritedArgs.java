@@ -17,10 +17,9 @@
 
 package com.uber.cadence.samples.hello;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.converter.JsonDataConverter;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.samples.hello.extandabletypeadapter.ExtendableTypeAdapterFactory;
 import com.uber.cadence.samples.hello.extandabletypeadapter.GreetingBaseArgs;
 import com.uber.cadence.samples.hello.extandabletypeadapter.GreetingBaseArgsExtended;
@@ -75,7 +74,7 @@ public class HelloChildWithInheritedArgs {
 
   public static void main(String[] args) {
     // Start a worker that hosts both parent and child workflow implementations.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker =
         factory.newWorker(
             TASK_LIST,
@@ -92,7 +91,7 @@ public class HelloChildWithInheritedArgs {
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance("127.0.0.1", 7933, DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     // Get a workflow stub using the same task list the worker uses.
     GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
     // Execute a workflow waiting for it to complete.
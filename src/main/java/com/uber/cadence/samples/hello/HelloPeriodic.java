@@ -17,22 +17,23 @@
 
 package com.uber.cadence.samples.hello;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
-import com.google.common.base.Throwables;
-import com.uber.cadence.WorkflowExecution;
 import com.uber.cadence.WorkflowIdReusePolicy;
 import com.uber.cadence.activity.Activity;
 import com.uber.cadence.activity.ActivityOptions;
-import com.uber.cadence.client.DuplicateWorkflowException;
 import com.uber.cadence.client.WorkflowClient;
-import com.uber.cadence.client.WorkflowException;
-import com.uber.cadence.client.WorkflowStub;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.converter.DataConverter;
+import com.uber.cadence.converter.JsonDataConverter;
+import com.uber.cadence.samples.common.CadenceClients;
+import com.uber.cadence.samples.common.PeriodicScheduler;
+import com.uber.cadence.samples.common.PeriodicScheduler.Schedule;
+import com.uber.cadence.samples.common.WorkflowSupervisor;
 import com.uber.cadence.worker.Worker;
+import com.uber.cadence.workflow.Async;
+import com.uber.cadence.workflow.QueryMethod;
 import com.uber.cadence.workflow.Workflow;
 import com.uber.cadence.workflow.WorkflowMethod;
 import java.time.Duration;
-import java.util.Optional;
 
 /**
  * Demonstrates a "cron" workflow that executes activity periodically. Requires a local instance of
@@ -48,6 +49,9 @@ public class HelloPeriodic {
      * Use single fixed ID to ensure that there is at most one instance running. To run multiple
      * instances set different IDs through WorkflowOptions passed to the
      * WorkflowClient.newWorkflowStub call.
+     *
+     * @param limits history size at which a run continues as new, null for the defaults
+     * @param state carried over from the previous run, null for the first one
      */
     @WorkflowMethod(
       // At most one instance.
@@ -59,32 +63,114 @@ public class HelloPeriodic {
       executionStartToCloseTimeoutSeconds = 300,
       taskList = TASK_LIST
     )
-    void greetPeriodically(String name, Duration delay);
+    void greetPeriodically(
+        String name, Schedule schedule, HistoryLimits limits, PeriodicState state);
+
+    @QueryMethod
+    PeriodicState getState();
   }
 
   public interface GreetingActivities {
     void greet(String greeting);
   }
 
+  /** History size of a single run. The run continues as new before it exceeds either limit. */
+  public static final class HistoryLimits {
+    /**
+     * The service limits are much higher, but the longer the history the slower a decision that has
+     * to replay it.
+     */
+    public static final int DEFAULT_MAX_EVENTS = 1000;
+
+    public static final long DEFAULT_MAX_BYTES = 256 * 1024;
+
+    private final int maxEvents;
+    private final long maxBytes;
+
+    public HistoryLimits(int maxEvents, long maxBytes) {
+      this.maxEvents = maxEvents;
+      this.maxBytes = maxBytes;
+    }
+
+    public int getMaxEvents() {
+      return maxEvents;
+    }
+
+    public long getMaxBytes() {
+      return maxBytes;
+    }
+  }
+
+  /** State of the periodic greeting carried across continue-as-new. */
+  public static final class PeriodicState {
+    private long iterations;
+    private int runs;
+    private String lastGreeting;
+    private long lastGreetingTimeMillis;
+    private long nextFireTimeMillis;
+    private PeriodicScheduler.Metrics scheduleMetrics = new PeriodicScheduler.Metrics();
+
+    /** Total number of greetings over all the runs. */
+    public long getIterations() {
+      return iterations;
+    }
+
+    /** Number of runs, including the current one. */
+    public int getRuns() {
+      return runs;
+    }
+
+    public String getLastGreeting() {
+      return lastGreeting;
+    }
+
+    public long getLastGreetingTimeMillis() {
+      return lastGreetingTimeMillis;
+    }
+
+    /** Lag of the greetings behind the schedule. */
+    public PeriodicScheduler.Metrics getScheduleMetrics() {
+      return scheduleMetrics;
+    }
+  }
+
   /**
-   * GreetingWorkflow implementation that calls {@link #greetPeriodically(String, Duration)}
-   * continuously with a specified interval.
+   * GreetingWorkflow implementation that calls {@link GreetingActivities#greet(String)} on a fixed
+   * schedule. The workflow cannot read the length of its own history, so it keeps a deterministic
+   * estimate of it and continues as new once another iteration would exceed the limits. It also
+   * continues as new once another iteration might not complete before the execution timeout.
    */
   public static class GreetingWorkflowImpl implements GreetingWorkflow {
 
+    /** Workflow started and the first decision task scheduled, started and completed. */
+    static final int START_EVENTS = 4;
+
     /**
-     * This value is so low just to make the example interesting to watch. In real life you would
-     * use something like 100 or a value that matches a business cycle. For example if it runs once
-     * an hour 24 would make sense.
+     * Activity scheduled, started and completed, timer started and fired, and the two decision
+     * tasks that follow them.
      */
-    private final int CONTINUE_AS_NEW_FREQUENCEY = 10;
+    static final int EVENTS_PER_ITERATION = 11;
+
+    /** Workflow continued as new. */
+    static final int CONTINUE_AS_NEW_EVENTS = 1;
+
+    /** Rough size of an event without its payload. */
+    static final int EVENT_BYTES = 128;
+
+    static final Duration GREETING_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Time before the execution timeout after which no greeting starts, enough for a greeting and
+     * the decisions around it.
+     */
+    static final Duration RUN_END_MARGIN = GREETING_TIMEOUT.multipliedBy(2);
+
+    private static final DataConverter DATA_CONVERTER = JsonDataConverter.getInstance();
 
     private final GreetingActivities activities =
         Workflow.newActivityStub(
             GreetingActivities.class,
-            new ActivityOptions.Builder()
-                .setScheduleToCloseTimeout(Duration.ofSeconds(10))
-                .build());
+            new ActivityOptions.Builder().setScheduleToCloseTimeout(GREETING_TIMEOUT).build());
 
     /**
      * Stub used to terminate this workflow run and create the next one with the same ID atomically.
@@ -92,18 +178,81 @@ public class HelloPeriodic {
     private final GreetingWorkflow continueAsNew =
         Workflow.newContinueAsNewStub(GreetingWorkflow.class);
 
+    private PeriodicState state;
+    private long events;
+    private long bytes;
+
     @Override
-    public void greetPeriodically(String name, Duration delay) {
-      // Loop the predefined number of times then continue this workflow as new.
-      // This is needed to periodically truncate the history size.
-      for (int i = 0; i < CONTINUE_AS_NEW_FREQUENCEY; i++) {
-        activities.greet("Hello " + name + "!");
-        Workflow.sleep(delay);
+    public void greetPeriodically(
+        String name, Schedule schedule, HistoryLimits limits, PeriodicState state) {
+      HistoryLimits historyLimits =
+          limits == null
+              ? new HistoryLimits(HistoryLimits.DEFAULT_MAX_EVENTS, HistoryLimits.DEFAULT_MAX_BYTES)
+              : limits;
+      this.state = state == null ? new PeriodicState() : state;
+      this.state.runs++;
+      if (this.state.nextFireTimeMillis == 0) {
+        this.state.nextFireTimeMillis = Workflow.currentTimeMillis();
       }
+      long lastFireTimeMillis = getLastFireTimeMillis();
+      events = START_EVENTS;
+      bytes =
+          START_EVENTS * EVENT_BYTES + DATA_CONVERTER.toData(name, schedule, limits, state).length;
+      String greeting = "Hello " + name + "!";
+      long bytesPerIteration =
+          EVENTS_PER_ITERATION * EVENT_BYTES + DATA_CONVERTER.toData(greeting).length;
+
+      // The greetings keep to the schedule however long each of them takes.
+      PeriodicScheduler scheduler =
+          new PeriodicScheduler(
+              schedule, this.state.nextFireTimeMillis, this.state.scheduleMetrics);
+      // Greet while the history stays within the limits and the run has time left, then continue
+      // this workflow as new. This is needed to periodically truncate the history size.
+      // Always greet at least once, so limits that are too low cannot stall the workflow.
+      scheduler.run(
+          fireTimeMillis -> {
+            events += EVENTS_PER_ITERATION;
+            bytes += bytesPerIteration;
+            return Async.procedure(activities::greet, greeting)
+                .thenApply(
+                    r -> {
+                      this.state.iterations++;
+                      this.state.lastGreeting = greeting;
+                      this.state.lastGreetingTimeMillis = Workflow.currentTimeMillis();
+                      return null;
+                    });
+          },
+          () ->
+              events == START_EVENTS
+                  || (events + EVENTS_PER_ITERATION + CONTINUE_AS_NEW_EVENTS
+                          <= historyLimits.getMaxEvents()
+                      && bytes + bytesPerIteration <= historyLimits.getMaxBytes()
+                      && hasTimeFor(scheduler, lastFireTimeMillis)));
+      this.state.nextFireTimeMillis = scheduler.getNextFireTimeMillis();
       // Current workflow run stops executing after this call.
-      continueAsNew.greetPeriodically(name, delay);
+      continueAsNew.greetPeriodically(name, schedule, limits, this.state);
       // unreachable line
     }
+
+    @Override
+    public PeriodicState getState() {
+      return state;
+    }
+
+    /**
+     * Returns the workflow time after which a greeting started by the current run might not
+     * complete before its execution timeout. Must be called when the run starts.
+     */
+    static long getLastFireTimeMillis() {
+      Duration timeout = Workflow.getWorkflowInfo().getExecutionStartToCloseTimeout();
+      return Workflow.currentTimeMillis() + timeout.minus(RUN_END_MARGIN).toMillis();
+    }
+
+    /** Whether the next iteration of the scheduler fires at the latest at the given time. */
+    static boolean hasTimeFor(PeriodicScheduler scheduler, long lastFireTimeMillis) {
+      return Math.max(Workflow.currentTimeMillis(), scheduler.getNextFireTimeMillis())
+          <= lastFireTimeMillis;
+    }
   }
 
   static class GreetingActivitiesImpl implements GreetingActivities {
@@ -114,8 +263,12 @@ public class HelloPeriodic {
   }
 
   public static void main(String[] args) throws InterruptedException {
+    if (args.length > 1) {
+      System.err.println("Usage: java " + HelloPeriodic.class.getName() + " [<workflowCount>]");
+      System.exit(1);
+    }
     // Start a worker that hosts both workflow and activity implementations.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     // Workflows are stateful. So you need a type to create instances.
     worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
@@ -124,38 +277,47 @@ public class HelloPeriodic {
     // Start listening to the workflow and activity task lists.
     factory.start();
 
-    // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
-    // To ensure that this daemon type workflow is always running try to start it periodically
-    // ignoring the duplicated exception.
+    // Start the workflow executions. Usually this is done from another program.
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
+    // This limit is so low just to make the example interesting to watch. It continues as new
+    // after 8 greetings.
+    HistoryLimits limits = new HistoryLimits(100, HistoryLimits.DEFAULT_MAX_BYTES);
+    // To ensure that these daemon type workflows are always running the supervisor starts them
+    // again whenever they close, ignoring the duplicated exception of the ones still running.
     // It is only to protect from application level failures.
     // Failures of a workflow worker don't lead to workflow failures.
-    WorkflowExecution execution = null;
+    WorkflowSupervisor supervisor =
+        new WorkflowSupervisor(
+            workflowClient,
+            workflowId -> {
+              // New stub instance should be created for each new workflow start.
+              GreetingWorkflow workflow =
+                  workflowClient.newWorkflowStub(
+                      GreetingWorkflow.class,
+                      new WorkflowOptions.Builder().setWorkflowId(workflowId).build());
+              return WorkflowClient.start(
+                  workflow::greetPeriodically,
+                  "World",
+                  Schedule.every(Duration.ofSeconds(1)),
+                  limits,
+                  null);
+            },
+            Duration.ofSeconds(1),
+            Duration.ofMinutes(1),
+            4);
+    int workflowCount = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+    for (int i = 0; i < workflowCount; i++) {
+      supervisor.supervise(
+          workflowCount == 1 ? PERIODIC_WORKFLOW_ID : PERIODIC_WORKFLOW_ID + "-" + i);
+    }
     while (true) {
-      // Print reason of failure of the previous run, before restarting.
-      if (execution != null) {
-        WorkflowStub workflow = workflowClient.newUntypedWorkflowStub(execution, Optional.empty());
-        try {
-          workflow.getResult(Void.class); //
-        } catch (WorkflowException e) {
-          System.out.println("Previous instance failed:\n" + Throwables.getStackTraceAsString(e));
-        }
-      }
-      // New stub instance should be created for each new workflow start.
-      GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
-      try {
-        execution =
-            WorkflowClient.start(workflow::greetPeriodically, "World", Duration.ofSeconds(1));
-        System.out.println("Started " + execution);
-      } catch (DuplicateWorkflowException e) {
-        System.out.println("Still running as " + e.getExecution());
-      } catch (Throwable e) {
-        e.printStackTrace();
-        System.exit(1);
-      }
-      // This value is so low just for the sample purpose. In production workflow
-      // it is usually much higher.
+      // This value is so low just for the sample purpose.
       Thread.sleep(10000);
+      WorkflowSupervisor.Metrics metrics = supervisor.getMetrics();
+      System.out.println("Supervisor: " + metrics);
+      if (metrics.getLastFailure() != null) {
+        System.out.println("Last failure: " + metrics.getLastFailure());
+      }
     }
   }
 }
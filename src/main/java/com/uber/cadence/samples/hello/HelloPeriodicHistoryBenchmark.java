@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hello;
+
+import com.uber.cadence.EventType;
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.ListClosedWorkflowExecutionsRequest;
+import com.uber.cadence.WorkflowExecutionFilter;
+import com.uber.cadence.WorkflowExecutionInfo;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.common.WorkflowExecutionHistory;
+import com.uber.cadence.samples.common.HistoryPager;
+import com.uber.cadence.samples.common.LatencyRecorder;
+import com.uber.cadence.samples.common.PeriodicScheduler.Schedule;
+import com.uber.cadence.samples.hello.HelloPeriodic.GreetingActivities;
+import com.uber.cadence.samples.hello.HelloPeriodic.GreetingWorkflow;
+import com.uber.cadence.samples.hello.HelloPeriodic.GreetingWorkflowImpl;
+import com.uber.cadence.samples.hello.HelloPeriodic.HistoryLimits;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Measures how the decision latency of {@link HelloPeriodic} grows with the history of a run. For
+ * each event limit the workflow runs on {@link TestWorkflowEnvironment} until a run continues as
+ * new, then the history of that run is replayed repeatedly. A replay is what a decision task costs
+ * when the workflow is not in the worker cache, so it bounds the latency of the last decisions of a
+ * run.
+ */
+public class HelloPeriodicHistoryBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 5;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println(
+          "Usage: java "
+              + HelloPeriodicHistoryBenchmark.class.getName()
+              + " <maxEvents>[,<maxEvents>...] [<iterations>]");
+      System.exit(1);
+    }
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    String format = "%10s %8s %10s %10s %10s %10s %12s%n";
+    System.out.printf(
+        format, "Max events", "Events", "Greetings", "Avg", "p99", "Max", "Avg/greet");
+    System.out.printf(format, "", "", "", "ms/op", "ms/op", "ms/op", "us/op");
+    for (String value : args[0].split(",")) {
+      int maxEvents = Integer.parseInt(value);
+      WorkflowExecutionHistory history = recordRun(maxEvents);
+      int greetings = 0;
+      for (HistoryEvent event : history.getEvents()) {
+        if (event.getEventType() == EventType.ActivityTaskScheduled) {
+          greetings++;
+        }
+      }
+      LatencyRecorder replayTime = replay(history, iterations);
+      long average = replayTime.getSum() / replayTime.getCount();
+      System.out.printf(
+          format,
+          maxEvents,
+          history.getEvents().size(),
+          greetings,
+          toMillis(average),
+          toMillis(replayTime.getPercentile(99)),
+          toMillis(replayTime.getMax()),
+          String.format("%.1f", average / 1000.0 / Math.max(1, greetings)));
+    }
+    System.exit(0);
+  }
+
+  /** Runs the workflow until its first run continues as new and returns the history of that run. */
+  private static WorkflowExecutionHistory recordRun(int maxEvents) throws Exception {
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    try {
+      Worker worker = testEnv.newWorker(HelloPeriodic.TASK_LIST);
+      worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+      worker.registerActivitiesImplementations((GreetingActivities) greeting -> {});
+      testEnv.start();
+      WorkflowClient workflowClient = testEnv.newWorkflowClient();
+      Duration period = Duration.ofSeconds(1);
+      int greetingsPerRun = maxEvents / GreetingWorkflowImpl.EVENTS_PER_ITERATION + 1;
+      // Long runs must not time out before they continue as new.
+      WorkflowOptions workflowOptions =
+          new WorkflowOptions.Builder()
+              .setExecutionStartToCloseTimeout(period.multipliedBy(greetingsPerRun * 4))
+              .build();
+      GreetingWorkflow workflow =
+          workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+      WorkflowClient.start(
+          workflow::greetPeriodically,
+          "World",
+          Schedule.every(period),
+          new HistoryLimits(maxEvents, Long.MAX_VALUE),
+          null);
+      ListClosedWorkflowExecutionsRequest request =
+          new ListClosedWorkflowExecutionsRequest()
+              .setDomain(testEnv.getDomain())
+              .setExecutionFilter(
+                  new WorkflowExecutionFilter().setWorkflowId(HelloPeriodic.PERIODIC_WORKFLOW_ID));
+      List<WorkflowExecutionInfo> closed;
+      int attempts = 0;
+      do {
+        // Decisions take real time, so the skipped time can run a little ahead of the workflow.
+        testEnv.sleep(period.multipliedBy(greetingsPerRun));
+        closed = testEnv.getWorkflowService().ListClosedWorkflowExecutions(request).getExecutions();
+      } while (closed.isEmpty() && ++attempts < 3);
+      if (closed.isEmpty()) {
+        throw new IllegalStateException("No run continued as new with " + maxEvents + " events");
+      }
+      List<HistoryEvent> events = new ArrayList<>();
+      Iterator<HistoryEvent> pager =
+          new HistoryPager(
+                  testEnv.getWorkflowService(), testEnv.getDomain(), closed.get(0).getExecution())
+              .events();
+      while (pager.hasNext()) {
+        events.add(pager.next());
+      }
+      return new WorkflowExecutionHistory(events);
+    } finally {
+      testEnv.close();
+    }
+  }
+
+  private static LatencyRecorder replay(WorkflowExecutionHistory history, int iterations)
+      throws Exception {
+    LatencyRecorder result = new LatencyRecorder();
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    try {
+      Worker worker = testEnv.newWorker(HelloPeriodic.TASK_LIST);
+      worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        worker.replayWorkflowExecution(history);
+      }
+      for (int i = 0; i < iterations; i++) {
+        long startNanos = System.nanoTime();
+        worker.replayWorkflowExecution(history);
+        result.record(System.nanoTime() - startNanos);
+      }
+    } finally {
+      testEnv.close();
+    }
+    return result;
+  }
+
+  private static String toMillis(long nanos) {
+    return String.format("%.3f", nanos / 1_000_000.0);
+  }
+}
@@ -0,0 +1,411 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hello;
+
+import com.google.common.hash.Hashing;
+import com.uber.cadence.WorkflowIdReusePolicy;
+import com.uber.cadence.activity.ActivityOptions;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.CadenceClients;
+import com.uber.cadence.samples.common.PeriodicScheduler;
+import com.uber.cadence.samples.common.PeriodicScheduler.Schedule;
+import com.uber.cadence.samples.common.WorkflowSupervisor;
+import com.uber.cadence.samples.hello.HelloPeriodic.GreetingActivities;
+import com.uber.cadence.samples.hello.HelloPeriodic.GreetingActivitiesImpl;
+import com.uber.cadence.samples.hello.HelloPeriodic.GreetingWorkflowImpl;
+import com.uber.cadence.samples.hello.HelloPeriodic.HistoryLimits;
+import com.uber.cadence.worker.Worker;
+import com.uber.cadence.workflow.Async;
+import com.uber.cadence.workflow.Promise;
+import com.uber.cadence.workflow.QueryMethod;
+import com.uber.cadence.workflow.SignalMethod;
+import com.uber.cadence.workflow.Workflow;
+import com.uber.cadence.workflow.WorkflowMethod;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Demonstrates a periodic job split into shards. Each shard is a workflow with ID
+ * "HelloPeriodicSharded-&lt;shard&gt;" that greets its partition of the names, so the shards run in
+ * parallel on any number of workers. A {@link ShardCoordinator} keeps the shards running and
+ * changes their number on the fly. Requires a local instance of Cadence server to be running.
+ */
+public class HelloPeriodicSharded {
+
+  static final String TASK_LIST = "HelloPeriodicSharded";
+
+  /** Differs from the IDs of the HelloPeriodic workflows, which run in the same domain. */
+  static final String SHARD_WORKFLOW_ID_PREFIX = "HelloPeriodicSharded-";
+
+  public interface GreetingShardWorkflow {
+
+    /**
+     * @param names partition of the names greeted by this shard
+     * @param state carried over from the previous run, null for the first one
+     */
+    @WorkflowMethod(
+      workflowIdReusePolicy = WorkflowIdReusePolicy.AllowDuplicate,
+      executionStartToCloseTimeoutSeconds = 300,
+      taskList = TASK_LIST
+    )
+    void greetShard(List<String> names, Schedule schedule, HistoryLimits limits, ShardState state);
+
+    /** Replaces the partition from the next greeting on. */
+    @SignalMethod
+    void reassign(List<String> names);
+
+    /** Completes the shard after the greeting in progress. */
+    @SignalMethod
+    void retire();
+
+    @QueryMethod
+    List<String> getNames();
+
+    @QueryMethod
+    ShardState getState();
+  }
+
+  /** State of a shard carried across continue-as-new. */
+  public static final class ShardState {
+    private long iterations;
+    private long greetings;
+    private int runs;
+    private long nextFireTimeMillis;
+    private PeriodicScheduler.Metrics scheduleMetrics = new PeriodicScheduler.Metrics();
+
+    /** Number of times the partition was greeted. */
+    public long getIterations() {
+      return iterations;
+    }
+
+    /** Number of names greeted. */
+    public long getGreetings() {
+      return greetings;
+    }
+
+    public int getRuns() {
+      return runs;
+    }
+
+    public PeriodicScheduler.Metrics getScheduleMetrics() {
+      return scheduleMetrics;
+    }
+  }
+
+  /**
+   * Greets all the names of the partition at each fire time, in parallel. Like {@link
+   * HelloPeriodic.GreetingWorkflowImpl} it continues as new based on an estimate of its history,
+   * which grows with the size of the partition, or before it runs into its execution timeout.
+   */
+  public static class GreetingShardWorkflowImpl implements GreetingShardWorkflow {
+
+    /** Workflow started and the first decision task scheduled, started and completed. */
+    static final int START_EVENTS = 4;
+
+    /** Timer started and fired and the decision task that follows. */
+    static final int TIMER_EVENTS = 5;
+
+    /** Activity scheduled, started and completed and at most one decision task that follows. */
+    static final int GREETING_EVENTS = 6;
+
+    /** Signal and the decision task that follows. */
+    static final int SIGNAL_EVENTS = 4;
+
+    /** Workflow continued as new. */
+    static final int CONTINUE_AS_NEW_EVENTS = 1;
+
+    /** Rough size of an event with its payload. */
+    static final int EVENT_BYTES = 256;
+
+    private final GreetingActivities activities =
+        Workflow.newActivityStub(
+            GreetingActivities.class,
+            new ActivityOptions.Builder()
+                .setScheduleToCloseTimeout(GreetingWorkflowImpl.GREETING_TIMEOUT)
+                .build());
+
+    private final GreetingShardWorkflow continueAsNew =
+        Workflow.newContinueAsNewStub(GreetingShardWorkflow.class);
+
+    private List<String> names;
+    private ShardState state;
+    private boolean retired;
+    private long events;
+
+    @Override
+    public void greetShard(
+        List<String> names, Schedule schedule, HistoryLimits limits, ShardState state) {
+      HistoryLimits historyLimits =
+          limits == null
+              ? new HistoryLimits(HistoryLimits.DEFAULT_MAX_EVENTS, HistoryLimits.DEFAULT_MAX_BYTES)
+              : limits;
+      long maxEvents =
+          Math.min(historyLimits.getMaxEvents(), historyLimits.getMaxBytes() / EVENT_BYTES);
+      this.names = names;
+      this.state = state == null ? new ShardState() : state;
+      this.state.runs++;
+      if (this.state.nextFireTimeMillis == 0) {
+        this.state.nextFireTimeMillis = Workflow.currentTimeMillis();
+      }
+      long lastFireTimeMillis = GreetingWorkflowImpl.getLastFireTimeMillis();
+      events = START_EVENTS;
+
+      PeriodicScheduler scheduler =
+          new PeriodicScheduler(
+              schedule, this.state.nextFireTimeMillis, this.state.scheduleMetrics);
+      scheduler.run(
+          fireTimeMillis -> {
+            List<String> partition = this.names;
+            events += iterationEvents(partition);
+            List<Promise<Void>> greetings = new ArrayList<>();
+            for (String name : partition) {
+              greetings.add(Async.procedure(activities::greet, "Hello " + name + "!"));
+            }
+            return Promise.allOf(greetings)
+                .thenApply(
+                    r -> {
+                      this.state.iterations++;
+                      this.state.greetings += partition.size();
+                      return null;
+                    });
+          },
+          () ->
+              !retired
+                  && (events == START_EVENTS
+                      || (events + iterationEvents(this.names) + CONTINUE_AS_NEW_EVENTS <= maxEvents
+                          && GreetingWorkflowImpl.hasTimeFor(scheduler, lastFireTimeMillis))));
+      if (retired) {
+        return;
+      }
+      this.state.nextFireTimeMillis = scheduler.getNextFireTimeMillis();
+      // Current workflow run stops executing after this call.
+      continueAsNew.greetShard(this.names, schedule, limits, this.state);
+    }
+
+    @Override
+    public void reassign(List<String> names) {
+      this.names = names;
+      events += SIGNAL_EVENTS;
+    }
+
+    @Override
+    public void retire() {
+      retired = true;
+      events += SIGNAL_EVENTS;
+    }
+
+    @Override
+    public List<String> getNames() {
+      return names;
+    }
+
+    @Override
+    public ShardState getState() {
+      return state;
+    }
+
+    private static long iterationEvents(List<String> names) {
+      return TIMER_EVENTS + (long) GREETING_EVENTS * names.size();
+    }
+  }
+
+  /**
+   * Keeps the shard workflows of a job running with a {@link WorkflowSupervisor} and partitions the
+   * names between them. The partition uses consistent hashing, so changing the number of shards
+   * moves only the names that have to move: about 1/n of them when a shard is added.
+   *
+   * <p>A shard that misses a reassignment, for example because it was restarting, gets its current
+   * partition at its next start, so the shards converge on the latest assignment.
+   */
+  public static class ShardCoordinator implements AutoCloseable {
+
+    private final WorkflowClient client;
+    private final List<String> names;
+    private final WorkflowSupervisor supervisor;
+    /** Guarded by this. */
+    private int shardCount;
+    /** Guarded by this. */
+    private long movedNames;
+
+    public ShardCoordinator(
+        WorkflowClient client,
+        List<String> names,
+        Schedule schedule,
+        HistoryLimits limits,
+        int shardCount) {
+      this.client = client;
+      this.names = new ArrayList<>(names);
+      this.supervisor =
+          new WorkflowSupervisor(
+              client,
+              workflowId -> {
+                GreetingShardWorkflow workflow =
+                    client.newWorkflowStub(
+                        GreetingShardWorkflow.class,
+                        new WorkflowOptions.Builder().setWorkflowId(workflowId).build());
+                return WorkflowClient.start(
+                    workflow::greetShard,
+                    getPartition(parseShard(workflowId)),
+                    schedule,
+                    limits,
+                    null);
+              },
+              Duration.ofSeconds(1),
+              Duration.ofMinutes(1),
+              4);
+      setShardCount(shardCount);
+    }
+
+    public static String getWorkflowId(int shard) {
+      return SHARD_WORKFLOW_ID_PREFIX + shard;
+    }
+
+    /** Shard of the name when the job is split into the given number of shards. */
+    public static int getShard(String name, int shardCount) {
+      return Hashing.consistentHash(
+          Hashing.murmur3_128().hashString(name, StandardCharsets.UTF_8), shardCount);
+    }
+
+    /** Names greeted by the shard. */
+    public synchronized List<String> getPartition(int shard) {
+      List<String> result = new ArrayList<>();
+      for (String name : names) {
+        if (getShard(name, shardCount) == shard) {
+          result.add(name);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Changes the number of shards. New shards are started with their partitions, the remaining
+     * ones are signalled their new partitions and the removed ones are retired.
+     */
+    public synchronized void setShardCount(int shardCount) {
+      if (shardCount < 1) {
+        throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+      }
+      int previous = this.shardCount;
+      this.shardCount = shardCount;
+      for (String name : names) {
+        if (previous > 0 && getShard(name, previous) != getShard(name, shardCount)) {
+          movedNames++;
+        }
+      }
+      for (int shard = 0; shard < Math.max(previous, shardCount); shard++) {
+        String workflowId = getWorkflowId(shard);
+        if (shard >= shardCount) {
+          supervisor.stop(workflowId);
+          signal(workflowId, null);
+        } else if (shard >= previous) {
+          supervisor.supervise(workflowId);
+        } else {
+          signal(workflowId, getPartition(shard));
+        }
+      }
+    }
+
+    public synchronized int getShardCount() {
+      return shardCount;
+    }
+
+    /** Number of names that changed shards over all the rebalances. */
+    public synchronized long getMovedNames() {
+      return movedNames;
+    }
+
+    public WorkflowSupervisor.Metrics getMetrics() {
+      return supervisor.getMetrics();
+    }
+
+    @Override
+    public void close() {
+      supervisor.close();
+    }
+
+    private static int parseShard(String workflowId) {
+      return Integer.parseInt(workflowId.substring(workflowId.lastIndexOf('-') + 1));
+    }
+
+    /** Reassigns the partition of the shard, or retires it when the partition is null. */
+    private void signal(String workflowId, List<String> partition) {
+      GreetingShardWorkflow workflow =
+          client.newWorkflowStub(GreetingShardWorkflow.class, workflowId);
+      try {
+        if (partition == null) {
+          workflow.retire();
+        } else {
+          workflow.reassign(partition);
+        }
+      } catch (RuntimeException e) {
+        // Not running, the supervisor starts it with its current partition.
+        System.out.println("Failed to signal " + workflowId + ": " + e);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println(
+          "Usage: java "
+              + HelloPeriodicSharded.class.getName()
+              + " <nameCount> <shardCount> [<rebalancedShardCount>]");
+      System.exit(1);
+    }
+    int nameCount = Integer.parseInt(args[0]);
+    int shardCount = Integer.parseInt(args[1]);
+
+    // Any number of processes can run the same worker to share the shards.
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
+    Worker worker = factory.newWorker(TASK_LIST);
+    worker.registerWorkflowImplementationTypes(GreetingShardWorkflowImpl.class);
+    worker.registerActivitiesImplementations(new GreetingActivitiesImpl());
+    factory.start();
+
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < nameCount; i++) {
+      names.add("World" + i);
+    }
+    ShardCoordinator coordinator =
+        new ShardCoordinator(
+            CadenceClients.getWorkflowClient(),
+            Collections.unmodifiableList(names),
+            Schedule.every(Duration.ofSeconds(10)),
+            null,
+            shardCount);
+    if (args.length > 2) {
+      // This value is so low just for the sample purpose.
+      Thread.sleep(30000);
+      coordinator.setShardCount(Integer.parseInt(args[2]));
+      System.out.println(
+          "Rebalanced to "
+              + coordinator.getShardCount()
+              + " shards, moved "
+              + coordinator.getMovedNames()
+              + " names");
+    }
+    while (true) {
+      Thread.sleep(10000);
+      System.out.println("Supervisor: " + coordinator.getMetrics());
+    }
+  }
+}
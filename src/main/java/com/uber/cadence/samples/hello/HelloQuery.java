@@ -17,10 +17,9 @@
 
 package com.uber.cadence.samples.hello;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.worker.Worker;
 import com.uber.cadence.workflow.QueryMethod;
 import com.uber.cadence.workflow.Workflow;
@@ -40,37 +39,52 @@ public class HelloQuery {
     /** Returns greeting as a query value. */
     @QueryMethod
     String queryGreeting();
+
+    /** Returns a number that changes whenever the greeting does. */
+    @QueryMethod
+    long queryGreetingVersion();
   }
 
   /** GreetingWorkflow implementation that updates greeting after sleeping for 5 seconds. */
   public static class GreetingWorkflowImpl implements GreetingWorkflow {
 
     private String greeting;
+    private long greetingVersion;
 
     @Override
     public void createGreeting(String name) {
-      greeting = "Hello " + name + "!";
+      setGreeting("Hello " + name + "!");
       // Workflow code always uses WorkflowThread.sleep
       // and Workflow.currentTimeMillis instead of standard Java ones.
       Workflow.sleep(Duration.ofSeconds(2));
-      greeting = "Bye " + name + "!";
+      setGreeting("Bye " + name + "!");
     }
 
     @Override
     public String queryGreeting() {
       return greeting;
     }
+
+    @Override
+    public long queryGreetingVersion() {
+      return greetingVersion;
+    }
+
+    private void setGreeting(String greeting) {
+      this.greeting = greeting;
+      greetingVersion++;
+    }
   }
 
   public static void main(String[] args) throws InterruptedException {
     // Start a worker that hosts the workflow implementation.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     // Get a workflow stub using the same task list the worker uses.
     WorkflowOptions workflowOptions =
         new WorkflowOptions.Builder()
@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hello;
+
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.LatencyRecorder;
+import com.uber.cadence.samples.common.QueryCache;
+import com.uber.cadence.samples.hello.HelloQuery.GreetingWorkflow;
+import com.uber.cadence.samples.hello.HelloQuery.GreetingWorkflowImpl;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Compares {@link HelloQuery} greeting queries sent directly with the same queries served through a
+ * {@link QueryCache}. Runs in process on top of {@link TestWorkflowEnvironment}, so every uncached
+ * query replays the workflow in the local worker. The greetings of all the workflows are updated
+ * between the two cached rounds to show the cost of version invalidation.
+ */
+public class HelloQueryCacheBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3 || args.length > 4) {
+      System.err.println(
+          "Usage: java "
+              + HelloQueryCacheBenchmark.class.getName()
+              + " <workflowCount> <queryCount> <threads> [<timeToLiveMillis>]");
+      System.exit(1);
+    }
+    int workflowCount = Integer.parseInt(args[0]);
+    int queryCount = Integer.parseInt(args[1]);
+    int threads = Integer.parseInt(args[2]);
+    Duration timeToLive = Duration.ofMillis(args.length > 3 ? Long.parseLong(args[3]) : 100);
+
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(HelloQuery.TASK_LIST);
+    worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+    testEnv.start();
+    WorkflowClient workflowClient = testEnv.newWorkflowClient();
+
+    WorkflowOptions workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(HelloQuery.TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofHours(1))
+            .build();
+    List<String> workflowIds = new ArrayList<>();
+    for (int i = 0; i < workflowCount; i++) {
+      GreetingWorkflow workflow =
+          workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+      workflowIds.add(WorkflowClient.start(workflow::createGreeting, "World" + i).getWorkflowId());
+    }
+
+    run(
+        "direct",
+        workflowIds,
+        queryCount,
+        threads,
+        workflowId ->
+            workflowClient
+                .newUntypedWorkflowStub(workflowId, Optional.empty(), Optional.empty())
+                .query("GreetingWorkflow::queryGreeting", String.class));
+
+    QueryCache cache =
+        new QueryCache(
+            workflowClient, "GreetingWorkflow::queryGreetingVersion", timeToLive, workflowCount);
+    Function<String, String> cached =
+        workflowId -> cache.query(workflowId, "GreetingWorkflow::queryGreeting", String.class);
+    run("cached", workflowIds, queryCount, threads, cached);
+    System.out.println("Cache: " + cache.getMetrics());
+
+    // Every greeting changes, so each cached one is invalidated at its next version check.
+    testEnv.sleep(Duration.ofSeconds(3));
+    run("cached after update", workflowIds, queryCount, threads, cached);
+    System.out.println("Cache: " + cache.getMetrics());
+
+    testEnv.close();
+    System.exit(0);
+  }
+
+  private static void run(
+      String name,
+      List<String> workflowIds,
+      int queryCount,
+      int threads,
+      Function<String, String> query)
+      throws InterruptedException {
+    LatencyRecorder latency = new LatencyRecorder();
+    AtomicInteger next = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < threads; i++) {
+      executor.execute(
+          () -> {
+            for (int n = next.getAndIncrement(); n < queryCount; n = next.getAndIncrement()) {
+              String workflowId =
+                  workflowIds.get(ThreadLocalRandom.current().nextInt(workflowIds.size()));
+              long queryStartNanos = System.nanoTime();
+              query.apply(workflowId);
+              latency.record(System.nanoTime() - queryStartNanos);
+            }
+          });
+    }
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.HOURS);
+    long elapsedNanos = System.nanoTime() - startNanos;
+    System.out.println(
+        String.format(
+            "%s: %d queries in %.1fs: %.0f queries/s, latency %s",
+            name, queryCount, elapsedNanos / 1e9, queryCount / (elapsedNanos / 1e9), latency));
+  }
+}
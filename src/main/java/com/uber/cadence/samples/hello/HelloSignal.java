@@ -17,17 +17,18 @@
 
 package com.uber.cadence.samples.hello;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.worker.Worker;
 import com.uber.cadence.workflow.SignalMethod;
 import com.uber.cadence.workflow.Workflow;
 import com.uber.cadence.workflow.WorkflowMethod;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 
 /**
  * Demonstrates asynchronous signalling of a workflow. Requires a local instance of Cadence server
@@ -59,7 +60,8 @@ public class HelloSignal {
   /** GreetingWorkflow implementation that returns a greeting. */
   public static class GreetingWorkflowImpl implements GreetingWorkflow {
 
-    List<String> messageQueue = new ArrayList<>(10);
+    // Removing from the head of an ArrayList copies the rest of it, a deque does not.
+    Queue<String> messageQueue = new ArrayDeque<>();
     boolean exit = false;
 
     @Override
@@ -71,8 +73,10 @@ public class HelloSignal {
         if (messageQueue.isEmpty() && exit) {
           return receivedMessages;
         }
-        String message = messageQueue.remove(0);
-        receivedMessages.add(message);
+        // Drain all the signals received since the last wake up at once.
+        for (String message = messageQueue.poll(); message != null; message = messageQueue.poll()) {
+          receivedMessages.add(message);
+        }
       }
     }
 
@@ -89,13 +93,13 @@ public class HelloSignal {
 
   public static void main(String[] args) throws Exception {
     // Start a worker that hosts the workflow implementation.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     // Get a workflow stub using the same task list the worker uses.
     WorkflowOptions workflowOptions =
         new WorkflowOptions.Builder()
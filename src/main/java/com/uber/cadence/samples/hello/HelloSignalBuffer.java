@@ -0,0 +1,202 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hello;
+
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.activity.Activity;
+import com.uber.cadence.activity.ActivityMethod;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.CadenceClients;
+import com.uber.cadence.samples.common.SignalBatcher;
+import com.uber.cadence.worker.Worker;
+import com.uber.cadence.workflow.QueryMethod;
+import com.uber.cadence.workflow.SignalMethod;
+import com.uber.cadence.workflow.Workflow;
+import com.uber.cadence.workflow.WorkflowMethod;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Demonstrates a workflow that consumes a high rate of signals. Signals are buffered in a deque and
+ * the workflow processes all the signals received since its last wake up in batches, one activity
+ * per batch. To keep the history bounded the workflow continues as new after a number of signals,
+ * passing the signals it has not processed yet to the next run. Senders at a high rate can use a
+ * {@link SignalBatcher} to deliver many names per signal. Requires a local instance of Cadence
+ * server to be running.
+ */
+public class HelloSignalBuffer {
+
+  static final String TASK_LIST = "HelloSignalBuffer";
+
+  public interface GreetingWorkflow {
+    /**
+     * @param processedCount number of names processed by the previous runs
+     * @param pendingNames names received but not processed by the previous run
+     * @return total number of names processed once exit is called
+     */
+    @WorkflowMethod
+    long processGreetings(long processedCount, List<String> pendingNames);
+
+    @SignalMethod
+    void waitForName(String name);
+
+    /** Receives many names in a single signal, as sent by a {@link SignalBatcher}. */
+    @SignalMethod
+    void waitForNames(List<String> names);
+
+    /** Completes the workflow after all the received names are processed. */
+    @SignalMethod
+    void exit();
+
+    /** Number of names processed by this and the previous runs. */
+    @QueryMethod
+    long getProcessedCount();
+  }
+
+  public interface GreetingActivities {
+    @ActivityMethod(scheduleToCloseTimeoutSeconds = 10)
+    void greet(List<String> names);
+  }
+
+  public static class GreetingWorkflowImpl implements GreetingWorkflow {
+
+    /** Maximum number of names passed to a single activity. */
+    static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Every signal and batch adds events to the history, so a run stops after this many names. A
+     * production workflow would use a value that keeps the history well below its size limit.
+     */
+    static final int MAX_NAMES_PER_RUN = 1000;
+
+    private final GreetingActivities activities =
+        Workflow.newActivityStub(GreetingActivities.class);
+
+    private final GreetingWorkflow continueAsNew =
+        Workflow.newContinueAsNewStub(GreetingWorkflow.class);
+
+    private final ArrayDeque<String> names = new ArrayDeque<>();
+    private boolean exit;
+    private long processedCount;
+
+    @Override
+    public long processGreetings(long processedCount, List<String> pendingNames) {
+      this.processedCount = processedCount;
+      // Names carried over from the previous run go before any signal already received.
+      if (pendingNames != null) {
+        for (int i = pendingNames.size() - 1; i >= 0; i--) {
+          names.addFirst(pendingNames.get(i));
+        }
+      }
+      long processedInRun = 0;
+      while (true) {
+        Workflow.await(() -> !names.isEmpty() || exit);
+        if (names.isEmpty()) {
+          return this.processedCount;
+        }
+        if (!exit && processedInRun >= MAX_NAMES_PER_RUN) {
+          // Signals received while this run completes make the service reject the completion,
+          // so the decision is retried with them and none of them is lost.
+          continueAsNew.processGreetings(this.processedCount, new ArrayList<>(names));
+        }
+        List<String> batch = new ArrayList<>(Math.min(names.size(), MAX_BATCH_SIZE));
+        while (!names.isEmpty() && batch.size() < MAX_BATCH_SIZE) {
+          batch.add(names.poll());
+        }
+        activities.greet(batch);
+        this.processedCount += batch.size();
+        processedInRun += batch.size();
+      }
+    }
+
+    @Override
+    public void waitForName(String name) {
+      names.add(name);
+    }
+
+    @Override
+    public void waitForNames(List<String> names) {
+      this.names.addAll(names);
+    }
+
+    @Override
+    public void exit() {
+      exit = true;
+    }
+
+    @Override
+    public long getProcessedCount() {
+      return processedCount;
+    }
+  }
+
+  static class GreetingActivitiesImpl implements GreetingActivities {
+    @Override
+    public void greet(List<String> names) {
+      System.out.println(
+          "From " + Activity.getWorkflowExecution() + ": Hello " + String.join(", ", names) + "!");
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
+    Worker worker = factory.newWorker(TASK_LIST);
+    worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+    worker.registerActivitiesImplementations(new GreetingActivitiesImpl());
+    factory.start();
+
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
+    WorkflowOptions workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofMinutes(5))
+            .build();
+    GreetingWorkflow workflow =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+    WorkflowExecution execution =
+        WorkflowClient.start(workflow::processGreetings, 0L, Collections.<String>emptyList());
+    // The workflow continues as new while receiving the signals. The batcher and a stub without a
+    // run ID always signal the current run.
+    try (SignalBatcher<String> batcher =
+        new SignalBatcher<>(
+            workflowClient,
+            "GreetingWorkflow::waitForNames",
+            GreetingWorkflowImpl.MAX_BATCH_SIZE,
+            Duration.ofMillis(10),
+            10000,
+            1)) {
+      for (int i = 0; i < 2500; i++) {
+        batcher.signal(execution.getWorkflowId(), "World" + i);
+      }
+    }
+    GreetingWorkflow current =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, execution.getWorkflowId());
+    current.exit();
+    long processed =
+        workflowClient
+            .newUntypedWorkflowStub(execution.getWorkflowId(), Optional.empty(), Optional.empty())
+            .getResult(Long.class);
+    System.out.println("Processed " + processed + " names");
+    System.exit(0);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hello;
+
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.CadenceClients;
+import com.uber.cadence.samples.common.LatencyRecorder;
+import com.uber.cadence.samples.common.SignalBatcher;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingActivities;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingWorkflow;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingWorkflowImpl;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a burst of signals to a single {@link HelloSignalBuffer} workflow from many threads and
+ * reports how fast they are sent and processed. The processed count is queried every second to show
+ * the sustained rate while the burst is in progress. In the "batched" mode the names are coalesced
+ * by a {@link SignalBatcher} instead of being sent one signal each.
+ *
+ * <p>By default everything runs in process on top of {@link TestWorkflowEnvironment}. With the
+ * "server" mode the signals go through a local Cadence service and the worker runs in this process.
+ */
+public class HelloSignalBufferLoadGenerator {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2 || args.length > 4) {
+      System.err.println(
+          "Usage: java "
+              + HelloSignalBufferLoadGenerator.class.getName()
+              + " <signalCount> <senderThreads> [test|server] [single|batched]");
+      System.exit(1);
+    }
+    int signalCount = Integer.parseInt(args[0]);
+    int senderThreads = Integer.parseInt(args[1]);
+    boolean server = args.length > 2 && args[2].equals("server");
+    boolean batched = args.length > 3 && args[3].equals("batched");
+
+    AtomicLong greeted = new AtomicLong();
+    GreetingActivities activities = names -> greeted.addAndGet(names.size());
+    TestWorkflowEnvironment testEnv = null;
+    WorkflowClient workflowClient;
+    if (server) {
+      Worker.Factory factory = CadenceClients.newWorkerFactory();
+      Worker worker = factory.newWorker(HelloSignalBuffer.TASK_LIST);
+      worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+      worker.registerActivitiesImplementations(activities);
+      factory.start();
+      workflowClient = CadenceClients.getWorkflowClient();
+    } else {
+      testEnv = TestWorkflowEnvironment.newInstance();
+      Worker worker = testEnv.newWorker(HelloSignalBuffer.TASK_LIST);
+      worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+      worker.registerActivitiesImplementations(activities);
+      testEnv.start();
+      workflowClient = testEnv.newWorkflowClient();
+    }
+
+    WorkflowOptions workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(HelloSignalBuffer.TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofHours(1))
+            .build();
+    GreetingWorkflow workflow =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+    WorkflowExecution execution =
+        WorkflowClient.start(workflow::processGreetings, 0L, Collections.<String>emptyList());
+    // Without a run ID signals and queries go to the current run after it continued as new.
+    GreetingWorkflow current =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, execution.getWorkflowId());
+
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    AtomicLong lastProcessed = new AtomicLong();
+    reporter.scheduleAtFixedRate(
+        () -> {
+          try {
+            long processed = current.getProcessedCount();
+            System.out.println(
+                "Processed " + processed + " (" + (processed - lastProcessed.get()) + "/s)");
+            lastProcessed.set(processed);
+          } catch (RuntimeException e) {
+            System.out.println("Query failed: " + e);
+          }
+        },
+        1,
+        1,
+        TimeUnit.SECONDS);
+
+    LatencyRecorder signalLatency = new LatencyRecorder();
+    long startNanos = System.nanoTime();
+    if (batched) {
+      // Names are coalesced into signals of up to a batch each, at most one in flight.
+      SignalBatcher<String> batcher =
+          new SignalBatcher<>(
+              workflowClient,
+              "GreetingWorkflow::waitForNames",
+              GreetingWorkflowImpl.MAX_BATCH_SIZE,
+              Duration.ofMillis(5),
+              GreetingWorkflowImpl.MAX_BATCH_SIZE * 10,
+              senderThreads);
+      for (int n = 0; n < signalCount; n++) {
+        batcher.signal(execution.getWorkflowId(), "Name" + n);
+      }
+      batcher.close();
+      signalLatency = batcher.getMetrics().getLatency();
+      System.out.println("Batcher: " + batcher.getMetrics());
+    } else {
+      AtomicInteger next = new AtomicInteger();
+      ExecutorService senders = Executors.newFixedThreadPool(senderThreads);
+      LatencyRecorder latency = signalLatency;
+      for (int i = 0; i < senderThreads; i++) {
+        senders.execute(
+            () -> {
+              for (int n = next.getAndIncrement(); n < signalCount; n = next.getAndIncrement()) {
+                long signalStartNanos = System.nanoTime();
+                current.waitForName("Name" + n);
+                latency.record(System.nanoTime() - signalStartNanos);
+              }
+            });
+      }
+      senders.shutdown();
+      senders.awaitTermination(1, TimeUnit.HOURS);
+    }
+    long sentNanos = System.nanoTime() - startNanos;
+    current.exit();
+    long processed =
+        workflowClient
+            .newUntypedWorkflowStub(execution.getWorkflowId(), Optional.empty(), Optional.empty())
+            .getResult(Long.class);
+    long processedNanos = System.nanoTime() - startNanos;
+    reporter.shutdownNow();
+
+    System.out.println(
+        String.format(
+            "Sent %d names in %.1fs: %.0f names/s, signal latency %s",
+            signalCount, sentNanos / 1e9, signalCount / (sentNanos / 1e9), signalLatency));
+    System.out.println(
+        String.format(
+            "Processed %d names (%d greeted) in %.1fs: %.0f signals/s",
+            processed, greeted.get(), processedNanos / 1e9, processed / (processedNanos / 1e9)));
+    if (testEnv != null) {
+      testEnv.close();
+    }
+    System.exit(0);
+  }
+}
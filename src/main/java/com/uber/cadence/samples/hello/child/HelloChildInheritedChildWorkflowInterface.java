@@ -17,11 +17,11 @@
 
 package com.uber.cadence.samples.hello.child;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
 import static com.uber.cadence.samples.hello.child.parent.GreetingChild.TASK_LIST_CHILD;
 import static com.uber.cadence.samples.hello.child.parent.GreetingWorkflow.TASK_LIST_PARENT;
 
 import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.samples.hello.HelloChild.GreetingWorkflow;
 import com.uber.cadence.samples.hello.child.child.GreetingChildSubInterfaceImpl;
 import com.uber.cadence.samples.hello.child.parent.GreetingWorkflowImpl;
@@ -32,7 +32,7 @@ public class HelloChildInheritedChildWorkflowInterface {
 
   public static void main(String[] args) {
     // Start a worker that hosts both parent and child workflow implementations.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker workerParent = factory.newWorker(TASK_LIST_PARENT);
     workerParent.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
 
@@ -43,7 +43,7 @@ public class HelloChildInheritedChildWorkflowInterface {
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance("127.0.0.1", 7933, DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     // Get a workflow stub using the same task list the worker uses.
     GreetingWorkflow parentWorkflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
 
@@ -17,10 +17,9 @@
 
 package com.uber.cadence.samples.hellosaga;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.uber.cadence.activity.ActivityMethod;
 import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.samples.hellosaga.saga.CompensationWorkflowImpl;
 import com.uber.cadence.samples.hellosaga.saga.Saga;
 import com.uber.cadence.worker.Worker;
@@ -183,7 +182,7 @@ public class HelloSaga {
 
   public static void main(String[] args) {
     // Start a worker that hosts both parent and child workflow implementations.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     worker.registerWorkflowImplementationTypes(
         GreetingWorkflowImpl.class,
@@ -196,7 +195,7 @@ public class HelloSaga {
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     // Get a workflow stub using the same task list the worker uses.
     GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
     // Execute a workflow waiting for it to complete.
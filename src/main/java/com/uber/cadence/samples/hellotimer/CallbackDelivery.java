@@ -0,0 +1,317 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hellotimer;
+
+import com.uber.cadence.activity.Activity;
+import com.uber.cadence.client.ActivityCompletionClient;
+import com.uber.cadence.samples.common.LatencyHistogram;
+import com.uber.cadence.samples.hellotimer.HelloAsyncLambdaTimeLimit.NotificationActivity;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers payment notifications to callback endpoints registered in the worker process. Payment
+ * notification workflows schedule a {@link NotificationActivity} per notification, so a delivery
+ * survives worker restarts and is retried by the service according to the retry options of the
+ * activity.
+ *
+ * <p>The activity completes asynchronously. Notifications to the same endpoint are buffered and
+ * delivered in batches, a batch is delivered when it reaches the maximum size or when its first
+ * notification has waited for the linger time. A limited number of batches is delivered at a time
+ * and the number of notifications not yet delivered is bounded, the activity blocks when the bound
+ * is reached. Delivery is at least once, endpoints deduplicate by the payment ID.
+ */
+public class CallbackDelivery implements NotificationActivity, AutoCloseable {
+
+  /** Receiver of the notifications. */
+  public interface Endpoint {
+
+    /** Fails the delivery of all the notifications of the batch if it throws. */
+    void deliver(List<PaymentNotification> notifications);
+  }
+
+  public static final class PaymentNotification {
+    private final String paymentId;
+    private final String amount;
+    private final String account;
+    private final String status;
+
+    public PaymentNotification(String paymentId, String amount, String account, String status) {
+      this.paymentId = paymentId;
+      this.amount = amount;
+      this.account = account;
+      this.status = status;
+    }
+
+    /** ID of the payment workflow. */
+    public String getPaymentId() {
+      return paymentId;
+    }
+
+    public String getAmount() {
+      return amount;
+    }
+
+    public String getAccount() {
+      return account;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    @Override
+    public String toString() {
+      return paymentId + ": " + amount + " to " + account + " " + status;
+    }
+  }
+
+  /** Counts of the delivered notifications. */
+  public static final class Metrics {
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /** Notifications delivered successfully. */
+    public long getNotifications() {
+      return notifications.get();
+    }
+
+    /** Number of endpoint calls. */
+    public long getBatches() {
+      return batches.get();
+    }
+
+    /** Number of endpoint calls that failed. */
+    public long getFailures() {
+      return failures.get();
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      long count = batches.get();
+      return String.format(
+          "%d notifications in %d batches (%.1f per batch, %d failed), latency %s",
+          notifications.get(),
+          count,
+          count == 0 ? 0 : notifications.get() / (double) count,
+          failures.get(),
+          latency);
+    }
+  }
+
+  private static final class Pending {
+    private final byte[] taskToken;
+    private final PaymentNotification notification;
+
+    Pending(byte[] taskToken, PaymentNotification notification) {
+      this.taskToken = taskToken;
+      this.notification = notification;
+    }
+  }
+
+  /** Notifications to an endpoint that are not delivered yet. */
+  private static final class Buffer {
+    private final Endpoint endpoint;
+    private List<Pending> items = new ArrayList<>();
+    private ScheduledFuture<?> linger;
+
+    Buffer(Endpoint endpoint) {
+      this.endpoint = endpoint;
+    }
+  }
+
+  private final ActivityCompletionClient completionClient;
+  private final int maxBatchSize;
+  private final Duration linger;
+  private final Semaphore pending;
+  private final Map<String, Buffer> buffers = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService timer =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "callback-delivery-linger");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final ExecutorService deliverers;
+  private final Metrics metrics = new Metrics();
+  private final int maxPendingNotifications;
+  private volatile boolean closed;
+
+  /**
+   * @param maxBatchSize maximum number of notifications in an endpoint call
+   * @param linger maximum time a notification waits for more notifications before it is delivered
+   * @param maxPendingNotifications maximum number of notifications accepted but not delivered yet
+   * @param parallelism maximum number of endpoint calls in flight across all endpoints
+   */
+  public CallbackDelivery(
+      ActivityCompletionClient completionClient,
+      int maxBatchSize,
+      Duration linger,
+      int maxPendingNotifications,
+      int parallelism) {
+    this.completionClient = completionClient;
+    this.maxBatchSize = maxBatchSize;
+    this.linger = linger;
+    this.pending = new Semaphore(maxPendingNotifications);
+    this.maxPendingNotifications = maxPendingNotifications;
+    this.deliverers =
+        Executors.newFixedThreadPool(
+            parallelism,
+            r -> {
+              Thread thread = new Thread(r, "callback-delivery");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** Registers the endpoint under the name used by the workflows. */
+  public void register(String name, Endpoint endpoint) {
+    buffers.put(name, new Buffer(endpoint));
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public void notifyPayment(String endpoint, PaymentNotification notification) {
+    Buffer buffer = buffers.get(endpoint);
+    if (buffer == null) {
+      throw new IllegalArgumentException("Unknown endpoint: " + endpoint);
+    }
+    try {
+      // Blocks the activity thread, and so the poller, when too many notifications are pending.
+      pending.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Activity.wrap(e);
+    }
+    synchronized (buffer) {
+      if (closed) {
+        pending.release();
+        throw new IllegalStateException("closed");
+      }
+      // The activity is completed when its batch is delivered.
+      Activity.doNotCompleteOnReturn();
+      buffer.items.add(new Pending(Activity.getTaskToken(), notification));
+      if (buffer.items.size() >= maxBatchSize) {
+        deliver(buffer);
+      } else if (buffer.linger == null) {
+        buffer.linger =
+            timer.schedule(() -> lingerExpired(buffer), linger.toNanos(), TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  /**
+   * Delivers the buffered notifications and waits until they are delivered. Activities that arrive
+   * afterwards fail and are retried by the service.
+   */
+  @Override
+  public void close() throws InterruptedException {
+    closed = true;
+    for (Buffer buffer : buffers.values()) {
+      synchronized (buffer) {
+        if (!buffer.items.isEmpty()) {
+          deliver(buffer);
+        }
+      }
+    }
+    pending.acquire(maxPendingNotifications);
+    pending.release(maxPendingNotifications);
+    timer.shutdownNow();
+    deliverers.shutdown();
+  }
+
+  private void lingerExpired(Buffer buffer) {
+    synchronized (buffer) {
+      buffer.linger = null;
+      if (!buffer.items.isEmpty()) {
+        deliver(buffer);
+      }
+    }
+  }
+
+  /** Takes the buffered notifications and delivers them. Called with the buffer locked. */
+  private void deliver(Buffer buffer) {
+    if (buffer.linger != null) {
+      buffer.linger.cancel(false);
+      buffer.linger = null;
+    }
+    List<Pending> batch = buffer.items;
+    buffer.items = new ArrayList<>();
+    deliverers.execute(() -> deliverBatch(buffer.endpoint, batch));
+  }
+
+  private void deliverBatch(Endpoint endpoint, List<Pending> batch) {
+    List<PaymentNotification> notifications = new ArrayList<>(batch.size());
+    for (Pending item : batch) {
+      notifications.add(item.notification);
+    }
+    long startNanos = System.nanoTime();
+    Exception failure = null;
+    try {
+      endpoint.deliver(notifications);
+      metrics.latency.record(System.nanoTime() - startNanos);
+      metrics.notifications.addAndGet(batch.size());
+    } catch (RuntimeException e) {
+      metrics.failures.incrementAndGet();
+      failure = e;
+    } catch (Error e) {
+      metrics.failures.incrementAndGet();
+      failure = new RuntimeException(e);
+      throw e;
+    } finally {
+      // Also after an Error, so the pending notifications are released and their activities fail
+      // right away instead of timing out.
+      metrics.batches.incrementAndGet();
+      pending.release(batch.size());
+      complete(batch, failure);
+    }
+  }
+
+  private void complete(List<Pending> batch, Exception failure) {
+    for (Pending item : batch) {
+      try {
+        if (failure == null) {
+          completionClient.complete(item.taskToken, null);
+        } else {
+          completionClient.completeExceptionally(item.taskToken, failure);
+        }
+      } catch (RuntimeException e) {
+        // The activity already timed out, the service retries it.
+      }
+    }
+  }
+}
@@ -1,14 +1,16 @@
 package com.uber.cadence.samples.hellotimer;
 
-public class CallbackServiceImpl {
-  public CallbackServiceImpl() {}
+import com.uber.cadence.samples.hellotimer.CallbackDelivery.PaymentNotification;
+import java.util.List;
 
-  public String success(String result) {
-    return result;
-  }
+/** Local endpoint that prints the payment notifications it receives. */
+public class CallbackServiceImpl implements CallbackDelivery.Endpoint {
+  public CallbackServiceImpl() {}
 
-  public String fail(Throwable ex) {
-    System.out.println(ex);
-    return "FAILED";
+  @Override
+  public void deliver(List<PaymentNotification> notifications) {
+    for (PaymentNotification notification : notifications) {
+      System.out.println(notification);
+    }
   }
 }
@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hellotimer;
+
+import com.uber.cadence.workflow.CancellationScope;
+import com.uber.cadence.workflow.Functions;
+import com.uber.cadence.workflow.Promise;
+import com.uber.cadence.workflow.Workflow;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Bounds an asynchronous operation of a workflow by a deadline. The operation and a timer run in
+ * cancellation scopes of their own, and whichever completes first cancels the other. When the
+ * deadline fires the activities of the operation are cancelled, which reaches an activity that is
+ * already running through its next heartbeat.
+ *
+ * <p>Must be used from workflow code.
+ */
+public final class Deadline {
+
+  private Deadline() {}
+
+  /**
+   * Starts the operation and waits for it at most the timeout.
+   *
+   * @param operation starts the operation and returns a promise of its result. Activities should be
+   *     invoked through {@link com.uber.cadence.workflow.Async} with a method reference, so no
+   *     workflow thread is allocated.
+   * @return the result of the operation or empty if the deadline fired first
+   */
+  public static <R> Optional<R> within(Duration timeout, Functions.Func<Promise<R>> operation) {
+    Promise<R>[] result = newPromiseArray();
+    Promise<Void>[] timer = newPromiseArray();
+    // Separate scopes, as cancelling a timer that already fired fails the decision.
+    CancellationScope operationScope =
+        Workflow.newCancellationScope(() -> result[0] = operation.apply());
+    operationScope.run();
+    CancellationScope timerScope =
+        Workflow.newCancellationScope(() -> timer[0] = Workflow.newTimer(timeout));
+    timerScope.run();
+    try {
+      Promise.anyOf(result[0], timer[0]).get();
+    } catch (RuntimeException e) {
+      // The operation failed, rethrown below.
+    }
+    if (!result[0].isCompleted()) {
+      operationScope.cancel();
+      return Optional.empty();
+    }
+    if (!timer[0].isCompleted()) {
+      timerScope.cancel();
+    }
+    return Optional.ofNullable(result[0].get());
+  }
+
+  /** A holder for a promise created in a lambda, such as the one run by a cancellation scope. */
+  @SuppressWarnings("unchecked")
+  static <R> Promise<R>[] newPromiseArray() {
+    return (Promise<R>[]) new Promise<?>[1];
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hellotimer;
+
+import com.uber.cadence.samples.common.LatencyHistogram;
+import com.uber.cadence.workflow.CancellationScope;
+import com.uber.cadence.workflow.Functions;
+import com.uber.cadence.workflow.Promise;
+import com.uber.cadence.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Hedges an asynchronous operation of a workflow against a slow attempt. When an attempt has not
+ * completed after the hedge delay, the next one starts alongside it, typically on another task
+ * list, and the first attempt that succeeds wins. The other attempts are cancelled, which reaches
+ * running activities through their heartbeats. An attempt that fails starts the next one right
+ * away.
+ *
+ * <p>Attempts can run at the same time, so they must be idempotent, for example by passing the same
+ * idempotency key to each of them. The hedge delay is usually the 95th percentile of the operation
+ * latency, see {@link #getHedgeDelay}. {@link #within} must be used from workflow code.
+ */
+public final class Hedging {
+
+  /** Latencies recorded before the percentile replaces the default hedge delay. */
+  static final int MIN_SAMPLES = 20;
+
+  private Hedging() {}
+
+  /**
+   * Returns the 95th percentile of the observed latency, or the default until at least {@link
+   * #MIN_SAMPLES} latencies are recorded. Workflow code must be deterministic, so call it outside
+   * of the workflow, for example when starting it, and pass the delay as a workflow argument.
+   */
+  public static Duration getHedgeDelay(LatencyHistogram latency, Duration defaultDelay) {
+    if (latency.getCount() < MIN_SAMPLES) {
+      return defaultDelay;
+    }
+    return Duration.ofNanos(latency.getPercentile(95));
+  }
+
+  /**
+   * Runs up to the given number of attempts and waits for the first successful one at most the
+   * timeout. Waits on promises only, so no workflow thread is allocated.
+   *
+   * @param attempt starts the attempt with the index passed as the argument, from 0
+   * @return the result of the first successful attempt or empty if the deadline fired first
+   * @throws IllegalArgumentException if maxAttempts is less than 1 or hedgeDelay is negative
+   * @throws RuntimeException the failure of the last attempt if all of them failed
+   */
+  public static <R> Optional<R> within(
+      Duration timeout,
+      Duration hedgeDelay,
+      int maxAttempts,
+      Functions.Func1<Integer, Promise<R>> attempt) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+    }
+    if (hedgeDelay.isNegative()) {
+      throw new IllegalArgumentException("hedgeDelay must not be negative: " + hedgeDelay);
+    }
+    List<CancellationScope> scopes = new ArrayList<>();
+    List<Promise<R>> attempts = new ArrayList<>();
+    Timer deadline = new Timer(timeout);
+    Timer hedge = null;
+    RuntimeException failure = null;
+    while (true) {
+      boolean running = false;
+      for (int i = 0; i < attempts.size(); i++) {
+        Promise<R> result = attempts.get(i);
+        if (result == null || !result.isCompleted()) {
+          running |= result != null;
+          continue;
+        }
+        attempts.set(i, null);
+        if (result.getFailure() == null) {
+          cancelAll(scopes, attempts);
+          deadline.cancel();
+          if (hedge != null) {
+            hedge.cancel();
+          }
+          return Optional.ofNullable(result.get());
+        }
+        failure = result.getFailure();
+      }
+      if (deadline.promise.isCompleted()) {
+        cancelAll(scopes, attempts);
+        if (hedge != null) {
+          hedge.cancel();
+        }
+        return Optional.empty();
+      }
+      if (attempts.size() < maxAttempts && (!running || hedge.promise.isCompleted())) {
+        if (hedge != null) {
+          hedge.cancel();
+        }
+        int index = attempts.size();
+        Promise<R>[] result = Deadline.newPromiseArray();
+        CancellationScope scope =
+            Workflow.newCancellationScope(() -> result[0] = attempt.apply(index));
+        scope.run();
+        scopes.add(scope);
+        attempts.add(result[0]);
+        hedge = attempts.size() < maxAttempts ? new Timer(hedgeDelay) : null;
+        continue;
+      }
+      if (!running) {
+        deadline.cancel();
+        throw failure;
+      }
+      List<Promise<?>> waitFor = new ArrayList<>();
+      for (Promise<R> result : attempts) {
+        if (result != null) {
+          waitFor.add(result);
+        }
+      }
+      waitFor.add(deadline.promise);
+      if (hedge != null) {
+        waitFor.add(hedge.promise);
+      }
+      try {
+        Promise.anyOf(waitFor).get();
+      } catch (RuntimeException e) {
+        // An attempt failed, handled above.
+      }
+    }
+  }
+
+  /** A timer in a scope of its own, as cancelling a timer that already fired fails the decision. */
+  private static final class Timer {
+    private final CancellationScope scope;
+    private Promise<Void> promise;
+
+    Timer(Duration duration) {
+      scope = Workflow.newCancellationScope(() -> promise = Workflow.newTimer(duration));
+      scope.run();
+    }
+
+    void cancel() {
+      if (!promise.isCompleted()) {
+        scope.cancel();
+      }
+    }
+  }
+
+  private static <R> void cancelAll(List<CancellationScope> scopes, List<Promise<R>> attempts) {
+    for (int i = 0; i < attempts.size(); i++) {
+      if (attempts.get(i) != null && !attempts.get(i).isCompleted()) {
+        scopes.get(i).cancel();
+      }
+    }
+  }
+}
@@ -1,18 +1,24 @@
 package com.uber.cadence.samples.hellotimer;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
+import com.uber.cadence.ChildPolicy;
+import com.uber.cadence.activity.Activity;
 import com.uber.cadence.activity.ActivityOptions;
+import com.uber.cadence.client.ActivityCompletionException;
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.client.WorkflowOptions;
 import com.uber.cadence.common.RetryOptions;
+import com.uber.cadence.samples.common.CadenceClients;
+import com.uber.cadence.samples.common.LatencyHistogram;
+import com.uber.cadence.samples.hellotimer.CallbackDelivery.PaymentNotification;
 import com.uber.cadence.worker.Worker;
 import com.uber.cadence.workflow.Async;
-import com.uber.cadence.workflow.Promise;
+import com.uber.cadence.workflow.ChildWorkflowOptions;
 import com.uber.cadence.workflow.Workflow;
 import com.uber.cadence.workflow.WorkflowMethod;
 import java.time.Duration;
-import java.util.concurrent.*;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
@@ -24,165 +30,252 @@ import lombok.extern.slf4j.Slf4j;
 public class HelloAsyncLambdaTimeLimit {
 
   static final String TASK_LIST = "HelloWorkflowCompleteByTimeout";
+  /** Task list of the hedged payment attempts, usually served by another pool of workers. */
+  static final String HEDGE_TASK_LIST = "HelloWorkflowCompleteByTimeoutHedge";
+
   static final Integer ACTIVITY_DURATION_EXTERNAL_SEC = 5;
   static final Integer ACTIVITY_DURATION_INTERNAL_SEC = 60;
+  static final Duration HEARTBEAT_TIMEOUT = Duration.ofSeconds(2);
+  static final Duration STEP = Duration.ofMillis(500);
 
-  public interface CallbackService {
-    String success(String result);
+  static final String CALLBACK_ENDPOINT = "payments";
+  static final String PAYMENT_FAILED = "FAILED";
 
-    String fail(Throwable ex);
-  }
+  /** Time a notification is retried for while its endpoint or its workers are unavailable. */
+  static final Duration NOTIFICATION_TIMEOUT = Duration.ofDays(1);
 
   public interface PaymentWorkflow {
-    /** @return payment status */
+    /**
+     * @param deadline time after which the payment is cancelled, including a payment activity that
+     *     is already running
+     * @param hedgeDelay time after which a second payment attempt starts on {@link
+     *     #HEDGE_TASK_LIST} if the first one is still running, null to never hedge
+     * @param callbackEndpoint name of the {@link CallbackDelivery} endpoint notified of the status
+     *     by a {@link PaymentNotificationWorkflow} that outlives the payment
+     * @return payment status
+     */
     @WorkflowMethod
-    String payment(String amount, String account, CallbackServiceImpl callback);
+    String payment(
+        String amount,
+        String account,
+        Duration deadline,
+        Duration hedgeDelay,
+        String callbackEndpoint);
   }
 
   public interface PaymentActivity {
-    String makePayment(String amount, String account);
+
+    /**
+     * @param idempotencyKey same for all the attempts of a payment, the account is charged once per
+     *     key
+     */
+    String makePayment(String idempotencyKey, String amount, String account);
+  }
+
+  public interface NotificationActivity {
+
+    /** @throws IllegalArgumentException if no endpoint is registered under the name */
+    void notifyPayment(String endpoint, PaymentNotification notification);
   }
 
   /**
-   * PaymentWorkflow implementation that demonstrates how to use retry for workflow and activity
-   * stub configured with {@link RetryOptions}. And demonstrates how to complete workflow by
-   * external timer.
+   * Delivers the notification of a payment. A child workflow of its own, so the payment returns its
+   * status without waiting for the delivery and an endpoint outage doesn't run into the execution
+   * timeout of the payment.
    */
-  public static class PaymentWorkflowImpl implements PaymentWorkflow {
+  public interface PaymentNotificationWorkflow {
+    @WorkflowMethod
+    void notifyPayment(String endpoint, PaymentNotification notification);
+  }
 
-    public PaymentWorkflowImpl() {}
+  public static class PaymentNotificationWorkflowImpl implements PaymentNotificationWorkflow {
 
     /**
-     * To enable activity retry set {@link RetryOptions} on {@link ActivityOptions}. It also works
-     * for activities invoked through and or child workflows.
+     * Retried with a backoff for up to {@link #NOTIFICATION_TIMEOUT}, so a notification outlives an
+     * outage of the endpoint or of the workers that deliver it.
      */
-    private final PaymentActivity paymentActivity =
+    private final NotificationActivity notificationActivity =
         Workflow.newActivityStub(
-            PaymentActivity.class,
+            NotificationActivity.class,
             new ActivityOptions.Builder()
-                .setScheduleToCloseTimeout(Duration.ofSeconds(ACTIVITY_DURATION_EXTERNAL_SEC))
+                .setScheduleToCloseTimeout(NOTIFICATION_TIMEOUT)
+                .setStartToCloseTimeout(Duration.ofSeconds(30))
                 .setRetryOptions(
                     new RetryOptions.Builder()
                         .setInitialInterval(Duration.ofSeconds(1))
-                        .setBackoffCoefficient(1.1)
-                        .setMaximumAttempts(1000)
-                        // .setExpiration(Duration.ofSeconds(ACTIVITY_DURATION_EXTERNAL_SEC))
+                        .setMaximumInterval(Duration.ofMinutes(1))
+                        .setExpiration(NOTIFICATION_TIMEOUT)
                         .setDoNotRetry(IllegalArgumentException.class)
                         .build())
                 .build());
 
     @Override
-    public String payment(String amount, String account, CallbackServiceImpl callback) {
-
-      // Async.invoke accepts not only activity or child workflow method references
-      // but lambda functions as well. Behind the scene it allocates a thread
-      // to execute it asynchronously.
-      Promise<String> result =
-          Async.function(
-              () -> {
-                log.info("7");
-                String s = paymentActivity.makePayment(amount, account);
-                log.info("res {}", s);
-                return s;
-              });
-      String resStr;
-      try {
-        log.info("1");
-        resStr = result.get(ACTIVITY_DURATION_EXTERNAL_SEC, TimeUnit.SECONDS);
-        log.info("2");
-      } catch (TimeoutException e) {
-        log.info("3");
-        resStr = callback.fail(e);
-        log.info("4");
-      }
-      log.info("5");
-      return resStr;
+    public void notifyPayment(String endpoint, PaymentNotification notification) {
+      notificationActivity.notifyPayment(endpoint, notification);
     }
   }
 
-  /*
+  /**
+   * PaymentWorkflow implementation that demonstrates how to use retry for activity stub configured
+   * with {@link RetryOptions}. And demonstrates how to complete workflow by a deadline that cancels
+   * the payment in progress, and how to hedge a slow payment with a second attempt.
+   */
+  public static class PaymentWorkflowImpl implements PaymentWorkflow {
+
+    public PaymentWorkflowImpl() {}
+
     @Override
-    public String payment(Duration operationDuration, String amount, String account) {
-      long startTS = System.currentTimeMillis();
-      System.out.println(">>> Started >>>");
-      Promise timer1 = Workflow.newTimer(operationDuration);
-
-      timer1
-          .thenApply(
-              res -> {
-                long finishTS = System.currentTimeMillis();
-                System.out.println("<<< After timer <<<, " + (finishTS - startTS) / 1000);
-                String res2 = paymentActivity.makePayment(amount, account);
-                System.out.println("Finished with payment result = " + res2);
-                return res2;
-              })
-          .exceptionally(
-              e -> {
-                System.out.println("Failed with payment result = " + e);
-                return "payment failed";
-              })
-          .get();
-      long finishTS = System.currentTimeMillis();
-      System.out.println("<<< Finished <<<, " + (finishTS - startTS) / 1000);
-      return "WF DONE";
+    public String payment(
+        String amount,
+        String account,
+        Duration deadline,
+        Duration hedgeDelay,
+        String callbackEndpoint) {
+      String paymentId = Workflow.getWorkflowInfo().getWorkflowId();
+      PaymentActivity paymentActivity = newPaymentActivity(deadline, TASK_LIST);
+      Optional<String> result;
+      if (hedgeDelay == null) {
+        // A method reference, unlike a lambda, does not allocate a workflow thread.
+        result =
+            Deadline.within(
+                deadline,
+                () -> Async.function(paymentActivity::makePayment, paymentId, amount, account));
+      } else {
+        PaymentActivity[] attempts = {
+          paymentActivity, newPaymentActivity(deadline, HEDGE_TASK_LIST)
+        };
+        result =
+            Hedging.within(
+                deadline,
+                hedgeDelay,
+                attempts.length,
+                attempt ->
+                    Async.function(attempts[attempt]::makePayment, paymentId, amount, account));
+      }
+      String status;
+      if (result.isPresent()) {
+        status = result.get();
+      } else {
+        log.info("Payment of {} to {} cancelled after {}", amount, account, deadline);
+        status = PAYMENT_FAILED;
+      }
+      notifyPayment(callbackEndpoint, new PaymentNotification(paymentId, amount, account, status));
+      return status;
+    }
+
+    /** Starts the delivery of the notification and returns once it has started. */
+    private static void notifyPayment(String endpoint, PaymentNotification notification) {
+      PaymentNotificationWorkflow delivery =
+          Workflow.newChildWorkflowStub(
+              PaymentNotificationWorkflow.class,
+              new ChildWorkflowOptions.Builder()
+                  .setWorkflowId(notification.getPaymentId() + "-notification")
+                  .setTaskList(TASK_LIST)
+                  .setExecutionStartToCloseTimeout(NOTIFICATION_TIMEOUT.plusMinutes(1))
+                  // Keeps delivering after the payment has completed.
+                  .setChildPolicy(ChildPolicy.ABANDON)
+                  .build());
+      Async.procedure(delivery::notifyPayment, endpoint, notification);
+      Workflow.getWorkflowExecution(delivery).get();
+    }
+
+    private static PaymentActivity newPaymentActivity(Duration deadline, String taskList) {
+      // To enable activity retry set RetryOptions on ActivityOptions. The heartbeat timeout bounds
+      // how long a cancelled activity keeps running, as the cancellation is delivered in a
+      // heartbeat response. The activity timeout is only a backstop, the deadline fires first.
+      Duration activityTimeout = deadline.plus(HEARTBEAT_TIMEOUT);
+      return Workflow.newActivityStub(
+          PaymentActivity.class,
+          new ActivityOptions.Builder()
+              .setTaskList(taskList)
+              .setScheduleToCloseTimeout(activityTimeout)
+              .setHeartbeatTimeout(HEARTBEAT_TIMEOUT)
+              .setRetryOptions(
+                  new RetryOptions.Builder()
+                      .setInitialInterval(Duration.ofSeconds(1))
+                      .setBackoffCoefficient(1.1)
+                      .setExpiration(activityTimeout)
+                      .setDoNotRetry(IllegalArgumentException.class)
+                      .build())
+              .build());
     }
   }
-  */
 
   static class PaymentActivitiesImpl implements PaymentActivity {
 
+    /** Results by idempotency key, stands for the deduplication of a payment gateway. */
+    private final Map<String, String> payments = new ConcurrentHashMap<>();
+
+    /** Latency of the completed payments, the hedge delay of new payments is derived from it. */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    LatencyHistogram getLatency() {
+      return latency;
+    }
+
     @Override
-    public String makePayment(String amount, String account) {
-      // 1. never ends task
-      // longRunningTask(null);
+    public String makePayment(String idempotencyKey, String amount, String account) {
+      long startNanos = System.nanoTime();
+      // 1. Long running task that stops when cancelled
       longRunningTask(Duration.ofSeconds(ACTIVITY_DURATION_INTERNAL_SEC));
+      latency.record(System.nanoTime() - startNanos);
 
       // 2. Throw some runtime exception, emulation of RestClientException
       // throw new RuntimeException("RestClientException");
 
-      // 3. Random duration task
-      //
-
-      // 6. Non retry on IllegalArgumentException
+      // 3. Non retry on IllegalArgumentException
       // throw new IllegalArgumentException("This property is not supported");
 
-      //
-      // System.out.println("makePayment finished " + ((System.currentTimeMillis() - startTS) /
-      // 1000));
-      return "PAYMENT OF AMOUNT " + amount + " TO ACCOUNT " + account + " DONE";
+      // A hedged attempt that completes second gets the result of the first one.
+      return payments.computeIfAbsent(
+          idempotencyKey,
+          key -> "PAYMENT OF AMOUNT " + amount + " TO ACCOUNT " + account + " DONE");
     }
   }
 
+  /**
+   * Works in steps and heartbeats after each one. The heartbeat throws {@link
+   * ActivityCompletionException} once the activity is cancelled or the workflow is closed, which
+   * frees the activity thread instead of sleeping through the rest of the task.
+   */
   @SneakyThrows
-  private static void longRunningTask(Duration duration) {
-    if (duration == null) {
-      System.out.println("TASK STARTED");
-      int i = 0;
-      while (true) {
-        i = i % 2 == 0 ? i - 1 : i + 1;
+  static void longRunningTask(Duration duration) {
+    System.out.println("TASK STARTED");
+    long steps = duration.toMillis() / STEP.toMillis();
+    try {
+      for (long step = 0; step < steps; step++) {
+        Thread.sleep(STEP.toMillis());
+        Activity.heartbeat(step);
       }
-    } else {
-      System.out.println("TASK STARTED");
-      log.info("6-1");
-      Thread.sleep(1000 * 50);
-      log.info("6-2");
-      System.out.println("TASK FINISHED");
+    } catch (ActivityCompletionException e) {
+      System.out.println("TASK CANCELLED");
+      throw e;
     }
+    System.out.println("TASK FINISHED");
   }
 
   public static void main(String[] args) {
     // Start a worker that hosts both workflow and activity implementations.
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     // Workflows are stateful. So you need a type to create instances.
-    worker.registerWorkflowImplementationTypes(PaymentWorkflowImpl.class);
+    worker.registerWorkflowImplementationTypes(
+        PaymentWorkflowImpl.class, PaymentNotificationWorkflowImpl.class);
     // Activities are stateless and thread safe. So a shared instance is used.
-    worker.registerActivitiesImplementations(new PaymentActivitiesImpl());
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
+    CallbackDelivery delivery =
+        new CallbackDelivery(
+            workflowClient.newActivityCompletionClient(), 100, Duration.ofMillis(100), 10000, 4);
+    delivery.register(CALLBACK_ENDPOINT, new CallbackServiceImpl());
+    PaymentActivitiesImpl paymentActivities = new PaymentActivitiesImpl();
+    worker.registerActivitiesImplementations(paymentActivities, delivery);
+    // Hedged attempts run on workers of their own, in the same process for the sample purpose.
+    Worker hedgeWorker = factory.newWorker(HEDGE_TASK_LIST);
+    hedgeWorker.registerActivitiesImplementations(paymentActivities);
     // Start listening to the workflow and activity task lists.
     factory.start();
 
     // Start a workflow execution. Usually this is done from another program.
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
     // Get a workflow stub using the same task list the worker uses.
     WorkflowOptions workflowOptions =
         new WorkflowOptions.Builder()
@@ -193,7 +286,12 @@ public class HelloAsyncLambdaTimeLimit {
         workflowClient.newWorkflowStub(PaymentWorkflow.class, workflowOptions);
     // Execute a workflow waiting for it to complete.
     String paymentResult =
-        workflow.payment("1000", "3234-0989-0988-0988", new CallbackServiceImpl());
+        workflow.payment(
+            "1000",
+            "3234-0989-0988-0988",
+            Duration.ofSeconds(ACTIVITY_DURATION_EXTERNAL_SEC),
+            Hedging.getHedgeDelay(paymentActivities.getLatency(), Duration.ofSeconds(1)),
+            CALLBACK_ENDPOINT);
     System.out.println(paymentResult);
     // System.exit(0);
   }
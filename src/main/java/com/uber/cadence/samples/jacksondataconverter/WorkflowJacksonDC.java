@@ -1,10 +1,9 @@
 package com.uber.cadence.samples.jacksondataconverter;
 
-import static com.uber.cadence.samples.common.SampleConstants.DOMAIN;
-
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.samples.common.CadenceClients;
 import com.uber.cadence.samples.jacksondataconverter.dto.ErrorBodyImpl;
 import com.uber.cadence.samples.jacksondataconverter.dto.MessageResponse;
 import com.uber.cadence.samples.jacksondataconverter.dto.MessageResponseImpl;
@@ -55,13 +54,13 @@ public class WorkflowJacksonDC {
 
   public static void main(String[] args) {
 
-    Worker.Factory factory = new Worker.Factory(DOMAIN);
+    Worker.Factory factory = CadenceClients.newWorkerFactory();
     Worker worker = factory.newWorker(TASK_LIST);
     worker.registerWorkflowImplementationTypes(ResponseWorkflowImpl.class, ResponseChildImpl.class);
 
     factory.start();
 
-    WorkflowClient workflowClient = WorkflowClient.newInstance(DOMAIN);
+    WorkflowClient workflowClient = CadenceClients.getWorkflowClient();
     ResponseWorkflow workflow = workflowClient.newWorkflowStub(ResponseWorkflow.class);
 
     final MessageResponseImpl response = new MessageResponseImpl();
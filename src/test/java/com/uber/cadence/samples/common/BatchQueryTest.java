@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import com.uber.cadence.workflow.QueryMethod;
+import com.uber.cadence.workflow.Workflow;
+import com.uber.cadence.workflow.WorkflowMethod;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link BatchQuery}. Doesn't use an external Cadence service. */
+public class BatchQueryTest {
+
+  private static final String TASK_LIST = "BatchQueryTest";
+
+  public interface NameWorkflow {
+    @WorkflowMethod
+    void run(String name);
+
+    @QueryMethod
+    String retrieveName();
+
+    @QueryMethod
+    List<Integer> retrieveCodePoints();
+  }
+
+  public static class NameWorkflowImpl implements NameWorkflow {
+    private String name;
+
+    @Override
+    public void run(String name) {
+      this.name = name;
+      Workflow.await(() -> false);
+    }
+
+    @Override
+    public String retrieveName() {
+      return name;
+    }
+
+    @Override
+    public List<Integer> retrieveCodePoints() {
+      List<Integer> result = new ArrayList<>();
+      name.codePoints().forEach(result::add);
+      return result;
+    }
+  }
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(20);
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient workflowClient;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_LIST);
+    worker.registerWorkflowImplementationTypes(NameWorkflowImpl.class);
+    testEnv.start();
+    workflowClient = testEnv.newWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testQuery() throws Exception {
+    WorkflowOptions options =
+        new WorkflowOptions.Builder()
+            .setTaskList(TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofMinutes(1))
+            .build();
+    List<WorkflowExecution> executions = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      NameWorkflow workflow = workflowClient.newWorkflowStub(NameWorkflow.class, options);
+      executions.add(WorkflowClient.start(workflow::run, "name-" + i));
+    }
+    WorkflowExecution missing = new WorkflowExecution().setWorkflowId("missing");
+    executions.add(missing);
+
+    StringWriter results = new StringWriter();
+    BatchQuery.Report report =
+        new BatchQuery(workflowClient, 4, 1000)
+            .query("NameWorkflow::retrieveName", executions.iterator(), results);
+
+    assertEquals(20, report.getLatency().getCount());
+    assertEquals(1, report.getFailures());
+    Map<String, JsonObject> lines = new HashMap<>();
+    for (String line : results.toString().split("\n")) {
+      JsonObject json = new JsonParser().parse(line).getAsJsonObject();
+      lines.put(json.get("workflowId").getAsString(), json);
+    }
+    assertEquals(21, lines.size());
+    for (int i = 0; i < 20; i++) {
+      JsonObject line = lines.get(executions.get(i).getWorkflowId());
+      assertEquals("name-" + i, line.get("result").getAsString());
+    }
+    assertTrue(lines.get("missing").has("error"));
+  }
+
+  @Test
+  public void testNonStringQuery() throws Exception {
+    WorkflowOptions options =
+        new WorkflowOptions.Builder()
+            .setTaskList(TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofMinutes(1))
+            .build();
+    NameWorkflow workflow = workflowClient.newWorkflowStub(NameWorkflow.class, options);
+    WorkflowExecution execution = WorkflowClient.start(workflow::run, "ab");
+
+    StringWriter results = new StringWriter();
+    BatchQuery.Report report =
+        new BatchQuery(workflowClient, 1, 1000)
+            .query(
+                "NameWorkflow::retrieveCodePoints",
+                Collections.singletonList(execution).iterator(),
+                results);
+
+    assertEquals(0, report.getFailures());
+    JsonObject line = new JsonParser().parse(results.toString().trim()).getAsJsonObject();
+    JsonArray result = line.getAsJsonArray("result");
+    assertEquals(2, result.size());
+    assertEquals('a', result.get(0).getAsInt());
+    assertEquals('b', result.get(1).getAsInt());
+  }
+}
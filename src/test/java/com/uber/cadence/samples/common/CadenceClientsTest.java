@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.uber.cadence.DescribeDomainRequest;
+import com.uber.cadence.DescribeDomainResponse;
+import com.uber.cadence.EntityNotExistsError;
+import com.uber.cadence.GetWorkflowExecutionHistoryRequest;
+import com.uber.cadence.PollForActivityTaskRequest;
+import com.uber.cadence.QueryWorkflowRequest;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+/** Unit test for {@link CadenceClients}. */
+public class CadenceClientsTest {
+
+  @After
+  public void tearDown() {
+    CadenceClients.getRpcMetrics().clear();
+  }
+
+  @Test
+  public void testRpcMetrics() throws Exception {
+    IWorkflowService service = mock(IWorkflowService.class);
+    DescribeDomainResponse response = new DescribeDomainResponse();
+    when(service.DescribeDomain(any(DescribeDomainRequest.class))).thenReturn(response);
+    when(service.QueryWorkflow(any(QueryWorkflowRequest.class)))
+        .thenThrow(new EntityNotExistsError("missing"));
+    IWorkflowService wrapped = CadenceClients.withMetrics(service);
+
+    assertSame(response, wrapped.DescribeDomain(new DescribeDomainRequest()));
+    assertSame(response, wrapped.DescribeDomain(new DescribeDomainRequest()));
+    try {
+      wrapped.QueryWorkflow(new QueryWorkflowRequest());
+      fail("unreachable");
+    } catch (EntityNotExistsError e) {
+      // expected
+    }
+
+    CadenceClients.RpcMetrics describe = CadenceClients.getRpcMetrics().get("DescribeDomain");
+    assertEquals(2, describe.getLatency().getCount());
+    assertEquals(0, describe.getErrors());
+    CadenceClients.RpcMetrics query = CadenceClients.getRpcMetrics().get("QueryWorkflow");
+    assertEquals(1, query.getLatency().getCount());
+    assertEquals(1, query.getErrors());
+  }
+
+  @Test
+  public void testLongPollsAreNotRecorded() throws Exception {
+    IWorkflowService wrapped = CadenceClients.withMetrics(mock(IWorkflowService.class));
+    wrapped.PollForActivityTask(new PollForActivityTaskRequest());
+    wrapped.GetWorkflowExecutionHistory(
+        new GetWorkflowExecutionHistoryRequest().setWaitForNewEvent(true));
+    wrapped.GetWorkflowExecutionHistory(new GetWorkflowExecutionHistoryRequest());
+
+    Map<String, CadenceClients.RpcMetrics> metrics = CadenceClients.getRpcMetrics();
+    assertFalse(metrics.containsKey("PollForActivityTask"));
+    assertEquals(1, metrics.get("GetWorkflowExecutionHistory").getLatency().getCount());
+  }
+
+  @Test
+  public void testResetStartsNewMetrics() throws Exception {
+    IWorkflowService wrapped = CadenceClients.withMetrics(mock(IWorkflowService.class));
+    wrapped.DescribeDomain(new DescribeDomainRequest());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CadenceClients.printRpcMetrics(new PrintStream(out, true), true);
+
+    assertTrue(out.toString().startsWith("DescribeDomain: count=1"));
+    assertTrue(CadenceClients.getRpcMetrics().isEmpty());
+  }
+
+  @Test
+  public void testCloseIsIgnored() {
+    IWorkflowService service = mock(IWorkflowService.class);
+    CadenceClients.withMetrics(service).close();
+    verify(service, never()).close();
+  }
+}
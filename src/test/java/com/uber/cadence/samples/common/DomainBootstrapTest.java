@@ -0,0 +1,189 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.io.Files;
+import com.uber.cadence.DescribeDomainRequest;
+import com.uber.cadence.DescribeDomainResponse;
+import com.uber.cadence.DomainAlreadyExistsError;
+import com.uber.cadence.DomainConfiguration;
+import com.uber.cadence.DomainInfo;
+import com.uber.cadence.EntityNotExistsError;
+import com.uber.cadence.InternalServiceError;
+import com.uber.cadence.RegisterDomainRequest;
+import com.uber.cadence.UpdateDomainRequest;
+import com.uber.cadence.UpdateDomainResponse;
+import com.uber.cadence.samples.common.DomainBootstrap.DomainSpec;
+import com.uber.cadence.samples.common.DomainBootstrap.Outcome;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for {@link DomainBootstrap}. Uses a stand-in workflow service that keeps domains. */
+public class DomainBootstrapTest {
+
+  private final Map<String, DescribeDomainResponse> domains = new ConcurrentHashMap<>();
+  private IWorkflowService service;
+
+  @Before
+  public void setUp() throws Exception {
+    service = mock(IWorkflowService.class);
+    when(service.DescribeDomain(any(DescribeDomainRequest.class)))
+        .thenAnswer(
+            invocation -> {
+              String name = ((DescribeDomainRequest) invocation.getArguments()[0]).getName();
+              if (name.equals("broken")) {
+                throw new InternalServiceError("unavailable");
+              }
+              DescribeDomainResponse domain = domains.get(name);
+              if (domain == null) {
+                throw new EntityNotExistsError("not found");
+              }
+              return domain;
+            });
+    doAnswer(
+            invocation -> {
+              RegisterDomainRequest request = (RegisterDomainRequest) invocation.getArguments()[0];
+              DescribeDomainResponse domain =
+                  response(
+                      request.getName(),
+                      request.getDescription(),
+                      request.getWorkflowExecutionRetentionPeriodInDays(),
+                      request.isEmitMetric());
+              if (domains.putIfAbsent(request.getName(), domain) != null) {
+                throw new DomainAlreadyExistsError("exists");
+              }
+              return null;
+            })
+        .when(service)
+        .RegisterDomain(any(RegisterDomainRequest.class));
+    when(service.UpdateDomain(any(UpdateDomainRequest.class)))
+        .thenAnswer(
+            invocation -> {
+              UpdateDomainRequest request = (UpdateDomainRequest) invocation.getArguments()[0];
+              domains.put(
+                  request.getName(),
+                  response(
+                      request.getName(),
+                      request.getUpdatedInfo().getDescription(),
+                      request.getConfiguration().getWorkflowExecutionRetentionPeriodInDays(),
+                      request.getConfiguration().isEmitMetric()));
+              return new UpdateDomainResponse();
+            });
+  }
+
+  @Test
+  public void testApply() throws Exception {
+    domains.put("existing", response("existing", "", 3, true));
+    domains.put("stale", response("stale", "", 1, false));
+    List<DomainSpec> specs = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      specs.add(new DomainSpec("domain" + i, 2, true));
+    }
+    specs.add(new DomainSpec("existing", 3, true));
+    specs.add(new DomainSpec("stale", 7, true));
+    specs.add(new DomainSpec("broken", 1, true));
+
+    DomainBootstrap.Report report = new DomainBootstrap(service, 4).apply(specs);
+
+    assertEquals(23, report.getResults().size());
+    assertEquals(20, report.count(Outcome.REGISTERED));
+    assertEquals(1, report.count(Outcome.UNCHANGED));
+    assertEquals(1, report.count(Outcome.UPDATED));
+    assertEquals(1, report.count(Outcome.FAILED));
+    assertEquals("broken", report.getResults().get(22).getDomain());
+    assertEquals(
+        7, domains.get("stale").getConfiguration().getWorkflowExecutionRetentionPeriodInDays());
+    assertTrue(domains.get("stale").getConfiguration().isEmitMetric());
+
+    // Applying the same spec again changes nothing.
+    report = new DomainBootstrap(service, 4).apply(specs.subList(0, 22));
+    assertEquals(22, report.count(Outcome.UNCHANGED));
+  }
+
+  @Test
+  public void testConcurrentRegistration() throws Exception {
+    DomainSpec spec = new DomainSpec("shared", 1, true);
+    DomainBootstrap.Report report =
+        new DomainBootstrap(service, 2).apply(Arrays.asList(spec, spec));
+
+    assertEquals(1, report.count(Outcome.REGISTERED));
+    assertEquals(1, report.count(Outcome.UNCHANGED));
+  }
+
+  @Test
+  public void testReadSpecs() throws Exception {
+    File file = File.createTempFile("domains", ".json");
+    file.deleteOnExit();
+    Files.write(
+        ("[{\"name\": \"a\", \"retentionDays\": 7, \"description\": \"A\"},"
+                + " {\"name\": \"b\", \"emitMetric\": false}]")
+            .getBytes(StandardCharsets.UTF_8),
+        file);
+
+    List<DomainSpec> specs = DomainBootstrap.readSpecs(file);
+
+    assertEquals(2, specs.size());
+    assertEquals(7, specs.get(0).getRetentionDays());
+    assertEquals("A", specs.get(0).getDescription());
+    assertTrue(specs.get(0).isEmitMetric());
+    assertEquals(1, specs.get(1).getRetentionDays());
+    assertFalse(specs.get(1).isEmitMetric());
+  }
+
+  @Test
+  public void testReadInvalidSpecs() throws Exception {
+    for (String json : new String[] {"", "null", "[null]", "[{\"retentionDays\": 7}]"}) {
+      File file = File.createTempFile("domains", ".json");
+      file.deleteOnExit();
+      Files.write(json.getBytes(StandardCharsets.UTF_8), file);
+      try {
+        DomainBootstrap.readSpecs(file);
+        fail("accepted " + json);
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains(file.toString()));
+      }
+    }
+  }
+
+  private static DescribeDomainResponse response(
+      String name, String description, int retentionDays, boolean emitMetric) {
+    return new DescribeDomainResponse()
+        .setDomainInfo(new DomainInfo().setName(name).setDescription(description))
+        .setConfiguration(
+            new DomainConfiguration()
+                .setWorkflowExecutionRetentionPeriodInDays(retentionDays)
+                .setEmitMetric(emitMetric));
+  }
+}
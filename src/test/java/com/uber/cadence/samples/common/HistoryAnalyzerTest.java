@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import com.uber.cadence.ActivityTaskCompletedEventAttributes;
+import com.uber.cadence.ActivityTaskScheduledEventAttributes;
+import com.uber.cadence.ActivityTaskStartedEventAttributes;
+import com.uber.cadence.ActivityTaskTimedOutEventAttributes;
+import com.uber.cadence.ActivityType;
+import com.uber.cadence.DecisionTaskCompletedEventAttributes;
+import com.uber.cadence.DecisionTaskStartedEventAttributes;
+import com.uber.cadence.EventType;
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.TimeoutType;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/** Unit test for {@link HistoryAnalyzer}. */
+public class HistoryAnalyzerTest {
+
+  @Test
+  public void testAnalyze() {
+    HistoryAnalyzer analyzer = new HistoryAnalyzer();
+    analyzer.analyze(history(0).iterator());
+    analyzer.analyze(history(10).iterator());
+
+    assertEquals(2, analyzer.getExecutions());
+    LatencyRecorder scheduleToStart = analyzer.getActivityScheduleToStart().get("A");
+    assertEquals(2, scheduleToStart.getCount());
+    assertEquals(millis(30), scheduleToStart.getPercentile(50));
+    assertEquals(millis(40), scheduleToStart.getMax());
+    assertEquals(millis(100), analyzer.getActivityStartToClose().get("A").getMax());
+    assertFalse(analyzer.getActivityStartToClose().containsKey("B"));
+    assertEquals(3, analyzer.getActivityAttempts().get("A").getMax());
+    assertEquals(1, analyzer.getActivityAttempts().get("B").getMax());
+    assertEquals(2, analyzer.getActivityFailures().get("B").get());
+    assertFalse(analyzer.getActivityFailures().containsKey("A"));
+    assertEquals(millis(10), analyzer.getDecisionScheduleToStart().getMax());
+    assertEquals(millis(5), analyzer.getDecisionStartToClose().getMax());
+    assertEquals(2, analyzer.getChildWorkflows().getPercentile(50));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    analyzer.print(new PrintStream(out));
+    assertTrue(out.toString().contains("Activity start to close (ms)"));
+  }
+
+  @Test
+  public void testAnalyzeFiles() throws Exception {
+    File directory = Files.createTempDir();
+    List<File> files = new ArrayList<>();
+    for (HistoryFormat format : HistoryFormat.values()) {
+      File file = new File(directory, "history" + format.getExtension());
+      try (HistoryFormat.EventWriter writer = format.newWriter(new FileOutputStream(file))) {
+        for (HistoryEvent event : history(0)) {
+          writer.write(event);
+        }
+      }
+      files.add(file);
+    }
+    File corrupted = new File(directory, "corrupted" + HistoryFormat.JSON.getExtension());
+    Files.write("{not json".getBytes(), corrupted);
+    files.add(corrupted);
+
+    HistoryAnalyzer analyzer = new HistoryAnalyzer();
+    analyzer.analyzeFiles(files.iterator(), 2);
+
+    assertEquals(2, analyzer.getExecutions());
+    assertEquals(1, analyzer.getFailedReads());
+    assertEquals(2, analyzer.getActivityStartToClose().get("A").getCount());
+  }
+
+  /** A decision, an activity "A" on its third attempt, two children and a timed out "B". */
+  private static List<HistoryEvent> history(long activityDelayMillis) {
+    return Arrays.asList(
+        event(1, 0, EventType.WorkflowExecutionStarted),
+        event(2, 0, EventType.DecisionTaskScheduled),
+        event(3, 10, EventType.DecisionTaskStarted)
+            .setDecisionTaskStartedEventAttributes(
+                new DecisionTaskStartedEventAttributes().setScheduledEventId(2)),
+        event(4, 15, EventType.DecisionTaskCompleted)
+            .setDecisionTaskCompletedEventAttributes(
+                new DecisionTaskCompletedEventAttributes()
+                    .setScheduledEventId(2)
+                    .setStartedEventId(3)),
+        scheduled(5, 20, "A"),
+        event(6, 50 + activityDelayMillis, EventType.ActivityTaskStarted)
+            .setActivityTaskStartedEventAttributes(
+                new ActivityTaskStartedEventAttributes().setScheduledEventId(5).setAttempt(2)),
+        event(7, 150, EventType.ActivityTaskCompleted)
+            .setActivityTaskCompletedEventAttributes(
+                new ActivityTaskCompletedEventAttributes()
+                    .setScheduledEventId(5)
+                    .setStartedEventId(6)),
+        event(8, 150, EventType.StartChildWorkflowExecutionInitiated),
+        event(9, 150, EventType.StartChildWorkflowExecutionInitiated),
+        scheduled(10, 160, "B"),
+        event(11, 170, EventType.ActivityTaskTimedOut)
+            .setActivityTaskTimedOutEventAttributes(
+                new ActivityTaskTimedOutEventAttributes()
+                    .setScheduledEventId(10)
+                    .setTimeoutType(TimeoutType.SCHEDULE_TO_START)));
+  }
+
+  private static HistoryEvent scheduled(long eventId, long timeMillis, String activityType) {
+    return event(eventId, timeMillis, EventType.ActivityTaskScheduled)
+        .setActivityTaskScheduledEventAttributes(
+            new ActivityTaskScheduledEventAttributes()
+                .setActivityId(String.valueOf(eventId))
+                .setActivityType(new ActivityType().setName(activityType)));
+  }
+
+  private static HistoryEvent event(long eventId, long timeMillis, EventType type) {
+    return new HistoryEvent()
+        .setEventId(eventId)
+        .setTimestamp(millis(timeMillis))
+        .setEventType(type);
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.io.Files;
+import com.uber.cadence.EntityNotExistsError;
+import com.uber.cadence.EventType;
+import com.uber.cadence.GetWorkflowExecutionHistoryRequest;
+import com.uber.cadence.GetWorkflowExecutionHistoryResponse;
+import com.uber.cadence.History;
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.WorkflowExecutionStartedEventAttributes;
+import com.uber.cadence.WorkflowType;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link HistoryExporter}. Uses a stand-in workflow service. */
+public class HistoryExporterTest {
+
+  private static final int EVENTS_PER_EXECUTION = 250;
+  private static final int PAGE_SIZE = 100;
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  private IWorkflowService service;
+  private File outputDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+    outputDirectory = Files.createTempDir();
+    service = mock(IWorkflowService.class);
+    when(service.GetWorkflowExecutionHistory(any(GetWorkflowExecutionHistoryRequest.class)))
+        .thenAnswer(
+            invocation -> {
+              GetWorkflowExecutionHistoryRequest request =
+                  (GetWorkflowExecutionHistoryRequest) invocation.getArguments()[0];
+              String workflowId = request.getExecution().getWorkflowId();
+              if (workflowId.equals("missing")) {
+                throw new EntityNotExistsError("not found");
+              }
+              return page(workflowId, request.getNextPageToken());
+            });
+  }
+
+  @Test
+  public void testExportJson() throws Exception {
+    testExport(HistoryFormat.JSON);
+  }
+
+  @Test
+  public void testExportBinary() throws Exception {
+    testExport(HistoryFormat.BINARY);
+  }
+
+  @Test
+  public void testFailedExecutionIsSkipped() throws Exception {
+    HistoryExporter exporter =
+        new HistoryExporter(service, "domain", outputDirectory, HistoryFormat.JSON, 2);
+    WorkflowExecution missing = new WorkflowExecution().setWorkflowId("missing").setRunId("r");
+    HistoryExporter.Report report =
+        exporter.export(Arrays.asList(execution(1), missing, execution(2)).iterator());
+
+    assertEquals(2, report.getExecutions());
+    assertEquals(1, report.getFailures());
+    assertFalse(exporter.getFile(missing).exists());
+  }
+
+  @Test
+  public void testReadExecutions() throws Exception {
+    File list = new File(outputDirectory, "executions.txt");
+    Files.write("# comment\nworkflow-1 run-1\n\nworkflow-2\n".getBytes(), list);
+
+    List<WorkflowExecution> executions = HistoryExporter.readExecutions(list);
+
+    assertEquals(2, executions.size());
+    assertEquals(execution(1), executions.get(0));
+    assertArrayEquals(
+        new String[] {"workflow-2", null},
+        new String[] {executions.get(1).getWorkflowId(), executions.get(1).getRunId()});
+  }
+
+  private void testExport(HistoryFormat format) throws Exception {
+    HistoryExporter exporter = new HistoryExporter(service, "domain", outputDirectory, format, 4);
+    List<WorkflowExecution> executions = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      executions.add(execution(i));
+    }
+
+    HistoryExporter.Report report = exporter.export(executions.iterator());
+
+    assertEquals(20, report.getExecutions());
+    assertEquals(0, report.getFailures());
+    assertEquals(20 * EVENTS_PER_EXECUTION, report.getEvents());
+    for (WorkflowExecution execution : executions) {
+      File file = exporter.getFile(execution);
+      try (HistoryFormat.EventReader reader =
+          HistoryFormat.forFile(file).newReader(new FileInputStream(file))) {
+        for (int i = 1; i <= EVENTS_PER_EXECUTION; i++) {
+          assertEquals(event(execution.getWorkflowId(), i), reader.read());
+        }
+        assertNull(reader.read());
+      }
+    }
+  }
+
+  private static WorkflowExecution execution(int index) {
+    return new WorkflowExecution().setWorkflowId("workflow-" + index).setRunId("run-" + index);
+  }
+
+  private static GetWorkflowExecutionHistoryResponse page(String workflowId, byte[] token) {
+    int first = token == null ? 1 : ByteBuffer.wrap(token).getInt();
+    int last = Math.min(first + PAGE_SIZE - 1, EVENTS_PER_EXECUTION);
+    List<HistoryEvent> events = new ArrayList<>();
+    for (int i = first; i <= last; i++) {
+      events.add(event(workflowId, i));
+    }
+    GetWorkflowExecutionHistoryResponse response =
+        new GetWorkflowExecutionHistoryResponse().setHistory(new History().setEvents(events));
+    if (last < EVENTS_PER_EXECUTION) {
+      response.setNextPageToken(ByteBuffer.allocate(4).putInt(0, last + 1).array());
+    }
+    return response;
+  }
+
+  private static HistoryEvent event(String workflowId, int eventId) {
+    HistoryEvent event = new HistoryEvent().setEventId(eventId).setTimestamp(eventId * 1000L);
+    if (eventId == 1) {
+      event
+          .setEventType(EventType.WorkflowExecutionStarted)
+          .setWorkflowExecutionStartedEventAttributes(
+              new WorkflowExecutionStartedEventAttributes()
+                  .setWorkflowType(new WorkflowType().setName("Workflow"))
+                  .setInput(workflowId.getBytes()));
+    } else {
+      event.setEventType(EventType.MarkerRecorded);
+    }
+    return event;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.uber.cadence.EntityNotExistsError;
+import com.uber.cadence.EventType;
+import com.uber.cadence.GetWorkflowExecutionHistoryRequest;
+import com.uber.cadence.GetWorkflowExecutionHistoryResponse;
+import com.uber.cadence.History;
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.serviceclient.IWorkflowService;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link HistoryPager}. Uses a stand-in workflow service. */
+public class HistoryPagerTest {
+
+  private static final int PAGE_COUNT = 5;
+  private static final int PAGE_SIZE = 10;
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  private final WorkflowExecution execution =
+      new WorkflowExecution().setWorkflowId("workflow").setRunId("run");
+  private final List<CountDownLatch> requested = new ArrayList<>();
+  private IWorkflowService service;
+
+  @Before
+  public void setUp() throws Exception {
+    for (int i = 0; i < PAGE_COUNT; i++) {
+      requested.add(new CountDownLatch(1));
+    }
+    service = mock(IWorkflowService.class);
+    when(service.GetWorkflowExecutionHistory(any(GetWorkflowExecutionHistoryRequest.class)))
+        .thenAnswer(
+            invocation -> {
+              GetWorkflowExecutionHistoryRequest request =
+                  (GetWorkflowExecutionHistoryRequest) invocation.getArguments()[0];
+              if (request.getExecution().getWorkflowId().equals("missing")) {
+                throw new EntityNotExistsError("not found");
+              }
+              byte[] token = request.getNextPageToken();
+              int page = token == null ? 0 : ByteBuffer.wrap(token).getInt();
+              requested.get(page).countDown();
+              return page(page);
+            });
+  }
+
+  @Test
+  public void testEvents() {
+    Iterator<HistoryEvent> events = new HistoryPager(service, "domain", execution).events();
+    for (int i = 1; i <= PAGE_COUNT * PAGE_SIZE; i++) {
+      assertTrue(events.hasNext());
+      assertEquals(i, events.next().getEventId());
+    }
+    assertFalse(events.hasNext());
+  }
+
+  @Test
+  public void testNextPageIsPrefetched() throws Exception {
+    HistoryPager pager = new HistoryPager(service, "domain", execution);
+    for (int i = 0; i < PAGE_COUNT; i++) {
+      assertTrue(pager.hasNext());
+      List<HistoryEvent> page = pager.next();
+      assertEquals(i * PAGE_SIZE + 1, page.get(0).getEventId());
+      if (i + 1 < PAGE_COUNT) {
+        // Requested before the caller asks for it.
+        assertTrue(requested.get(i + 1).await(5, TimeUnit.SECONDS));
+      }
+    }
+    assertFalse(pager.hasNext());
+  }
+
+  @Test
+  public void testFailure() {
+    WorkflowExecution missing = new WorkflowExecution().setWorkflowId("missing");
+    HistoryPager pager = new HistoryPager(service, "domain", missing);
+    try {
+      pager.next();
+      fail("unreachable");
+    } catch (Error e) {
+      assertTrue(e.getCause() instanceof EntityNotExistsError);
+    }
+    assertFalse(pager.hasNext());
+  }
+
+  private static GetWorkflowExecutionHistoryResponse page(int page) {
+    List<HistoryEvent> events = new ArrayList<>();
+    for (int i = 1; i <= PAGE_SIZE; i++) {
+      events.add(
+          new HistoryEvent()
+              .setEventId(page * PAGE_SIZE + i)
+              .setEventType(EventType.MarkerRecorded));
+    }
+    GetWorkflowExecutionHistoryResponse response =
+        new GetWorkflowExecutionHistoryResponse().setHistory(new History().setEvents(events));
+    if (page + 1 < PAGE_COUNT) {
+      response.setNextPageToken(ByteBuffer.allocate(4).putInt(0, page + 1).array());
+    }
+    return response;
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/** Unit test for {@link LatencyHistogram}. */
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBucketsCoverAllValues() {
+    for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucket(value);
+      assertTrue(value <= LatencyHistogram.upperBound(bucket));
+      assertTrue(bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentile(50));
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i, TimeUnit.MILLISECONDS);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(5050), histogram.getSum());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getMax());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getPercentile(100));
+    assertWithin(TimeUnit.MILLISECONDS.toNanos(50), histogram.getPercentile(50));
+    assertWithin(TimeUnit.MILLISECONDS.toNanos(99), histogram.getPercentile(99));
+  }
+
+  /** Asserts that the reported value is at most 1/16 above the expected one. */
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual + " < " + expected, actual >= expected);
+    assertTrue(actual + " > " + expected, actual <= expected + expected / 16);
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.PeriodicScheduler.Metrics;
+import com.uber.cadence.samples.common.PeriodicScheduler.OverlapPolicy;
+import com.uber.cadence.samples.common.PeriodicScheduler.Schedule;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import com.uber.cadence.workflow.Workflow;
+import com.uber.cadence.workflow.WorkflowMethod;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for {@link PeriodicScheduler}. */
+public class PeriodicSchedulerTest {
+
+  private static final String TASK_LIST = "PeriodicSchedulerTest";
+  private static final Duration PERIOD = Duration.ofSeconds(10);
+  /** Decision tasks take a few milliseconds of workflow time. */
+  private static final double LAG_DELTA_MILLIS = 500;
+
+  public static final class Result {
+    /** Start times of the iterations, in seconds since the workflow start. */
+    List<Long> starts = new ArrayList<>();
+
+    Metrics metrics;
+  }
+
+  public interface ScheduledWorkflow {
+    @WorkflowMethod(executionStartToCloseTimeoutSeconds = 3600, taskList = TASK_LIST)
+    Result run(Schedule schedule, Duration iterationDuration, int iterations);
+  }
+
+  /** Iterations are timers, so they take exactly the given workflow time. */
+  public static class ScheduledWorkflowImpl implements ScheduledWorkflow {
+
+    @Override
+    public Result run(Schedule schedule, Duration iterationDuration, int iterations) {
+      Result result = new Result();
+      long startMillis = Workflow.currentTimeMillis();
+      PeriodicScheduler scheduler = new PeriodicScheduler(schedule, startMillis, new Metrics());
+      scheduler.run(
+          fireTimeMillis -> {
+            result.starts.add((Workflow.currentTimeMillis() - startMillis) / 1000);
+            return Workflow.newTimer(iterationDuration);
+          },
+          () -> result.starts.size() < iterations);
+      result.metrics = scheduler.getMetrics();
+      return result;
+    }
+  }
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient workflowClient;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_LIST);
+    worker.registerWorkflowImplementationTypes(ScheduledWorkflowImpl.class);
+    testEnv.start();
+    workflowClient = testEnv.newWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testNoDrift() {
+    Result result = run(Schedule.every(PERIOD), Duration.ofSeconds(3));
+    assertEquals(Arrays.asList(0L, 10L, 20L, 30L, 40L), result.starts);
+    assertEquals(0, result.metrics.getMaxLagMillis(), LAG_DELTA_MILLIS);
+  }
+
+  @Test
+  public void testSkip() {
+    Result result = run(Schedule.every(PERIOD), Duration.ofSeconds(25));
+    assertEquals(Arrays.asList(0L, 25L, 50L, 75L, 100L), result.starts);
+    // Fire times 10, 30, 40, 60, 70, 90 are skipped, 20, 50, 80 and 100 run.
+    assertEquals(6, result.metrics.getSkipped());
+    assertEquals(5000, result.metrics.getMaxLagMillis(), LAG_DELTA_MILLIS);
+  }
+
+  @Test
+  public void testCatchUp() {
+    Result result = run(new Schedule(PERIOD, OverlapPolicy.CATCH_UP, 1), Duration.ofSeconds(25));
+    assertEquals(Arrays.asList(0L, 25L, 50L, 75L, 100L), result.starts);
+    assertEquals(0, result.metrics.getSkipped());
+    // The fire time 40 runs at 100.
+    assertEquals(60_000, result.metrics.getMaxLagMillis(), LAG_DELTA_MILLIS);
+  }
+
+  @Test
+  public void testAllowOverlap() {
+    Result result =
+        run(new Schedule(PERIOD, OverlapPolicy.ALLOW_OVERLAP, 3), Duration.ofSeconds(25));
+    assertEquals(Arrays.asList(0L, 10L, 20L, 30L, 40L), result.starts);
+    assertEquals(0, result.metrics.getMaxLagMillis(), LAG_DELTA_MILLIS);
+
+    // Only two iterations at a time, so every other one waits for a slot.
+    result = run(new Schedule(PERIOD, OverlapPolicy.ALLOW_OVERLAP, 2), Duration.ofSeconds(25));
+    assertEquals(Arrays.asList(0L, 10L, 25L, 35L, 50L), result.starts);
+    assertEquals(10_000, result.metrics.getMaxLagMillis(), LAG_DELTA_MILLIS);
+  }
+
+  private Result run(Schedule schedule, Duration iterationDuration) {
+    ScheduledWorkflow workflow =
+        workflowClient.newWorkflowStub(
+            ScheduledWorkflow.class, new WorkflowOptions.Builder().build());
+    return workflow.run(schedule, iterationDuration, 5);
+  }
+}
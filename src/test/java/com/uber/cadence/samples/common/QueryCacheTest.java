@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.hello.HelloQuery.GreetingWorkflow;
+import com.uber.cadence.samples.hello.HelloQuery.GreetingWorkflowImpl;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for {@link QueryCache}. Queries HelloQuery workflows. */
+public class QueryCacheTest {
+
+  private static final String TASK_LIST = "QueryCacheTest";
+  private static final String QUERY_TYPE = "GreetingWorkflow::queryGreeting";
+  private static final String VERSION_QUERY_TYPE = "GreetingWorkflow::queryGreetingVersion";
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient workflowClient;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_LIST);
+    worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+    testEnv.start();
+    workflowClient = testEnv.newWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testTimeToLive() {
+    String workflowId = start("World");
+    QueryCache cache = new QueryCache(workflowClient, null, Duration.ofHours(1), 10);
+    assertEquals("Hello World!", cache.query(workflowId, QUERY_TYPE, String.class));
+
+    testEnv.sleep(Duration.ofSeconds(3));
+    // Stale until the time to live expires or the workflow is invalidated.
+    assertEquals("Hello World!", cache.query(workflowId, QUERY_TYPE, String.class));
+    cache.invalidate(workflowId);
+    assertEquals("Bye World!", cache.query(workflowId, QUERY_TYPE, String.class));
+
+    assertEquals(1, cache.getMetrics().getHits());
+    assertEquals(2, cache.getMetrics().getMisses());
+  }
+
+  @Test
+  public void testVersionInvalidation() {
+    String workflowId = start("World");
+    QueryCache cache = new QueryCache(workflowClient, VERSION_QUERY_TYPE, Duration.ZERO, 10);
+    assertEquals("Hello World!", cache.query(workflowId, QUERY_TYPE, String.class));
+    assertEquals("Hello World!", cache.query(workflowId, QUERY_TYPE, String.class));
+    assertEquals(1, cache.getMetrics().getRevalidations());
+
+    testEnv.sleep(Duration.ofSeconds(3));
+    assertEquals("Bye World!", cache.query(workflowId, QUERY_TYPE, String.class));
+    assertEquals(2, cache.getMetrics().getMisses());
+    assertEquals(0.33, cache.getMetrics().getHitRate(), 0.01);
+  }
+
+  @Test
+  public void testMaximumSize() {
+    QueryCache cache = new QueryCache(workflowClient, null, Duration.ofHours(1), 2);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(
+          "Hello World" + i + "!", cache.query(start("World" + i), QUERY_TYPE, String.class));
+    }
+    assertEquals(2, cache.size());
+  }
+
+  private String start(String name) {
+    WorkflowOptions workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofMinutes(5))
+            .build();
+    GreetingWorkflow workflow =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+    return WorkflowClient.start(workflow::createGreeting, name).getWorkflowId();
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import com.uber.cadence.HistoryEvent;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.samples.hello.HelloActivity.GreetingActivities;
+import com.uber.cadence.samples.hello.HelloActivity.GreetingWorkflow;
+import com.uber.cadence.samples.hello.HelloActivity.GreetingWorkflowImpl;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import com.uber.cadence.workflow.Workflow;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Unit test for {@link ReplayBenchmark}. Replays histories recorded by the test environment. */
+public class ReplayBenchmarkTest {
+
+  private static final String WORKFLOW_TYPE = "GreetingWorkflow::getGreeting";
+
+  private static List<File> files = new ArrayList<>();
+
+  /** Sleeps before calling the activity, so it does not match the recorded histories. */
+  public static class ChangedGreetingWorkflowImpl implements GreetingWorkflow {
+
+    private final GreetingActivities activities =
+        Workflow.newActivityStub(GreetingActivities.class);
+
+    @Override
+    public String getGreeting(String name) {
+      Workflow.sleep(Duration.ofSeconds(1));
+      return activities.composeGreeting("Hello", name);
+    }
+  }
+
+  @BeforeClass
+  public static void recordHistories() throws Exception {
+    TestWorkflowEnvironment testEnv = TestWorkflowEnvironment.newInstance();
+    try {
+      Worker worker = testEnv.newWorker("HelloActivity");
+      worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+      worker.registerActivitiesImplementations(
+          (GreetingActivities) (greeting, name) -> greeting + " " + name + "!");
+      testEnv.start();
+      WorkflowClient workflowClient = testEnv.newWorkflowClient();
+      File directory = Files.createTempDir();
+      for (HistoryFormat format : HistoryFormat.values()) {
+        GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
+        WorkflowExecution execution = WorkflowClient.start(workflow::getGreeting, "World");
+        workflowClient.newUntypedWorkflowStub(execution, Optional.empty()).getResult(String.class);
+        File file = new File(directory, execution.getWorkflowId() + format.getExtension());
+        try (HistoryFormat.EventWriter writer = format.newWriter(new FileOutputStream(file))) {
+          Iterator<HistoryEvent> events =
+              new HistoryPager(testEnv.getWorkflowService(), testEnv.getDomain(), execution)
+                  .events();
+          while (events.hasNext()) {
+            writer.write(events.next());
+          }
+        }
+        files.add(file);
+      }
+      // The CLI prints a history as a JSON array of events.
+      File json = new File(directory, "history.json");
+      List<String> lines = Files.readLines(files.get(0), StandardCharsets.UTF_8);
+      Files.write(("[" + String.join(",", lines) + "]").getBytes(StandardCharsets.UTF_8), json);
+      files.add(json);
+    } finally {
+      testEnv.close();
+    }
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    Map<String, ReplayBenchmark.Result> results =
+        new ReplayBenchmark(new Class<?>[] {GreetingWorkflowImpl.class}, 1, 3).run(files);
+
+    ReplayBenchmark.Result result = results.get(WORKFLOW_TYPE);
+    assertEquals(3, result.getHistories());
+    assertEquals(0, result.getFailures());
+    assertNull(result.getFirstFailure());
+    assertEquals(9, result.getReplayTime().getCount());
+    assertTrue(result.getAllocatedBytesPerReplay() > 0);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ReplayBenchmark.print(results, new PrintStream(out));
+    assertTrue(out.toString().contains(WORKFLOW_TYPE));
+  }
+
+  @Test
+  public void testNonDeterministic() throws Exception {
+    Map<String, ReplayBenchmark.Result> results =
+        new ReplayBenchmark(new Class<?>[] {ChangedGreetingWorkflowImpl.class}, 0, 1)
+            .run(Arrays.asList(files.get(0), files.get(1)));
+
+    ReplayBenchmark.Result result = results.get(WORKFLOW_TYPE);
+    assertEquals(2, result.getHistories());
+    assertEquals(2, result.getFailures());
+    assertNotNull(result.getFirstFailure());
+  }
+
+  @Test
+  public void testInvalidHistoriesCountAsFailures() throws Exception {
+    File directory = Files.createTempDir();
+    File empty = new File(directory, "empty" + HistoryFormat.JSON.getExtension());
+    Files.write(new byte[0], empty);
+    // The first line of a history is its started event.
+    File truncated = new File(directory, "truncated" + HistoryFormat.JSON.getExtension());
+    List<String> lines = Files.readLines(files.get(0), StandardCharsets.UTF_8);
+    Files.write(
+        String.join("\n", lines.subList(1, lines.size())).getBytes(StandardCharsets.UTF_8),
+        truncated);
+
+    Map<String, ReplayBenchmark.Result> results =
+        new ReplayBenchmark(new Class<?>[] {GreetingWorkflowImpl.class}, 0, 1)
+            .run(Arrays.asList(empty, truncated, files.get(0)));
+
+    ReplayBenchmark.Result invalid = results.get(ReplayBenchmark.INVALID_HISTORY);
+    assertEquals(2, invalid.getHistories());
+    assertEquals(2, invalid.getFailures());
+    assertTrue(invalid.getFirstFailure(), invalid.getFirstFailure().startsWith("empty"));
+    // The valid history is still replayed.
+    assertEquals(0, results.get(WORKFLOW_TYPE).getFailures());
+    assertEquals(1, results.get(WORKFLOW_TYPE).getReplayTime().getCount());
+  }
+}
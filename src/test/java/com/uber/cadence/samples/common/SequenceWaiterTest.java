@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link SequenceWaiter}. */
+public class SequenceWaiterTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  private final AtomicLong processed = new AtomicLong();
+
+  @Test
+  public void testCompletesWaitersUpToProcessedSequence() throws Exception {
+    try (SequenceWaiter waiter =
+        new SequenceWaiter(processed::get, Duration.ofMillis(1), Duration.ofMillis(10), 10)) {
+      CompletableFuture<Long> first = waiter.await(1, Duration.ofSeconds(5));
+      CompletableFuture<Long> second = waiter.await(2, Duration.ofSeconds(5));
+      CompletableFuture<Long> third = waiter.await(3, Duration.ofSeconds(5));
+
+      processed.set(2);
+      assertEquals(2, (long) first.get());
+      assertEquals(2, (long) second.get());
+      assertFalse(third.isDone());
+
+      processed.set(3);
+      assertEquals(3, (long) third.get());
+      assertEquals(0, waiter.getWaiters());
+      // Already processed sequences complete without waiting.
+      assertTrue(waiter.await(1, Duration.ofSeconds(5)).isDone());
+    }
+  }
+
+  @Test
+  public void testTimeoutReleasesWaiter() throws Exception {
+    try (SequenceWaiter waiter =
+        new SequenceWaiter(processed::get, Duration.ofMillis(1), Duration.ofMillis(10), 1)) {
+      CompletableFuture<Long> result = waiter.await(1, Duration.ofMillis(50));
+      try {
+        result.get();
+        fail("unreachable");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof TimeoutException);
+      }
+      // The only permit was released by the timeout.
+      processed.set(2);
+      assertEquals(2, (long) waiter.await(2, Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS));
+    }
+  }
+}
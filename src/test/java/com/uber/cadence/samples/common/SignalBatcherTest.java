@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.client.WorkflowStub;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingActivities;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingWorkflow;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingWorkflowImpl;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for {@link SignalBatcher}. Signals a HelloSignalBuffer workflow. */
+public class SignalBatcherTest {
+
+  private static final String TASK_LIST = "SignalBatcherTest";
+  private static final String SIGNAL_NAME = "GreetingWorkflow::waitForNames";
+
+  private final List<String> greeted = Collections.synchronizedList(new ArrayList<>());
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient workflowClient;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_LIST);
+    worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+    worker.registerActivitiesImplementations((GreetingActivities) greeted::addAll);
+    testEnv.start();
+    workflowClient = testEnv.newWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testBatchesInOrder() throws Exception {
+    int count = 5000;
+    String workflowId = start();
+    SignalBatcher<String> batcher =
+        new SignalBatcher<>(workflowClient, SIGNAL_NAME, 100, Duration.ofMillis(5), 1000, 4);
+    for (int i = 0; i < count; i++) {
+      batcher.signal(workflowId, "Name" + i);
+    }
+    batcher.close();
+
+    assertEquals(count, batcher.getMetrics().getItems());
+    assertEquals(0, batcher.getMetrics().getFailures());
+    assertTrue(batcher.getMetrics().getSignals() <= count / 2);
+    assertEquals(count, exit(workflowId));
+    for (int i = 0; i < count; i++) {
+      assertEquals("Name" + i, greeted.get(i));
+    }
+  }
+
+  @Test
+  public void testLinger() throws Exception {
+    String workflowId = start();
+    SignalBatcher<String> batcher =
+        new SignalBatcher<>(workflowClient, SIGNAL_NAME, 100, Duration.ofMillis(50), 1000, 1);
+    CompletableFuture<Void> first = batcher.signal(workflowId, "first");
+    CompletableFuture<Void> second = batcher.signal(workflowId, "second");
+
+    // Sent by the linger timer without a flush.
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+    assertEquals(1, batcher.getMetrics().getSignals());
+    batcher.close();
+    assertEquals(2, exit(workflowId));
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    SignalBatcher<String> batcher =
+        new SignalBatcher<>(workflowClient, SIGNAL_NAME, 10, Duration.ofMillis(1), 100, 1);
+    CompletableFuture<Void> sent = batcher.signal("missing", "name");
+    batcher.close();
+
+    try {
+      sent.get();
+      fail("unreachable");
+    } catch (ExecutionException e) {
+      assertEquals(1, batcher.getMetrics().getFailures());
+    }
+  }
+
+  @Test
+  public void testSendingAfterError() throws Exception {
+    WorkflowStub stub = mock(WorkflowStub.class);
+    doThrow(new AssertionError("simulated"))
+        .doNothing()
+        .when(stub)
+        .signal(anyString(), anyVararg());
+    WorkflowClient client = mock(WorkflowClient.class);
+    when(client.newUntypedWorkflowStub(anyString(), any(), any())).thenReturn(stub);
+    SignalBatcher<String> batcher =
+        new SignalBatcher<>(client, SIGNAL_NAME, 10, Duration.ofMillis(1), 100, 1);
+
+    CompletableFuture<Void> failed = batcher.signal("workflow", "first");
+    try {
+      failed.get(5, TimeUnit.SECONDS);
+      fail("unreachable");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof AssertionError);
+    }
+    // The same workflow still gets its signals and close doesn't wait for leaked items.
+    batcher.signal("workflow", "second").get(5, TimeUnit.SECONDS);
+    batcher.close();
+    assertEquals(2, batcher.getMetrics().getSignals());
+    assertEquals(1, batcher.getMetrics().getFailures());
+  }
+
+  private String start() {
+    WorkflowOptions workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofMinutes(5))
+            .build();
+    GreetingWorkflow workflow =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+    return WorkflowClient.start(workflow::processGreetings, 0L, Collections.<String>emptyList())
+        .getWorkflowId();
+  }
+
+  private long exit(String workflowId) {
+    workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowId).exit();
+    return workflowClient
+        .newUntypedWorkflowStub(workflowId, Optional.empty(), Optional.empty())
+        .getResult(Long.class);
+  }
+}
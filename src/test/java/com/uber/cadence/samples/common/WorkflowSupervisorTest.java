@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.WorkflowIdReusePolicy;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import com.uber.cadence.workflow.Workflow;
+import com.uber.cadence.workflow.WorkflowMethod;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link WorkflowSupervisor}. */
+public class WorkflowSupervisorTest {
+
+  private static final String TASK_LIST = "WorkflowSupervisorTest";
+
+  public interface SupervisedWorkflow {
+    @WorkflowMethod(executionStartToCloseTimeoutSeconds = 3600, taskList = TASK_LIST)
+    void run(Duration duration);
+  }
+
+  public static class SupervisedWorkflowImpl implements SupervisedWorkflow {
+
+    @Override
+    public void run(Duration duration) {
+      if (!duration.isZero()) {
+        Workflow.sleep(duration);
+      }
+    }
+  }
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient workflowClient;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_LIST);
+    worker.registerWorkflowImplementationTypes(SupervisedWorkflowImpl.class);
+    testEnv.start();
+    workflowClient = testEnv.newWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testRestartsClosedWorkflows() throws InterruptedException {
+    try (WorkflowSupervisor supervisor =
+        new WorkflowSupervisor(
+            workflowClient,
+            workflowId -> start(workflowId, Duration.ZERO),
+            Duration.ofMillis(10),
+            Duration.ofMillis(100),
+            2)) {
+      for (int i = 0; i < 10; i++) {
+        supervisor.supervise("workflow" + i);
+      }
+      supervisor.supervise("workflow0");
+      assertEquals(10, supervisor.getSupervised());
+
+      WorkflowSupervisor.Metrics metrics = supervisor.getMetrics();
+      waitFor(() -> metrics.getCompletions() >= 30);
+      assertEquals(0, metrics.getFailures());
+      assertTrue(metrics.getStarts() >= 30);
+      assertTrue(metrics.getRestarts() >= 30);
+    }
+  }
+
+  @Test
+  public void testBacksOffStartFailures() throws InterruptedException {
+    AtomicInteger attempts = new AtomicInteger();
+    long startNanos = System.nanoTime();
+    try (WorkflowSupervisor supervisor =
+        new WorkflowSupervisor(
+            workflowClient,
+            workflowId -> {
+              if (attempts.incrementAndGet() <= 3) {
+                throw new IllegalStateException("attempt " + attempts.get());
+              }
+              return start(workflowId, Duration.ofHours(1));
+            },
+            Duration.ofMillis(100),
+            Duration.ofSeconds(1),
+            1)) {
+      supervisor.supervise("workflow");
+      WorkflowSupervisor.Metrics metrics = supervisor.getMetrics();
+      waitFor(() -> metrics.getStarts() == 1);
+      // At least half of each of the 100, 200 and 400 ms backoffs.
+      assertTrue(System.nanoTime() - startNanos >= Duration.ofMillis(350).toNanos());
+      assertEquals(3, metrics.getStartFailures());
+      assertEquals(
+          "workflow: java.lang.IllegalStateException: attempt 3", metrics.getLastFailure());
+    }
+  }
+
+  @Test
+  public void testAlreadyRunning() throws InterruptedException {
+    start("workflow", Duration.ofHours(1));
+    try (WorkflowSupervisor supervisor =
+        new WorkflowSupervisor(
+            workflowClient,
+            workflowId -> start(workflowId, Duration.ofHours(1)),
+            Duration.ofMillis(10),
+            Duration.ofMillis(100),
+            1)) {
+      supervisor.supervise("workflow");
+      WorkflowSupervisor.Metrics metrics = supervisor.getMetrics();
+      waitFor(() -> metrics.getAlreadyRunning() == 1);
+      assertEquals(0, metrics.getStarts());
+    }
+  }
+
+  private WorkflowExecution start(String workflowId, Duration duration) {
+    SupervisedWorkflow workflow =
+        workflowClient.newWorkflowStub(
+            SupervisedWorkflow.class,
+            new WorkflowOptions.Builder()
+                .setWorkflowId(workflowId)
+                .setWorkflowIdReusePolicy(WorkflowIdReusePolicy.AllowDuplicate)
+                .build());
+    return WorkflowClient.start(workflow::run, duration);
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    while (!condition.getAsBoolean()) {
+      Thread.sleep(10);
+    }
+  }
+}
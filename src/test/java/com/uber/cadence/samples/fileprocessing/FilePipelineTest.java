@@ -0,0 +1,114 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link FilePipeline}. */
+public class FilePipelineTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(5);
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final FilePipeline pipeline = new FilePipeline(executor, 1000, 2);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testChunksProcessedAndUploadedInOrder() throws IOException {
+    byte[] source = new byte[10_500];
+    new Random(1).nextBytes(source);
+    ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+    List<Long> progress = new ArrayList<>();
+
+    long size =
+        pipeline.run(
+            new ByteArrayInputStream(source),
+            0,
+            FilePipelineTest::invert,
+            chunk -> uploaded.write(chunk.getData()),
+            progress::add);
+
+    assertEquals(source.length, size);
+    assertArrayEquals(invert(source), uploaded.toByteArray());
+    assertEquals(11, progress.size());
+    assertEquals(Long.valueOf(source.length), progress.get(progress.size() - 1));
+  }
+
+  @Test
+  public void testResumeFromOffset() throws IOException {
+    byte[] source = new byte[2500];
+    new Random(2).nextBytes(source);
+    List<Long> offsets = new ArrayList<>();
+
+    long size =
+        pipeline.run(
+            new ByteArrayInputStream(source, 2000, 500),
+            2000,
+            chunk -> chunk,
+            chunk -> offsets.add(chunk.getOffset()),
+            position -> {});
+
+    assertEquals(source.length, size);
+    assertEquals(Arrays.asList(2000L), offsets);
+  }
+
+  @Test
+  public void testProcessFailurePropagated() {
+    try {
+      pipeline.run(
+          new ByteArrayInputStream(new byte[5000]),
+          0,
+          chunk -> {
+            throw new IOException("simulated");
+          },
+          chunk -> {},
+          position -> {});
+      fail("unreachable");
+    } catch (IOException e) {
+      assertEquals("simulated", e.getMessage());
+    }
+  }
+
+  private static byte[] invert(byte[] data) {
+    byte[] result = new byte[data.length];
+    for (int i = 0; i < data.length; i++) {
+      result[i] = (byte) ~data[i];
+    }
+    return result;
+  }
+}
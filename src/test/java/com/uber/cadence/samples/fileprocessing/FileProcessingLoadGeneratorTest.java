@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link FileProcessingLoadGenerator}. */
+public class FileProcessingLoadGeneratorTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(30);
+
+  private TestWorkflowEnvironment testEnv;
+  private File workDirectory;
+
+  @Before
+  public void setUp() {
+    workDirectory = Files.createTempDir();
+    testEnv = TestWorkflowEnvironment.newInstance();
+    FileProcessingLoadGenerator.registerWorkers(testEnv, workDirectory);
+    testEnv.start();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testSequential() throws Exception {
+    FileProcessingLoadGenerator.Report report = run(false);
+    assertTrue(report.getStageLatencies().containsKey("StoreActivities::download"));
+    assertTrue(report.getStageLatencies().containsKey("StoreActivities::process"));
+    assertTrue(report.getStageLatencies().containsKey("StoreActivities::upload"));
+  }
+
+  @Test
+  public void testPipelined() throws Exception {
+    FileProcessingLoadGenerator.Report report = run(true);
+    assertEquals(4, report.getStageLatencies().get("StoreActivities::pipelineFile").getCount());
+  }
+
+  @Test
+  public void testFailedWorkflowsAreNotCounted() throws Exception {
+    long[] sizes = {1000, 2000, 200_000};
+    List<URL> sources = FileProcessingLoadGenerator.createSources(workDirectory, sizes);
+    // The downloads of the second source fail.
+    assertTrue(new File(sources.get(1).toURI()).delete());
+    FileProcessingLoadGenerator.Report report =
+        new FileProcessingLoadGenerator(
+                testEnv.newWorkflowClient(),
+                testEnv.getWorkflowService(),
+                testEnv.getDomain(),
+                true)
+            .run(3, 100, sources, sizes);
+
+    assertEquals(1, report.getFailures());
+    assertEquals(2, report.getEndToEnd().getCount());
+    assertEquals(201_000, report.getBytes());
+    // Sizes stay attributed to their own workflows.
+    assertEquals(201_000, (long) report.getStageBytes().get("StoreActivities::pipelineFile"));
+  }
+
+  private FileProcessingLoadGenerator.Report run(boolean pipelined) throws Exception {
+    long[] sizes = {1000, 200_000};
+    List<URL> sources = FileProcessingLoadGenerator.createSources(workDirectory, sizes);
+    FileProcessingLoadGenerator.Report report =
+        new FileProcessingLoadGenerator(
+                testEnv.newWorkflowClient(),
+                testEnv.getWorkflowService(),
+                testEnv.getDomain(),
+                pipelined)
+            .run(4, 100, sources, sizes);
+    assertEquals(0, report.getFailures());
+    assertEquals(4, report.getEndToEnd().getCount());
+    return report;
+  }
+}
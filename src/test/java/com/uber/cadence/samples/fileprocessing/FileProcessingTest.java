@@ -17,6 +17,7 @@
 
 package com.uber.cadence.samples.fileprocessing;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -26,6 +27,7 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import com.uber.cadence.TimeoutType;
+import com.uber.cadence.activity.Activity;
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.samples.fileprocessing.StoreActivities.TaskListFileNamePair;
 import com.uber.cadence.testing.SimulatedTimeoutException;
@@ -33,6 +35,9 @@ import com.uber.cadence.testing.TestWorkflowEnvironment;
 import com.uber.cadence.worker.Worker;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -88,7 +93,8 @@ public class FileProcessingTest {
   public void setUp() {
     testEnv = TestWorkflowEnvironment.newInstance();
     worker = testEnv.newWorker(FileProcessingWorker.TASK_LIST);
-    worker.registerWorkflowImplementationTypes(FileProcessingWorkflowImpl.class);
+    worker.registerWorkflowImplementationTypes(
+        FileProcessingWorkflowImpl.class, PipelinedFileProcessingWorkflowImpl.class);
     workerHost1 = testEnv.newWorker(HOST_NAME_1);
     workerHost2 = testEnv.newWorker(HOST_NAME_2);
 
@@ -156,11 +162,76 @@ public class FileProcessingTest {
 
     verify(activities, times(2)).download(SOURCE);
 
-    verify(activitiesHost1).process(FILE_NAME_UNPROCESSED);
+    // The service never retries a real schedule to start timeout, but the test service reports a
+    // simulated one as a failure, which is retried on the same host.
+    verify(activitiesHost1, times(FileProcessingWorkflowImpl.HOST_ACTIVITY_MAXIMUM_ATTEMPTS))
+        .process(FILE_NAME_UNPROCESSED);
+    // Scratch space of the first host is freed before the retry.
+    verify(activitiesHost1).deleteLocalFiles();
 
     verify(activitiesHost2).process(FILE_NAME_UNPROCESSED);
     verify(activitiesHost2).upload(FILE_NAME_PROCESSED, DESTINATION);
 
     verifyNoMoreInteractions(activities, activitiesHost1, activitiesHost2);
   }
+
+  @Test
+  public void testHostActivityRetryResumesFromCheckpoint() {
+    StoreActivities activities = mock(StoreActivities.class);
+    when(activities.download(anyObject()))
+        .thenReturn(new TaskListFileNamePair(HOST_NAME_1, FILE_NAME_UNPROCESSED));
+    worker.registerActivitiesImplementations(activities);
+
+    // The first attempt fails after a checkpoint, the retry reads it back.
+    List<Long> resumedFrom = new ArrayList<>();
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    when(activitiesHost1.process(FILE_NAME_UNPROCESSED))
+        .thenAnswer(
+            invocation -> {
+              Activity.heartbeat(1000L);
+              throw new IllegalStateException("simulated disk failure");
+            })
+        .thenAnswer(
+            invocation -> {
+              resumedFrom.add(Activity.getHeartbeatDetails(Long.class).orElse(0L));
+              return FILE_NAME_PROCESSED;
+            });
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    StoreActivities activitiesHost2 = mock(StoreActivities.class);
+    workerHost2.registerActivitiesImplementations(activitiesHost2);
+
+    testEnv.start();
+    FileProcessingWorkflow workflow = workflowClient.newWorkflowStub(FileProcessingWorkflow.class);
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    assertEquals(Collections.singletonList(1000L), resumedFrom);
+    // The file is neither downloaded again nor moved to a different host.
+    verify(activities).download(SOURCE);
+    verify(activitiesHost1, times(2)).process(FILE_NAME_UNPROCESSED);
+    verify(activitiesHost1).upload(FILE_NAME_PROCESSED, DESTINATION);
+    verifyNoMoreInteractions(activities, activitiesHost1);
+    verifyZeroInteractions(activitiesHost2);
+  }
+
+  @Test
+  public void testPipelined() {
+    StoreActivities activities = mock(StoreActivities.class);
+    worker.registerActivitiesImplementations(activities);
+
+    StoreActivities activitiesHost1 = mock(StoreActivities.class);
+    workerHost1.registerActivitiesImplementations(activitiesHost1);
+
+    testEnv.start();
+    PipelinedFileProcessingWorkflow workflow =
+        workflowClient.newWorkflowStub(PipelinedFileProcessingWorkflow.class);
+
+    workflow.processFile(SOURCE, DESTINATION);
+
+    // All the stages run inside a single activity, so no host specific task list is used.
+    verify(activities).pipelineFile(SOURCE, DESTINATION);
+    verifyNoMoreInteractions(activities);
+    verifyZeroInteractions(activitiesHost1);
+  }
 }
@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URL;
+import org.junit.Test;
+
+/** Unit test for {@link HttpUploadSink}. */
+public class HttpUploadSinkTest {
+
+  @Test
+  public void testParameterAppendedToQuery() throws IOException {
+    assertEquals(
+        "http://store/object?partNumber=3",
+        HttpUploadSink.withParameter(new URL("http://store/object"), "partNumber", 3).toString());
+    assertEquals(
+        "http://store/object?X-Signature=abc&partCount=2",
+        HttpUploadSink.withParameter(new URL("http://store/object?X-Signature=abc"), "partCount", 2)
+            .toString());
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link MultipartUploader}. */
+public class MultipartUploaderTest {
+
+  private static final int PART_SIZE = 1000;
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(5);
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private File root;
+  private File file;
+  private byte[] content;
+  private URL destination;
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDir();
+    content = new byte[10 * PART_SIZE + 500];
+    new Random(1).nextBytes(content);
+    file = new File(root, "processed");
+    Files.write(content, file);
+    destination = new URL("http://dummy/processed");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testUploadToLocalDirectory() throws IOException {
+    LocalDirectoryUploadSink sink = new LocalDirectoryUploadSink(new File(root, "uploads"));
+    MultipartUploader uploader = new MultipartUploader(sink, executor, PART_SIZE, 3, 1, 0);
+    Set<Integer> reported = new HashSet<>();
+
+    uploader.upload(file, destination, Collections.emptySet(), reported::addAll);
+
+    assertEquals(11, reported.size());
+    assertArrayEquals(content, Files.toByteArray(sink.getObject(destination)));
+  }
+
+  @Test
+  public void testCompletedPartsSkippedAndFailedPartsRetried() throws IOException {
+    Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    LocalDirectoryUploadSink localSink = new LocalDirectoryUploadSink(new File(root, "uploads"));
+    UploadSink sink =
+        new UploadSink() {
+          @Override
+          public void uploadPart(URL destination, int partNumber, byte[] data) throws IOException {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+              Thread.sleep(10);
+              // Every part fails on the first attempt.
+              if (attempts.computeIfAbsent(partNumber, k -> new AtomicInteger()).incrementAndGet()
+                  == 1) {
+                throw new IOException("simulated");
+              }
+              localSink.uploadPart(destination, partNumber, data);
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            } finally {
+              inFlight.decrementAndGet();
+            }
+          }
+
+          @Override
+          public void complete(URL destination, int partCount) throws IOException {
+            localSink.complete(destination, partCount);
+          }
+        };
+    MultipartUploader uploader = new MultipartUploader(sink, executor, PART_SIZE, 2, 2, 1);
+    // Parts uploaded by a previous attempt of the activity.
+    for (int partNumber = 1; partNumber <= 5; partNumber++) {
+      byte[] part =
+          Arrays.copyOfRange(content, (partNumber - 1) * PART_SIZE, partNumber * PART_SIZE);
+      localSink.uploadPart(destination, partNumber, part);
+    }
+
+    uploader.upload(file, destination, new HashSet<>(Arrays.asList(1, 2, 3, 4, 5)), parts -> {});
+
+    assertEquals(new HashSet<>(Arrays.asList(6, 7, 8, 9, 10, 11)), attempts.keySet());
+    assertTrue(maxInFlight.get() <= 2);
+    assertArrayEquals(content, Files.toByteArray(localSink.getObject(destination)));
+  }
+
+  @Test
+  public void testPartsStoredBySinkSkipped() throws IOException {
+    LocalDirectoryUploadSink localSink = new LocalDirectoryUploadSink(new File(root, "uploads"));
+    Set<Integer> uploaded = ConcurrentHashMap.newKeySet();
+    UploadSink sink =
+        new UploadSink() {
+          @Override
+          public void uploadPart(URL destination, int partNumber, byte[] data) throws IOException {
+            uploaded.add(partNumber);
+            localSink.uploadPart(destination, partNumber, data);
+          }
+
+          @Override
+          public void complete(URL destination, int partCount) throws IOException {
+            localSink.complete(destination, partCount);
+          }
+
+          @Override
+          public Map<Integer, Long> listParts(URL destination) {
+            return localSink.listParts(destination);
+          }
+        };
+    // A previous attempt stored five parts and a truncated sixth one without reporting them.
+    for (int partNumber = 1; partNumber <= 6; partNumber++) {
+      int end = partNumber == 6 ? 5 * PART_SIZE + 10 : partNumber * PART_SIZE;
+      localSink.uploadPart(
+          destination, partNumber, Arrays.copyOfRange(content, (partNumber - 1) * PART_SIZE, end));
+    }
+    MultipartUploader uploader = new MultipartUploader(sink, executor, PART_SIZE, 2, 1, 0);
+
+    uploader.upload(file, destination, Collections.emptySet(), parts -> {});
+
+    assertEquals(new HashSet<>(Arrays.asList(6, 7, 8, 9, 10, 11)), uploaded);
+    assertArrayEquals(content, Files.toByteArray(localSink.getObject(destination)));
+  }
+
+  @Test
+  public void testPartFailsAfterMaxAttempts() {
+    UploadSink sink =
+        new UploadSink() {
+          @Override
+          public void uploadPart(URL destination, int partNumber, byte[] data) throws IOException {
+            throw new IOException("simulated");
+          }
+
+          @Override
+          public void complete(URL destination, int partCount) {
+            fail("unreachable");
+          }
+        };
+    MultipartUploader uploader = new MultipartUploader(sink, executor, PART_SIZE, 2, 3, 1);
+    try {
+      uploader.upload(file, destination, Collections.emptySet(), parts -> {});
+      fail("unreachable");
+    } catch (IOException e) {
+      assertEquals("simulated", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testUploadOverHttp() throws IOException {
+    // Local HTTP server stands in for an object store.
+    Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+    ByteArrayOutputStream object = new ByteArrayOutputStream();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          String[] query = exchange.getRequestURI().getQuery().split("=");
+          byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+          if (query[0].equals("partNumber")) {
+            parts.put(Integer.parseInt(query[1]), body);
+          } else {
+            for (byte[] part : new TreeMap<>(parts).values()) {
+              object.write(part);
+            }
+          }
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    server.setExecutor(executor);
+    server.start();
+    try {
+      URL destination = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/object");
+      MultipartUploader uploader =
+          new MultipartUploader(new HttpUploadSink(1000), executor, PART_SIZE, 4, 1, 0);
+
+      uploader.upload(file, destination, Collections.emptySet(), p -> {});
+
+      assertEquals(11, parts.size());
+      assertArrayEquals(content, object.toByteArray());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testRetriedUploadOverHttpSkipsStoredParts() throws IOException {
+    // The object store kept the first three parts of a previous attempt.
+    Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+    for (int partNumber = 1; partNumber <= 3; partNumber++) {
+      parts.put(
+          partNumber,
+          Arrays.copyOfRange(content, (partNumber - 1) * PART_SIZE, partNumber * PART_SIZE));
+    }
+    Set<Integer> uploaded = ConcurrentHashMap.newKeySet();
+    ByteArrayOutputStream object = new ByteArrayOutputStream();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          String[] query = exchange.getRequestURI().getQuery().split("=");
+          byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+          if (query[0].equals("parts")) {
+            StringBuilder list = new StringBuilder();
+            for (Map.Entry<Integer, byte[]> part : new TreeMap<>(parts).entrySet()) {
+              list.append(part.getKey()).append(' ').append(part.getValue().length).append('\n');
+            }
+            byte[] response = list.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+            return;
+          }
+          if (query[0].equals("partNumber")) {
+            uploaded.add(Integer.parseInt(query[1]));
+            parts.put(Integer.parseInt(query[1]), body);
+          } else {
+            for (byte[] part : new TreeMap<>(parts).values()) {
+              object.write(part);
+            }
+          }
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    server.setExecutor(executor);
+    server.start();
+    try {
+      URL destination = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/object");
+      MultipartUploader uploader =
+          new MultipartUploader(new HttpUploadSink(1000), executor, PART_SIZE, 4, 1, 0);
+
+      uploader.upload(file, destination, Collections.emptySet(), p -> {});
+
+      assertEquals(new HashSet<>(Arrays.asList(4, 5, 6, 7, 8, 9, 10, 11)), uploaded);
+      assertArrayEquals(content, object.toByteArray());
+    } finally {
+      server.stop(0);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit test for {@link ScratchSpace}. */
+public class ScratchSpaceTest {
+
+  private File root;
+
+  @Before
+  public void setUp() {
+    root = Files.createTempDir();
+  }
+
+  @Test
+  public void testReleaseDeletesFiles() throws IOException {
+    ScratchSpace scratchSpace = new ScratchSpace(root, 1024, 0);
+    File file = write(scratchSpace, "execution1", "downloaded", 100);
+    assertEquals(100, scratchSpace.getUsedBytes());
+
+    scratchSpace.release("execution1");
+    assertFalse(file.exists());
+    assertFalse(scratchSpace.contains("execution1"));
+    assertEquals(0, scratchSpace.getUsedBytes());
+  }
+
+  @Test
+  public void testOldestExecutionEvicted() throws IOException {
+    ScratchSpace scratchSpace = new ScratchSpace(root, 250, 0);
+    File first = write(scratchSpace, "execution1", "downloaded", 100);
+    File second = write(scratchSpace, "execution2", "downloaded", 100);
+    // Touch the first execution, so the second one becomes the least recently used.
+    write(scratchSpace, "execution1", "processed", 10);
+    File third = write(scratchSpace, "execution3", "downloaded", 100);
+
+    assertTrue(first.exists());
+    assertFalse(second.exists());
+    assertTrue(third.exists());
+    assertEquals(210, scratchSpace.getUsedBytes());
+    assertEquals(100, scratchSpace.getEvictedBytes());
+    assertEquals(2, scratchSpace.getExecutionCount());
+  }
+
+  @Test
+  public void testCurrentExecutionNotEvicted() throws IOException {
+    ScratchSpace scratchSpace = new ScratchSpace(root, 50, 0);
+    File file = write(scratchSpace, "execution1", "downloaded", 100);
+    assertTrue(file.exists());
+    assertEquals(100, scratchSpace.getUsedBytes());
+  }
+
+  private static File write(ScratchSpace scratchSpace, String executionKey, String name, int size)
+      throws IOException {
+    File file = scratchSpace.newFile(executionKey, name);
+    Files.write(new byte[size], file);
+    scratchSpace.commit(executionKey, file);
+    return file;
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.fileprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpServer;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.activity.ActivityOptions;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import com.uber.cadence.workflow.ActivityFailureException;
+import com.uber.cadence.workflow.Workflow;
+import com.uber.cadence.workflow.WorkflowMethod;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link StoreActivitiesImpl}. Doesn't use an external Cadence service. */
+public class StoreActivitiesImplTest {
+
+  private static final String HOST_TASK_LIST = "host1";
+
+  public interface DownloadWorkflow {
+    @WorkflowMethod(executionStartToCloseTimeoutSeconds = 60, taskList = HOST_TASK_LIST)
+    String download(URL source);
+  }
+
+  /** Downloads with the activity options of the file processing workflow. */
+  public static class DownloadWorkflowImpl implements DownloadWorkflow {
+
+    private final StoreActivities store =
+        Workflow.newActivityStub(
+            StoreActivities.class,
+            new ActivityOptions.Builder()
+                .setScheduleToCloseTimeout(FileProcessingWorkflowImpl.FILE_ACTIVITY_TIMEOUT)
+                .setHeartbeatTimeout(FileProcessingWorkflowImpl.HEARTBEAT_TIMEOUT)
+                .setRetryOptions(FileProcessingWorkflowImpl.newActivityRetryOptions())
+                .build());
+
+    @Override
+    public String download(URL source) {
+      return store.download(source).getFileName();
+    }
+  }
+
+  public interface SingleAttemptDownloadWorkflow {
+    @WorkflowMethod(executionStartToCloseTimeoutSeconds = 60, taskList = HOST_TASK_LIST)
+    String download(URL source);
+  }
+
+  /** Downloads without retries and returns the type of the failure. */
+  public static class SingleAttemptDownloadWorkflowImpl implements SingleAttemptDownloadWorkflow {
+
+    private final StoreActivities store =
+        Workflow.newActivityStub(
+            StoreActivities.class,
+            new ActivityOptions.Builder()
+                .setScheduleToCloseTimeout(FileProcessingWorkflowImpl.FILE_ACTIVITY_TIMEOUT)
+                .build());
+
+    @Override
+    public String download(URL source) {
+      try {
+        store.download(source);
+        return "downloaded";
+      } catch (ActivityFailureException e) {
+        return e.getCause().getClass().getSimpleName();
+      }
+    }
+  }
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private TestWorkflowEnvironment testEnv;
+  private ScratchSpace scratchSpace;
+  private HttpServer server;
+  private File root;
+  private byte[] content;
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDir();
+    content = new byte[3 * StoreActivitiesImpl.CHUNK_SIZE + 100];
+    new Random(1).nextBytes(content);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(HOST_TASK_LIST);
+    worker.registerWorkflowImplementationTypes(
+        DownloadWorkflowImpl.class, SingleAttemptDownloadWorkflowImpl.class);
+    scratchSpace = new ScratchSpace(new File(root, "scratch"), Long.MAX_VALUE, 0);
+    worker.registerActivitiesImplementations(
+        new StoreActivitiesImpl(
+            HOST_TASK_LIST,
+            scratchSpace,
+            new LocalDirectoryUploadSink(new File(root, "uploads")),
+            executor));
+    testEnv.start();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRetriedDownloadResumesFromHeartbeatedOffset() throws IOException {
+    // The first response breaks off after two chunks, the retry asks for the rest only.
+    List<String> ranges = new CopyOnWriteArrayList<>();
+    server.createContext(
+        "/",
+        exchange -> {
+          String range = exchange.getRequestHeaders().getFirst("Range");
+          ranges.add(String.valueOf(range));
+          try (OutputStream out = exchange.getResponseBody()) {
+            if (range == null) {
+              exchange.sendResponseHeaders(200, content.length);
+              out.write(content, 0, 2 * StoreActivitiesImpl.CHUNK_SIZE);
+              out.flush();
+              return;
+            }
+            int offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + offset + "-");
+            exchange.sendResponseHeaders(206, content.length - offset);
+            out.write(content, offset, content.length - offset);
+          }
+        });
+    server.start();
+    URL source = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/file");
+
+    WorkflowClient workflowClient = testEnv.newWorkflowClient();
+    String downloaded = workflowClient.newWorkflowStub(DownloadWorkflow.class).download(source);
+
+    assertArrayEquals(content, Files.toByteArray(new File(downloaded)));
+    assertEquals(2, ranges.size());
+    assertEquals("null", ranges.get(0));
+    assertTrue(ranges.get(1), ranges.get(1).matches("bytes=[1-9][0-9]*-"));
+  }
+
+  @Test
+  public void testFirstAttemptStartsFromBeginning() throws IOException {
+    List<String> ranges = new CopyOnWriteArrayList<>();
+    server.createContext(
+        "/",
+        exchange -> {
+          ranges.add(exchange.getRequestHeaders().getFirst("Range"));
+          exchange.sendResponseHeaders(200, content.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content);
+          }
+        });
+    server.start();
+    URL source = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/file");
+
+    WorkflowClient workflowClient = testEnv.newWorkflowClient();
+    String downloaded = workflowClient.newWorkflowStub(DownloadWorkflow.class).download(source);
+
+    assertArrayEquals(content, Files.toByteArray(new File(downloaded)));
+    assertEquals(1, ranges.size());
+    assertNull(ranges.get(0));
+  }
+
+  @Test
+  public void testEvictionDoesNotHideDownloadFailure() throws Exception {
+    // Another execution evicts this one while its response breaks off.
+    CompletableFuture<WorkflowExecution> started = new CompletableFuture<>();
+    server.createContext(
+        "/",
+        exchange -> {
+          WorkflowExecution execution = started.join();
+          String executionKey = execution.getWorkflowId() + "_" + execution.getRunId();
+          File downloaded = scratchSpace.newFile(executionKey, "downloaded");
+          exchange.sendResponseHeaders(200, content.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, 0, StoreActivitiesImpl.CHUNK_SIZE);
+            out.flush();
+            while (downloaded.length() == 0) {
+              Thread.sleep(1);
+            }
+            scratchSpace.release(executionKey);
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+        });
+    server.start();
+    URL source = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/file");
+
+    WorkflowClient workflowClient = testEnv.newWorkflowClient();
+    SingleAttemptDownloadWorkflow workflow =
+        workflowClient.newWorkflowStub(SingleAttemptDownloadWorkflow.class);
+    WorkflowExecution execution = WorkflowClient.start(workflow::download, source);
+    started.complete(execution);
+
+    String failure =
+        workflowClient
+            .newUntypedWorkflowStub(
+                execution, Optional.of("SingleAttemptDownloadWorkflow::download"))
+            .getResult(String.class);
+    assertEquals(EOFException.class.getSimpleName(), failure);
+  }
+}
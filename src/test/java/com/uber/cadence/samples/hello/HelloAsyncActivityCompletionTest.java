@@ -18,16 +18,25 @@
 package com.uber.cadence.samples.hello;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
-import com.uber.cadence.client.ActivityCompletionClient;
+import com.uber.cadence.WorkflowExecution;
 import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.samples.common.AsyncActivityCompleter;
 import com.uber.cadence.samples.hello.HelloAsyncActivityCompletion.GreetingActivitiesImpl;
 import com.uber.cadence.samples.hello.HelloAsyncActivityCompletion.GreetingWorkflow;
 import com.uber.cadence.samples.hello.HelloAsyncActivityCompletion.GreetingWorkflowImpl;
 import com.uber.cadence.testing.TestWorkflowEnvironment;
 import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -74,14 +83,109 @@ public class HelloAsyncActivityCompletionTest {
 
   @Test
   public void testActivityImpl() throws ExecutionException, InterruptedException {
-    ActivityCompletionClient completionClient = workflowClient.newActivityCompletionClient();
-    worker.registerActivitiesImplementations(new GreetingActivitiesImpl(completionClient));
-    testEnv.start();
-
-    GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
-    // Execute a workflow asynchronously.
-    CompletableFuture<String> greeting = WorkflowClient.execute(workflow::getGreeting, "World");
-    // Wait for workflow completion.
-    assertEquals("Hello World!", greeting.get());
+    try (AsyncActivityCompleter completer =
+        new AsyncActivityCompleter(
+            workflowClient.newActivityCompletionClient(),
+            2,
+            100,
+            HelloAsyncActivityCompletion.HEARTBEAT_INTERVAL)) {
+      worker.registerActivitiesImplementations(new GreetingActivitiesImpl(completer));
+      testEnv.start();
+
+      GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
+      // Execute a workflow asynchronously.
+      CompletableFuture<String> greeting = WorkflowClient.execute(workflow::getGreeting, "World");
+      // Wait for workflow completion.
+      assertEquals("Hello World!", greeting.get());
+    }
+  }
+
+  @Test
+  public void testCancelledActivityIsInterrupted() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    try (AsyncActivityCompleter completer =
+        new AsyncActivityCompleter(
+            workflowClient.newActivityCompletionClient(), 1, 1, Duration.ofMillis(20))) {
+      worker.registerActivitiesImplementations(
+          new GreetingActivitiesImpl(completer) {
+            @Override
+            public String composeGreeting(String greeting, String name) {
+              completer.complete(
+                  () -> {
+                    started.countDown();
+                    try {
+                      Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    } catch (InterruptedException e) {
+                      interrupted.countDown();
+                      throw e;
+                    }
+                    return greeting + " " + name + "!";
+                  });
+              return "ignored";
+            }
+          });
+      testEnv.start();
+
+      GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
+      WorkflowExecution execution = WorkflowClient.start(workflow::getGreeting, "World");
+      assertTrue(started.await(1, TimeUnit.SECONDS));
+      workflowClient
+          .newUntypedWorkflowStub(execution, Optional.of("GreetingWorkflow::getGreeting"))
+          .cancel();
+
+      // The next heartbeat learns about the cancellation and interrupts the work.
+      assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+      AsyncActivityCompleter.Metrics metrics = completer.getMetrics();
+      assertEquals(1, metrics.getCancelled());
+      assertEquals(0, metrics.getCompleted());
+      assertEquals(0, metrics.getOutstanding());
+    }
+  }
+
+  @Test
+  public void testOutstandingActivitiesAreBounded() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    try (AsyncActivityCompleter completer =
+        new AsyncActivityCompleter(
+            workflowClient.newActivityCompletionClient(), 4, 2, Duration.ofMillis(20))) {
+      worker.registerActivitiesImplementations(
+          new GreetingActivitiesImpl(completer) {
+            @Override
+            public String composeGreeting(String greeting, String name) {
+              completer.complete(
+                  () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(100);
+                    running.decrementAndGet();
+                    return greeting + " " + name + "!";
+                  });
+              return "ignored";
+            }
+          });
+      testEnv.start();
+
+      int count = 6;
+      List<CompletableFuture<String>> greetings = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
+        greetings.add(WorkflowClient.execute(workflow::getGreeting, "World" + i));
+      }
+      for (int i = 0; i < count; i++) {
+        assertEquals("Hello World" + i + "!", greetings.get(i).get());
+      }
+      // More threads than the bound, so the bound limits the work in flight.
+      assertTrue(maxRunning.get() <= 2);
+      AsyncActivityCompleter.Metrics metrics = completer.getMetrics();
+      // A result can reach the workflow before the completion call returns and is counted.
+      while (metrics.getOutstanding() > 0) {
+        Thread.sleep(10);
+      }
+      assertEquals(count, metrics.getCompleted());
+      assertEquals(0, metrics.getOutstanding());
+      assertTrue(metrics.getHeartbeats() > 0);
+      assertTrue(metrics.getThroughput() > 0);
+    }
   }
 }
@@ -0,0 +1,153 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hello;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.hello.HelloBlockingSignalWithQuery.AcknowledgedSender;
+import com.uber.cadence.samples.hello.HelloBlockingSignalWithQuery.GreetingPage;
+import com.uber.cadence.samples.hello.HelloBlockingSignalWithQuery.GreetingSummary;
+import com.uber.cadence.samples.hello.HelloBlockingSignalWithQuery.GreetingWorkflow;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+/** Unit test for {@link HelloBlockingSignalWithQuery}. Doesn't use an external Cadence service. */
+public class HelloBlockingSignalWithQueryTest {
+
+  /** Prints a history of the workflow under test in case of a test failure. */
+  @Rule
+  public TestWatcher watchman =
+      new TestWatcher() {
+        @Override
+        protected void failed(Throwable e, Description description) {
+          if (testEnv != null) {
+            System.err.println(testEnv.getDiagnostics());
+            testEnv.close();
+          }
+        }
+      };
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient workflowClient;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(HelloBlockingSignalWithQuery.TASK_LIST);
+    worker.registerWorkflowImplementationTypes(
+        HelloBlockingSignalWithQuery.GreetingWorkflowImpl.class);
+    testEnv.start();
+    workflowClient = testEnv.newWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testAcknowledgedSignals() throws Exception {
+    WorkflowOptions workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(HelloBlockingSignalWithQuery.TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofDays(30))
+            .build();
+    GreetingWorkflow workflow =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+    String workflowId = WorkflowClient.start(workflow::getGreetings).getWorkflowId();
+
+    int count = 200;
+    List<CompletableFuture<Long>> acknowledgments = new ArrayList<>();
+    try (AcknowledgedSender first = new AcknowledgedSender(workflowClient, workflowId, 50);
+        AcknowledgedSender second = new AcknowledgedSender(workflowClient, workflowId, 50)) {
+      for (int i = 0; i < count; i++) {
+        AcknowledgedSender sender = i % 2 == 0 ? first : second;
+        acknowledgments.add(sender.send("Name" + i, Duration.ofSeconds(10)));
+      }
+      for (int i = 0; i < count; i++) {
+        assertTrue(acknowledgments.get(i).get(10, TimeUnit.SECONDS) >= i / 2 + 1);
+      }
+      assertEquals(0, first.getWaiter().getWaiters());
+      // One query acknowledges many signals.
+      assertTrue(first.getWaiter().getQueries() < count / 2);
+    }
+
+    GreetingSummary summary = workflow.getSummary();
+    assertEquals(count, summary.getProcessedCount());
+    assertEquals(0, summary.getQueuedCount());
+
+    workflow.exit();
+    List<String> greetings = workflow.getGreetings();
+    assertEquals(count, greetings.size());
+    assertEquals("Hello Name0!", greetings.get(0));
+  }
+
+  @Test
+  public void testPagedQuery() throws Exception {
+    WorkflowOptions workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(HelloBlockingSignalWithQuery.TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofDays(30))
+            .build();
+    GreetingWorkflow workflow =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+    String workflowId = WorkflowClient.start(workflow::getGreetings).getWorkflowId();
+    assertNull(workflow.getSummary().getLastGreeting());
+
+    int count = 25;
+    try (AcknowledgedSender sender = new AcknowledgedSender(workflowClient, workflowId, 50)) {
+      CompletableFuture<Long> last = null;
+      for (int i = 0; i < count; i++) {
+        last = sender.send("Name" + i, Duration.ofSeconds(10));
+      }
+      last.get(10, TimeUnit.SECONDS);
+    }
+    assertEquals("Hello Name24!", workflow.getSummary().getLastGreeting());
+
+    List<String> greetings = new ArrayList<>();
+    long cursor = 0;
+    int pages = 0;
+    GreetingPage page;
+    do {
+      page = workflow.retrieveGreetings(cursor, 10);
+      greetings.addAll(page.getGreetings());
+      cursor = page.getLastSequence();
+      pages++;
+    } while (page.hasMore());
+
+    assertEquals(3, pages);
+    assertEquals(count, greetings.size());
+    assertEquals("Hello Name10!", greetings.get(10));
+    assertEquals(0, workflow.retrieveGreetings(cursor, 10).getGreetings().size());
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hello;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.uber.cadence.ListClosedWorkflowExecutionsRequest;
+import com.uber.cadence.WorkflowExecutionCloseStatus;
+import com.uber.cadence.WorkflowExecutionFilter;
+import com.uber.cadence.WorkflowExecutionInfo;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.PeriodicScheduler.Schedule;
+import com.uber.cadence.samples.hello.HelloPeriodic.GreetingActivitiesImpl;
+import com.uber.cadence.samples.hello.HelloPeriodic.HistoryLimits;
+import com.uber.cadence.samples.hello.HelloPeriodicSharded.GreetingShardWorkflow;
+import com.uber.cadence.samples.hello.HelloPeriodicSharded.GreetingShardWorkflowImpl;
+import com.uber.cadence.samples.hello.HelloPeriodicSharded.ShardCoordinator;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link HelloPeriodicSharded}. Doesn't use an external Cadence service. */
+public class HelloPeriodicShardedTest {
+
+  private static final int NAME_COUNT = 20;
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(20);
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient workflowClient;
+  private List<String> names;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(HelloPeriodicSharded.TASK_LIST);
+    worker.registerWorkflowImplementationTypes(GreetingShardWorkflowImpl.class);
+    worker.registerActivitiesImplementations(new GreetingActivitiesImpl());
+    testEnv.start();
+    workflowClient = testEnv.newWorkflowClient();
+    names = new ArrayList<>();
+    for (int i = 0; i < NAME_COUNT; i++) {
+      names.add("World" + i);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Test
+  public void testPartitions() {
+    for (int shardCount = 1; shardCount <= 8; shardCount++) {
+      Set<Integer> used = new HashSet<>();
+      for (String name : names) {
+        int shard = ShardCoordinator.getShard(name, shardCount);
+        assertTrue(shard >= 0 && shard < shardCount);
+        used.add(shard);
+      }
+      assertTrue(used.size() > shardCount / 2);
+      // Growing by one shard only moves names to the new shard.
+      for (String name : names) {
+        int shard = ShardCoordinator.getShard(name, shardCount + 1);
+        assertTrue(shard == shardCount || shard == ShardCoordinator.getShard(name, shardCount));
+      }
+    }
+  }
+
+  @Test
+  public void testWorkflowIdsDifferFromHelloPeriodic() {
+    for (int shard = 0; shard < 8; shard++) {
+      assertTrue(
+          ShardCoordinator.getWorkflowId(shard)
+              .startsWith(HelloPeriodicSharded.SHARD_WORKFLOW_ID_PREFIX));
+      assertFalse(
+          ShardCoordinator.getWorkflowId(shard)
+              .startsWith(HelloPeriodic.PERIODIC_WORKFLOW_ID + "-"));
+    }
+  }
+
+  @Test
+  public void testRebalance() throws Exception {
+    try (ShardCoordinator coordinator =
+        new ShardCoordinator(
+            workflowClient,
+            names,
+            // The supervisor long polls keep the test service from skipping time.
+            Schedule.every(Duration.ofMillis(200)),
+            new HistoryLimits(200, HistoryLimits.DEFAULT_MAX_BYTES),
+            2)) {
+      assertPartitioned(2);
+
+      coordinator.setShardCount(4);
+      assertPartitioned(4);
+      assertTrue(coordinator.getMovedNames() > 0);
+      assertTrue(coordinator.getMovedNames() < NAME_COUNT);
+
+      coordinator.setShardCount(1);
+      assertPartitioned(1);
+      for (int shard = 1; shard < 4; shard++) {
+        // Retired shards complete instead of continuing as new.
+        awaitCompletion(ShardCoordinator.getWorkflowId(shard));
+      }
+      assertEquals(1, coordinator.getShardCount());
+    }
+  }
+
+  @Test
+  public void testRunEndsBeforeExecutionTimeout() throws Exception {
+    // Without a supervisor the test service skips time.
+    String workflowId = ShardCoordinator.getWorkflowId(0);
+    GreetingShardWorkflow workflow =
+        workflowClient.newWorkflowStub(
+            GreetingShardWorkflow.class,
+            new WorkflowOptions.Builder()
+                .setWorkflowId(workflowId)
+                .setExecutionStartToCloseTimeout(Duration.ofMinutes(1))
+                .build());
+    WorkflowClient.start(
+        workflow::greetShard,
+        Arrays.asList("World0", "World1", "World2"),
+        Schedule.every(Duration.ofSeconds(10)),
+        new HistoryLimits(Integer.MAX_VALUE, Long.MAX_VALUE),
+        null);
+    testEnv.sleep(Duration.ofMinutes(5));
+
+    ListClosedWorkflowExecutionsRequest request =
+        new ListClosedWorkflowExecutionsRequest()
+            .setDomain(testEnv.getDomain())
+            .setExecutionFilter(new WorkflowExecutionFilter().setWorkflowId(workflowId));
+    List<WorkflowExecutionInfo> closed =
+        testEnv.getWorkflowService().ListClosedWorkflowExecutions(request).getExecutions();
+    assertTrue(closed.size() >= 4);
+    for (WorkflowExecutionInfo e : closed) {
+      assertEquals(WorkflowExecutionCloseStatus.CONTINUED_AS_NEW, e.getCloseStatus());
+    }
+    // The state is carried over instead of restarting from scratch.
+    assertTrue(
+        workflowClient
+                .newWorkflowStub(GreetingShardWorkflow.class, workflowId)
+                .getState()
+                .getIterations()
+            >= 29);
+  }
+
+  /** Waits until a run of the workflow completes. */
+  private void awaitCompletion(String workflowId) throws Exception {
+    // Polled, the test service does not always return a long poll on a run that continued as new.
+    ListClosedWorkflowExecutionsRequest request =
+        new ListClosedWorkflowExecutionsRequest()
+            .setDomain(testEnv.getDomain())
+            .setExecutionFilter(new WorkflowExecutionFilter().setWorkflowId(workflowId));
+    while (true) {
+      for (WorkflowExecutionInfo e :
+          testEnv.getWorkflowService().ListClosedWorkflowExecutions(request).getExecutions()) {
+        if (e.getCloseStatus() == WorkflowExecutionCloseStatus.COMPLETED) {
+          return;
+        }
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  /** Waits until the running shards have disjoint partitions that cover all the names. */
+  private void assertPartitioned(int shardCount) throws InterruptedException {
+    while (true) {
+      List<String> all = new ArrayList<>();
+      boolean greeted = true;
+      try {
+        for (int shard = 0; shard < shardCount; shard++) {
+          GreetingShardWorkflow workflow =
+              workflowClient.newWorkflowStub(
+                  GreetingShardWorkflow.class, ShardCoordinator.getWorkflowId(shard));
+          List<String> partition = workflow.getNames();
+          for (String name : partition) {
+            assertEquals(shard, ShardCoordinator.getShard(name, shardCount));
+          }
+          all.addAll(partition);
+          greeted &= workflow.getState().getIterations() > 0;
+        }
+      } catch (AssertionError | RuntimeException e) {
+        // Not started or not reassigned yet.
+        Thread.sleep(10);
+        continue;
+      }
+      if (greeted) {
+        assertEquals(NAME_COUNT, all.size());
+        assertEquals(new HashSet<>(names), new HashSet<>(all));
+        return;
+      }
+      Thread.sleep(10);
+    }
+  }
+}
@@ -25,6 +25,7 @@ import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import com.uber.cadence.GetWorkflowExecutionHistoryRequest;
 import com.uber.cadence.ListClosedWorkflowExecutionsRequest;
 import com.uber.cadence.ListClosedWorkflowExecutionsResponse;
 import com.uber.cadence.WorkflowExecution;
@@ -32,10 +33,14 @@ import com.uber.cadence.WorkflowExecutionCloseStatus;
 import com.uber.cadence.WorkflowExecutionFilter;
 import com.uber.cadence.WorkflowExecutionInfo;
 import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.common.PeriodicScheduler.Schedule;
 import com.uber.cadence.samples.hello.HelloPeriodic.GreetingActivities;
 import com.uber.cadence.samples.hello.HelloPeriodic.GreetingActivitiesImpl;
 import com.uber.cadence.samples.hello.HelloPeriodic.GreetingWorkflow;
 import com.uber.cadence.samples.hello.HelloPeriodic.GreetingWorkflowImpl;
+import com.uber.cadence.samples.hello.HelloPeriodic.HistoryLimits;
+import com.uber.cadence.samples.hello.HelloPeriodic.PeriodicState;
 import com.uber.cadence.testing.TestWorkflowEnvironment;
 import com.uber.cadence.worker.Worker;
 import java.time.Duration;
@@ -51,6 +56,10 @@ import org.junit.runner.Description;
 /** Unit test for {@link HelloPeriodic}. Doesn't use an external Cadence service. */
 public class HelloPeriodicTest {
 
+  private static final Schedule SCHEDULE = Schedule.every(Duration.ofSeconds(1));
+  private static final HistoryLimits LIMITS =
+      new HistoryLimits(100, HistoryLimits.DEFAULT_MAX_BYTES);
+
   @Rule public Timeout globalTimeout = Timeout.seconds(2);
 
   /** Prints a history of the workflow under test in case of a test failure. */
@@ -93,7 +102,7 @@ public class HelloPeriodicTest {
     GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
     // Execute a workflow waiting for it to complete.
     WorkflowExecution execution =
-        WorkflowClient.start(workflow::greetPeriodically, "World", Duration.ofSeconds(1));
+        WorkflowClient.start(workflow::greetPeriodically, "World", SCHEDULE, LIMITS, null);
     assertEquals(PERIODIC_WORKFLOW_ID, execution.getWorkflowId());
     // Validate that workflow was continued as new at least once.
     // Use TestWorkflowEnvironment.sleep to execute the unit test without really sleeping.
@@ -120,10 +129,88 @@ public class HelloPeriodicTest {
     GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
     // Execute a workflow waiting for it to complete.
     WorkflowExecution execution =
-        WorkflowClient.start(workflow::greetPeriodically, "World", Duration.ofSeconds(1));
+        WorkflowClient.start(workflow::greetPeriodically, "World", SCHEDULE, LIMITS, null);
     assertEquals(PERIODIC_WORKFLOW_ID, execution.getWorkflowId());
     // Use TestWorkflowEnvironment.sleep to execute the unit test without really sleeping.
     testEnv.sleep(Duration.ofMinutes(1));
     verify(activities, atLeast(5)).greet(anyString());
   }
+
+  @Test
+  public void testRunEndsBeforeExecutionTimeout() throws TException {
+    GreetingActivities activities = mock(GreetingActivities.class);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    // The history limits are never reached, so only the execution timeout ends the runs.
+    GreetingWorkflow workflow =
+        workflowClient.newWorkflowStub(
+            GreetingWorkflow.class,
+            new WorkflowOptions.Builder()
+                .setExecutionStartToCloseTimeout(Duration.ofMinutes(1))
+                .build());
+    WorkflowClient.start(
+        workflow::greetPeriodically,
+        "World",
+        Schedule.every(Duration.ofSeconds(10)),
+        new HistoryLimits(Integer.MAX_VALUE, Long.MAX_VALUE),
+        null);
+    testEnv.sleep(Duration.ofMinutes(5));
+
+    ListClosedWorkflowExecutionsRequest request =
+        new ListClosedWorkflowExecutionsRequest()
+            .setDomain(testEnv.getDomain())
+            .setExecutionFilter(new WorkflowExecutionFilter().setWorkflowId(PERIODIC_WORKFLOW_ID));
+    ListClosedWorkflowExecutionsResponse listResponse =
+        testEnv.getWorkflowService().ListClosedWorkflowExecutions(request);
+    assertTrue(listResponse.getExecutions().size() >= 4);
+    for (WorkflowExecutionInfo e : listResponse.getExecutions()) {
+      assertEquals(WorkflowExecutionCloseStatus.CONTINUED_AS_NEW, e.getCloseStatus());
+    }
+    // The schedule is kept across the runs.
+    PeriodicState state =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, PERIODIC_WORKFLOW_ID).getState();
+    assertTrue(state.getIterations() >= 29);
+    assertEquals(0, state.getScheduleMetrics().getSkipped());
+  }
+
+  @Test
+  public void testHistoryLimits() throws TException {
+    GreetingActivities activities = mock(GreetingActivities.class);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    GreetingWorkflow workflow = workflowClient.newWorkflowStub(GreetingWorkflow.class);
+    WorkflowClient.start(workflow::greetPeriodically, "World", SCHEDULE, LIMITS, null);
+    testEnv.sleep(Duration.ofMinutes(1));
+
+    ListClosedWorkflowExecutionsRequest request =
+        new ListClosedWorkflowExecutionsRequest()
+            .setDomain(testEnv.getDomain())
+            .setExecutionFilter(new WorkflowExecutionFilter().setWorkflowId(PERIODIC_WORKFLOW_ID));
+    ListClosedWorkflowExecutionsResponse listResponse =
+        testEnv.getWorkflowService().ListClosedWorkflowExecutions(request);
+    for (WorkflowExecutionInfo e : listResponse.getExecutions()) {
+      int events =
+          testEnv
+              .getWorkflowService()
+              .GetWorkflowExecutionHistory(
+                  new GetWorkflowExecutionHistoryRequest()
+                      .setDomain(testEnv.getDomain())
+                      .setExecution(e.getExecution()))
+              .getHistory()
+              .getEventsSize();
+      // The estimate is exact but for the very first greeting, which does not wait for a timer,
+      // so each run stops right before the limit.
+      assertTrue(events <= LIMITS.getMaxEvents());
+      assertTrue(events > LIMITS.getMaxEvents() - 2 * GreetingWorkflowImpl.EVENTS_PER_ITERATION);
+    }
+
+    // The counters are carried over to the current run.
+    PeriodicState state =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, PERIODIC_WORKFLOW_ID).getState();
+    assertEquals(listResponse.getExecutions().size() + 1, state.getRuns());
+    assertTrue(state.getIterations() > listResponse.getExecutions().size());
+    assertEquals("Hello World!", state.getLastGreeting());
+  }
 }
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hello;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.uber.cadence.EntityNotExistsError;
+import com.uber.cadence.WorkflowExecution;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.client.WorkflowServiceException;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingActivities;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingWorkflow;
+import com.uber.cadence.samples.hello.HelloSignalBuffer.GreetingWorkflowImpl;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+/** Unit test for {@link HelloSignalBuffer}. Doesn't use an external Cadence service. */
+public class HelloSignalBufferTest {
+
+  /** Prints a history of the workflow under test in case of a test failure. */
+  @Rule
+  public TestWatcher watchman =
+      new TestWatcher() {
+        @Override
+        protected void failed(Throwable e, Description description) {
+          if (testEnv != null) {
+            System.err.println(testEnv.getDiagnostics());
+            testEnv.close();
+          }
+        }
+      };
+
+  private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient workflowClient;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(HelloSignalBuffer.TASK_LIST);
+    worker.registerWorkflowImplementationTypes(GreetingWorkflowImpl.class);
+    worker.registerActivitiesImplementations((GreetingActivities) batches::add);
+    testEnv.start();
+    workflowClient = testEnv.newWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  /**
+   * The test service briefly has no current run while a run continues as new, which the Cadence
+   * service does atomically. A signal that lands in that gap is sent again.
+   */
+  private static void signalCurrentRun(Runnable signal) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        signal.run();
+        return;
+      } catch (WorkflowServiceException e) {
+        if (!(e.getCause() instanceof EntityNotExistsError) || attempt >= 100) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testProcessesAllSignalsAcrossRuns() {
+    int count = GreetingWorkflowImpl.MAX_NAMES_PER_RUN * 2 + 500;
+    WorkflowOptions workflowOptions =
+        new WorkflowOptions.Builder()
+            .setTaskList(HelloSignalBuffer.TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofMinutes(5))
+            .build();
+    GreetingWorkflow workflow =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, workflowOptions);
+    WorkflowExecution execution =
+        WorkflowClient.start(workflow::processGreetings, 0L, Collections.<String>emptyList());
+
+    // Without a run ID the signals go to the current run, whichever it is.
+    GreetingWorkflow current =
+        workflowClient.newWorkflowStub(GreetingWorkflow.class, execution.getWorkflowId());
+    for (int i = 0; i < count; i++) {
+      String name = "Name" + i;
+      signalCurrentRun(() -> current.waitForName(name));
+    }
+    signalCurrentRun(current::exit);
+    long processed =
+        workflowClient
+            .newUntypedWorkflowStub(execution.getWorkflowId(), Optional.empty(), Optional.empty())
+            .getResult(Long.class);
+
+    assertEquals(count, processed);
+    List<String> names = new ArrayList<>();
+    for (List<String> batch : batches) {
+      assertTrue(batch.size() <= GreetingWorkflowImpl.MAX_BATCH_SIZE);
+      names.addAll(batch);
+    }
+    assertEquals(count, names.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals("Name" + i, names.get(i));
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hellotimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.uber.cadence.samples.common.LatencyHistogram;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/** Unit test for {@link Hedging}. */
+public class HedgingTest {
+
+  @Test
+  public void testHedgeDelayFromPercentile() {
+    LatencyHistogram latency = new LatencyHistogram();
+    Duration defaultDelay = Duration.ofSeconds(1);
+    for (int i = 1; i < Hedging.MIN_SAMPLES; i++) {
+      latency.record(i * 10, TimeUnit.MILLISECONDS);
+    }
+    assertEquals(defaultDelay, Hedging.getHedgeDelay(latency, defaultDelay));
+
+    latency.record(Hedging.MIN_SAMPLES * 10, TimeUnit.MILLISECONDS);
+    Duration delay = Hedging.getHedgeDelay(latency, defaultDelay);
+    assertEquals(Duration.ofNanos(latency.getPercentile(95)), delay);
+    // 19 of the 20 samples are at most 190ms, within the bucket precision.
+    assertEquals(190, delay.toMillis(), 190 / 16);
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    try {
+      Hedging.within(Duration.ofSeconds(1), Duration.ZERO, 0, attempt -> null);
+      fail("unreachable");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      Optional<Object> result =
+          Hedging.within(Duration.ofSeconds(1), Duration.ofMillis(-1), 2, attempt -> null);
+      fail("unreachable: " + result);
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
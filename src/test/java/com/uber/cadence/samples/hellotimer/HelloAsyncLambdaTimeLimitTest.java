@@ -0,0 +1,283 @@
+/*
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.uber.cadence.samples.hellotimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.uber.cadence.client.ActivityCompletionException;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.samples.hellotimer.CallbackDelivery.PaymentNotification;
+import com.uber.cadence.samples.hellotimer.HelloAsyncLambdaTimeLimit.PaymentActivity;
+import com.uber.cadence.samples.hellotimer.HelloAsyncLambdaTimeLimit.PaymentNotificationWorkflowImpl;
+import com.uber.cadence.samples.hellotimer.HelloAsyncLambdaTimeLimit.PaymentWorkflow;
+import com.uber.cadence.samples.hellotimer.HelloAsyncLambdaTimeLimit.PaymentWorkflowImpl;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/** Unit test for {@link HelloAsyncLambdaTimeLimit}. Doesn't use an external Cadence service. */
+public class HelloAsyncLambdaTimeLimitTest {
+
+  private static final String ENDPOINT = "test";
+
+  /** Pays after the given duration, heartbeating like the sample activity. */
+  private static class SlowPaymentActivity implements PaymentActivity {
+    private final Duration duration;
+    private final Map<String, AtomicInteger> charges;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    SlowPaymentActivity(Duration duration) {
+      this(duration, new ConcurrentHashMap<>());
+    }
+
+    /** @param charges number of charges by idempotency key, shared by the attempts */
+    SlowPaymentActivity(Duration duration, Map<String, AtomicInteger> charges) {
+      this.duration = duration;
+      this.charges = charges;
+    }
+
+    @Override
+    public String makePayment(String idempotencyKey, String amount, String account) {
+      try {
+        HelloAsyncLambdaTimeLimit.longRunningTask(duration);
+      } catch (ActivityCompletionException e) {
+        stopped.countDown();
+        throw e;
+      }
+      charges.computeIfAbsent(idempotencyKey, key -> new AtomicInteger()).incrementAndGet();
+      return "PAID " + amount;
+    }
+  }
+
+  /** Records the delivered notifications, failing the first calls if asked to. */
+  private static class RecordingEndpoint implements CallbackDelivery.Endpoint {
+    private final List<PaymentNotification> notifications = new ArrayList<>();
+    private final AtomicInteger failures;
+
+    RecordingEndpoint(int failures) {
+      this.failures = new AtomicInteger(failures);
+    }
+
+    synchronized int getCount() {
+      return notifications.size();
+    }
+
+    @Override
+    public synchronized void deliver(List<PaymentNotification> batch) {
+      if (failures.getAndDecrement() > 0) {
+        throw new IllegalStateException("unavailable");
+      }
+      notifications.addAll(batch);
+      notifyAll();
+    }
+
+    synchronized List<PaymentNotification> await(int count) throws InterruptedException {
+      while (notifications.size() < count) {
+        wait();
+      }
+      return new ArrayList<>(notifications);
+    }
+  }
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(20);
+
+  private TestWorkflowEnvironment testEnv;
+  private Worker worker;
+  private WorkflowClient workflowClient;
+  private CallbackDelivery delivery;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    worker = testEnv.newWorker(HelloAsyncLambdaTimeLimit.TASK_LIST);
+    worker.registerWorkflowImplementationTypes(
+        PaymentWorkflowImpl.class, PaymentNotificationWorkflowImpl.class);
+    workflowClient = testEnv.newWorkflowClient();
+    delivery =
+        new CallbackDelivery(
+            workflowClient.newActivityCompletionClient(), 10, Duration.ofMillis(100), 100, 2);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    delivery.close();
+    testEnv.close();
+  }
+
+  @Test
+  public void testPaymentWithinDeadline() throws InterruptedException {
+    RecordingEndpoint endpoint = new RecordingEndpoint(0);
+    delivery.register(ENDPOINT, endpoint);
+    worker.registerActivitiesImplementations(
+        new SlowPaymentActivity(Duration.ofSeconds(1)), delivery);
+    testEnv.start();
+
+    String result = newWorkflow().payment("10", "account", Duration.ofSeconds(5), null, ENDPOINT);
+    assertEquals("PAID 10", result);
+    assertEquals("PAID 10", endpoint.await(1).get(0).getStatus());
+  }
+
+  @Test
+  public void testDeadlineCancelsPayment() throws InterruptedException {
+    RecordingEndpoint endpoint = new RecordingEndpoint(0);
+    delivery.register(ENDPOINT, endpoint);
+    SlowPaymentActivity activity = new SlowPaymentActivity(Duration.ofMinutes(1));
+    worker.registerActivitiesImplementations(activity, delivery);
+    testEnv.start();
+
+    long startNanos = System.nanoTime();
+    String result = newWorkflow().payment("10", "account", Duration.ofSeconds(1), null, ENDPOINT);
+    assertEquals(HelloAsyncLambdaTimeLimit.PAYMENT_FAILED, result);
+    assertEquals(HelloAsyncLambdaTimeLimit.PAYMENT_FAILED, endpoint.await(1).get(0).getStatus());
+    // The running activity stops at its next heartbeat instead of running for a minute.
+    assertTrue(activity.stopped.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(10));
+  }
+
+  @Test
+  public void testPaymentDoesNotWaitForDelivery() {
+    // The endpoint is down for longer than the test.
+    RecordingEndpoint endpoint = new RecordingEndpoint(Integer.MAX_VALUE);
+    delivery.register(ENDPOINT, endpoint);
+    worker.registerActivitiesImplementations(
+        new SlowPaymentActivity(Duration.ofMillis(100)), delivery);
+    testEnv.start();
+
+    String result = newWorkflow().payment("10", "account", Duration.ofSeconds(5), null, ENDPOINT);
+    assertEquals("PAID 10", result);
+    assertEquals(0, endpoint.getCount());
+  }
+
+  @Test
+  public void testBatchedNotifications() throws InterruptedException {
+    // The first delivery fails and is retried by the service.
+    RecordingEndpoint endpoint = new RecordingEndpoint(1);
+    delivery.register(ENDPOINT, endpoint);
+    worker.registerActivitiesImplementations(
+        new SlowPaymentActivity(Duration.ofMillis(100)), delivery);
+    testEnv.start();
+
+    int count = 50;
+    Set<String> paymentIds = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      PaymentWorkflow workflow = newWorkflow();
+      paymentIds.add(
+          WorkflowClient.start(
+                  workflow::payment,
+                  String.valueOf(i),
+                  "account",
+                  Duration.ofSeconds(5),
+                  null,
+                  ENDPOINT)
+              .getWorkflowId());
+    }
+    Set<String> notified = new HashSet<>();
+    for (PaymentNotification notification : endpoint.await(count)) {
+      notified.add(notification.getPaymentId());
+    }
+    assertEquals(paymentIds, notified);
+    CallbackDelivery.Metrics metrics = delivery.getMetrics();
+    assertEquals(1, metrics.getFailures());
+    // Fewer endpoint calls than notifications.
+    assertTrue(metrics.getBatches() < count);
+  }
+
+  @Test
+  public void testEndpointErrorReleasesNotifications() throws InterruptedException {
+    // A single pending notification, so a leaked one blocks all the later deliveries.
+    delivery.close();
+    delivery =
+        new CallbackDelivery(
+            workflowClient.newActivityCompletionClient(), 1, Duration.ofMillis(100), 1, 1);
+    RecordingEndpoint endpoint = new RecordingEndpoint(0);
+    AtomicBoolean failed = new AtomicBoolean();
+    delivery.register(
+        ENDPOINT,
+        batch -> {
+          if (failed.compareAndSet(false, true)) {
+            throw new AssertionError("simulated");
+          }
+          endpoint.deliver(batch);
+        });
+    worker.registerActivitiesImplementations(
+        new SlowPaymentActivity(Duration.ofMillis(100)), delivery);
+    testEnv.start();
+
+    int count = 3;
+    for (int i = 0; i < count; i++) {
+      PaymentWorkflow workflow = newWorkflow();
+      WorkflowClient.start(
+          workflow::payment, String.valueOf(i), "account", Duration.ofSeconds(5), null, ENDPOINT);
+    }
+    assertEquals(count, endpoint.await(count).size());
+    assertEquals(1, delivery.getMetrics().getFailures());
+  }
+
+  @Test
+  public void testHedgedPayment() throws InterruptedException {
+    RecordingEndpoint endpoint = new RecordingEndpoint(0);
+    delivery.register(ENDPOINT, endpoint);
+    Map<String, AtomicInteger> charges = new ConcurrentHashMap<>();
+    // The primary attempt is stuck, the hedged one on the other task list is fast.
+    SlowPaymentActivity primary = new SlowPaymentActivity(Duration.ofMinutes(1), charges);
+    worker.registerActivitiesImplementations(primary, delivery);
+    Worker hedgeWorker = testEnv.newWorker(HelloAsyncLambdaTimeLimit.HEDGE_TASK_LIST);
+    hedgeWorker.registerActivitiesImplementations(
+        new SlowPaymentActivity(Duration.ofMillis(500), charges));
+    testEnv.start();
+
+    long startNanos = System.nanoTime();
+    PaymentWorkflow workflow = newWorkflow();
+    String result =
+        workflow.payment("10", "account", Duration.ofSeconds(10), Duration.ofSeconds(1), ENDPOINT);
+    assertEquals("PAID 10", result);
+    // Well before the deadline.
+    assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(5));
+    // The losing attempt is cancelled and the account is charged once.
+    assertTrue(primary.stopped.await(5, TimeUnit.SECONDS));
+    String paymentId = endpoint.await(1).get(0).getPaymentId();
+    assertEquals(1, charges.size());
+    assertEquals(1, charges.get(paymentId).get());
+  }
+
+  private PaymentWorkflow newWorkflow() {
+    return workflowClient.newWorkflowStub(
+        PaymentWorkflow.class,
+        new WorkflowOptions.Builder()
+            .setTaskList(HelloAsyncLambdaTimeLimit.TASK_LIST)
+            .setExecutionStartToCloseTimeout(Duration.ofMinutes(1))
+            .build());
+  }
+}